@@ -7,18 +7,63 @@
 import javax.imageio.ImageIO;
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.filechooser.FileNameExtensionFilter;
-import javax.swing.table.DefaultTableModel;
+import javax.swing.table.AbstractTableModel;
 import java.awt.*;
 import java.awt.event.*;
 import java.awt.image.BufferedImage;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.net.InetSocketAddress;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.nio.file.*;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
 import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.MonthDay;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
 import java.util.*;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+import javax.crypto.Mac;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
 import java.sql.*;
 
 public class CarRentalFull {
@@ -40,16 +85,21 @@ public class CarRentalFull {
     }
 
     public static class User {
-        public String id, username, password, role, contact;
+        public String id, username, password, role, contact; // password holds a Passwords.hash() value once stored
+        private String parsedRole; private Role roleType;
         public User(String id, String username, String password, String role, String contact) {
             this.id=id; this.username=username; this.password=password; this.role=role; this.contact=contact;
         }
+        public Role roleType(){
+            if(roleType==null || parsedRole!=role){ roleType=Role.of(role); parsedRole=role; }
+            return roleType;
+        }
     }
 
     public static class Booking{
         public String id, carId, userId, pickupPlace, pickupDate, pickupTime;
         public int days; public double totalPrice;
-        public String status; // Pending, Confirmed, Rejected
+        public String status; // Pending, Confirmed, Rejected, Expired (Pending too long, see LifecycleScheduler)
         
         public Booking(String id,String carId,String userId,String place,String date,String time,int days,double total, String status){
             this.id=id; this.carId=carId; this.userId=userId; this.pickupPlace=place; this.pickupDate=date; this.pickupTime=time; this.days=days; this.totalPrice=total;
@@ -57,6 +107,377 @@ public class CarRentalFull {
         }
     }
 
+    // A booking joined with the buyer's username and the car owner's contact (admin booking view).
+    public static class BookingRow {
+        public final Booking booking; public final String buyerName, ownerContact;
+        public BookingRow(Booking booking, String buyerName, String ownerContact){
+            this.booking=booking; this.buyerName=buyerName; this.ownerContact=ownerContact;
+        }
+    }
+
+    // Per-seller booking counters, maintained by each backend alongside every booking mutation.
+    public static class SellerStats {
+        public final String sellerId; public final int pending, confirmed, rejected; public final double revenue;
+        public SellerStats(String sellerId, int pending, int confirmed, int rejected, double revenue){
+            this.sellerId=sellerId; this.pending=pending; this.confirmed=confirmed; this.rejected=rejected; this.revenue=revenue;
+        }
+
+        // Adds by to the pending/confirmed/rejected slot of delta that status counts in; other statuses count nowhere.
+        static void count(int[] delta, String status, int by){
+            if ("Pending".equals(status)) delta[0] += by;
+            else if ("Confirmed".equals(status)) delta[1] += by;
+            else if ("Rejected".equals(status)) delta[2] += by;
+        }
+    }
+
+    // One recorded status change of a booking or car; from is null when the row was created.
+    public static class StateEvent {
+        public final long seq; public final Timestamp at; public final String entity, entityId, from, to;
+        public StateEvent(long seq, Timestamp at, String entity, String entityId, String from, String to){
+            this.seq=seq; this.at=at; this.entity=entity; this.entityId=entityId; this.from=from; this.to=to;
+        }
+
+        // Replays events oldest first onto state, keyed "entity:id", leaving each entity's latest status
+        // ("Deleted" once removed). Replaying everything up to a moment rebuilds the statuses as they were then.
+        public static Map<String,String> replay(List<StateEvent> events, Map<String,String> state){
+            for (StateEvent e : events) state.put(e.entity + ":" + e.entityId, e.to);
+            return state;
+        }
+    }
+
+    // ---------------- Interner ----------------
+    // Canonical String instances for the low-cardinality attributes the mappers read: status, category,
+    // fuel type, transmission and role. Ids, places, dates and times are never passed in; the bound is
+    // only a guard against a misbehaving column, after which unseen values are returned as-is.
+    public static class Interner {
+        private static final int MAX_ENTRIES = Integer.getInteger("carrental.dictionary.max", 65_536);
+        private static final ConcurrentHashMap<String,String> canonical = new ConcurrentHashMap<>();
+
+        public static String of(String value){
+            if(value == null) return null;
+            String c = canonical.get(value);
+            if(c != null) return c;
+            if(canonical.size() >= MAX_ENTRIES) return value;
+            c = canonical.putIfAbsent(value, value);
+            return c == null ? value : c;
+        }
+
+        public static int size(){ return canonical.size(); }
+    }
+
+    // Heap retained by a bookings + cars load through the mappers, with the interned columns shared
+    // versus a fresh String per row (what the driver hands back without interning). Loads N bookings
+    // (default 100,000) and N/10 cars from a temp SQLite file. Needs the SQLite driver on the classpath:
+    //   java -Xmx1g -cp .:sqlite-jdbc.jar 'CarRentalFull$InternerCheck' [bookings]
+    public static class InternerCheck {
+        public static void main(String[] args) throws Exception {
+            int bookings = args.length > 0 ? Integer.parseInt(args[0]) : 100_000, cars = Math.max(1, bookings / 10);
+            Path file = Files.createTempFile("carrental-heap", ".db");
+            try {
+                SqliteRepository sqlite = new SqliteRepository("jdbc:sqlite:" + file, false);
+                fill(sqlite.conn, bookings, cars);
+                long shared = retained(() -> load(sqlite, false)), fresh = retained(() -> load(sqlite, true));
+                sqlite.conn.close();
+                System.out.printf(Locale.ROOT, "%,d bookings + %,d cars: %,d bytes interned, %,d bytes with a String per row (%.1f%% less, %,d canonical values)%n",
+                        bookings, cars, shared, fresh, 100.0 * (fresh - shared) / fresh, Interner.size());
+            } finally { Files.deleteIfExists(file); }
+        }
+
+        private static void fill(Connection conn, int bookings, int cars) throws SQLException {
+            String[] categories = {"Sedan", "SUV", "Hatchback", "Luxury"}, fuels = {"Petrol", "Diesel", "Electric"}, transmissions = {"Manual", "Automatic"};
+            String[] statuses = {"Pending", "Confirmed", "Rejected", "Expired"}, places = {"Airport", "Central Station", "City Mall", "Harbour"};
+            Random rnd = new Random(42);
+            conn.setAutoCommit(false);
+            try (PreparedStatement car = conn.prepareStatement("INSERT INTO cars VALUES (?,?,?,?,?,?,?,?,?,?,?)");
+                 PreparedStatement booking = conn.prepareStatement("INSERT INTO bookings (id, car_id, user_id, pickup_place, pickup_date, pickup_time, days, total_price, status) VALUES (?,?,?,?,?,?,?,?,?)")) {
+                for (int i = 1; i <= cars; i++) {
+                    Object[] row = {Repositories.formatId("C", i), "Car " + i, "Model " + (i % 50), 1000 + rnd.nextInt(9000), categories[rnd.nextInt(4)],
+                            rnd.nextInt(5) == 0 ? "Rented" : "Available", null, Repositories.formatId("U", 1 + rnd.nextInt(200)), fuels[rnd.nextInt(3)], 2 + rnd.nextInt(6), transmissions[rnd.nextInt(2)]};
+                    for (int k = 0; k < row.length; k++) car.setObject(k + 1, row[k]);
+                    car.addBatch();
+                }
+                car.executeBatch();
+                for (int i = 1; i <= bookings; i++) {
+                    LocalDate day = LocalDate.of(2025, 1, 1).plusDays(rnd.nextInt(730));
+                    Object[] row = {Repositories.formatId("B", i), Repositories.formatId("C", 1 + rnd.nextInt(cars)), Repositories.formatId("U", 1 + rnd.nextInt(5000)),
+                            places[rnd.nextInt(4)], day.format(DateTimeFormatter.ofPattern("dd/MM/yyyy")), (8 + rnd.nextInt(10)) + ":00", 1 + rnd.nextInt(14), 1000.0 * (1 + rnd.nextInt(50)), statuses[rnd.nextInt(4)]};
+                    for (int k = 0; k < row.length; k++) booking.setObject(k + 1, row[k]);
+                    booking.addBatch();
+                }
+                booking.executeBatch();
+            }
+            conn.commit();
+            conn.setAutoCommit(true);
+        }
+
+        // Both lists; with fresh=true every interned column is replaced by its own copy, as if never interned.
+        private static Object load(SqliteRepository r, boolean fresh) {
+            List<Booking> bookings = r.fetchBookings();
+            List<Car> cars = r.fetchCars();
+            if (fresh) {
+                for (Booking b : bookings) b.status = new String(b.status);
+                for (Car c : cars) {
+                    c.category = new String(c.category); c.status = new String(c.status);
+                    c.fuelType = new String(c.fuelType); c.transmission = new String(c.transmission);
+                }
+            }
+            return Arrays.asList(bookings, cars);
+        }
+
+        // Used heap after a full GC with the loaded lists held, minus used heap before loading.
+        private static long retained(Supplier<Object> load) {
+            long before = usedAfterGc();
+            Object held = load.get();
+            long after = usedAfterGc();
+            java.lang.ref.Reference.reachabilityFence(held);
+            return after - before;
+        }
+
+        private static long usedAfterGc() {
+            Runtime rt = Runtime.getRuntime();
+            for (int i = 0; i < 3; i++) { System.gc(); try { Thread.sleep(100); } catch (InterruptedException e) { Thread.currentThread().interrupt(); } }
+            return rt.totalMemory() - rt.freeMemory();
+        }
+    }
+
+    // ---------------- Authorization ----------------
+    public enum Permission {
+        BROWSE_CARS, BOOK_CARS, VIEW_OWN_BOOKINGS, MANAGE_OWN_CARS, MANAGE_ALL_CARS,
+        VIEW_USERS, VIEW_CAR_OWNERS, VIEW_ALL_BOOKINGS, APPROVE_BOOKINGS, VIEW_REPORTS;
+        final long bit = 1L << ordinal();
+    }
+
+    // Each role's permissions are folded into one bitset when the enum loads; checks are a single AND.
+    public enum Role {
+        ADMIN(Permission.BROWSE_CARS, Permission.MANAGE_ALL_CARS, Permission.VIEW_USERS, Permission.VIEW_CAR_OWNERS, Permission.VIEW_ALL_BOOKINGS, Permission.VIEW_REPORTS),
+        SELLER(Permission.BROWSE_CARS, Permission.MANAGE_OWN_CARS, Permission.APPROVE_BOOKINGS),
+        USER(Permission.BROWSE_CARS, Permission.BOOK_CARS, Permission.VIEW_OWN_BOOKINGS),
+        NONE();
+
+        private final long permissions;
+        Role(Permission... granted){
+            long bits = 0;
+            for(Permission p : granted) bits |= p.bit;
+            permissions = bits;
+        }
+        public boolean has(Permission p){ return (permissions & p.bit) != 0; }
+
+        public static Role of(String role){
+            if(role == null) return NONE;
+            switch(role.toLowerCase()){
+                case "admin": return ADMIN;
+                case "seller": return SELLER;
+                case "user": return USER;
+                default: return NONE;
+            }
+        }
+    }
+
+    public static class Auth {
+        public static boolean can(User u, Permission p){ return u != null && u.roleType().has(p); }
+
+        // Admins may manage any car, sellers only the ones they own (or a new one, car == null).
+        public static boolean canManageCar(User u, Car car){
+            if(can(u, Permission.MANAGE_ALL_CARS)) return true;
+            return can(u, Permission.MANAGE_OWN_CARS) && (car == null || u.id.equals(car.ownerId));
+        }
+
+        public static boolean canSeeBookingFor(User u, Car car){
+            if(can(u, Permission.VIEW_ALL_BOOKINGS)) return true;
+            return can(u, Permission.APPROVE_BOOKINGS) && car != null && u.id.equals(car.ownerId);
+        }
+    }
+
+    // ---------------- Repository SPI ----------------
+    // Storage operations the UI needs, so one client runs against Postgres (DataStore), a local SQLite
+    // file or plain memory; pick one with -Dcarrental.backend=postgres|sqlite|memory (default postgres).
+    // The optional operations have defaults built on the core ones; a backend overrides them when it can
+    // answer more cheaply (Postgres uses its counters, rollups and SQL paging).
+    public interface RentalRepository {
+        String name();
+
+        Optional<User> authenticate(String username, String password, String role);
+        boolean usernameExists(String username);
+        List<User> fetchUsers();
+        List<Car> fetchCars();
+        List<Booking> fetchBookings();
+        List<Booking> fetchBookingsByUserId(String userId);
+        User findUserById(String id);
+        Car findCarById(String id);
+        void addUser(User u);
+        void addCar(Car c);
+        void updateCar(Car c);
+        void deleteCar(String id);
+        void addBooking(Booking b);
+        void updateBookingStatus(String bookingId, String newStatus);
+        // Moves a booking to newStatus only if it is still in expectedStatus (any status when null).
+        // False when the booking is missing or was in another status; errors are thrown, not reported.
+        boolean changeBookingStatus(String bookingId, String expectedStatus, String newStatus) throws SQLException;
+        String nextCarId();
+        String nextUserId();
+        String nextBookingId();
+
+        default SellerStats sellerStats(String sellerId) {
+            Set<String> owned = new HashSet<>();
+            for (Car c : fetchCars()) if (sellerId.equals(c.ownerId)) owned.add(c.id);
+            int pending = 0, confirmed = 0, rejected = 0; double revenue = 0;
+            for (Booking b : fetchBookings()) {
+                if (!owned.contains(b.carId)) continue;
+                if ("Pending".equals(b.status)) pending++;
+                else if ("Confirmed".equals(b.status)) { confirmed++; revenue += b.totalPrice; }
+                else if ("Rejected".equals(b.status)) rejected++;
+            }
+            return new SellerStats(sellerId, pending, confirmed, rejected, revenue);
+        }
+
+        default int countBookings() { return fetchBookings().size(); }
+
+        // Sort columns follow the admin booking table: id, car, status, buyer, owner contact, date, time, days, total.
+        // Null (not an empty page) when the backend could not be read.
+        default List<BookingRow> fetchBookingRows(int sortColumn, boolean ascending, int offset, int limit) {
+            Map<String,User> users = new HashMap<>();
+            for (User u : fetchUsers()) users.put(u.id, u);
+            Map<String,Car> cars = new HashMap<>();
+            for (Car c : fetchCars()) cars.put(c.id, c);
+            List<BookingRow> rows = new ArrayList<>();
+            for (Booking b : fetchBookings()) {
+                User buyer = users.get(b.userId);
+                Car car = cars.get(b.carId);
+                User owner = car == null ? null : users.get(car.ownerId);
+                rows.add(new BookingRow(b, buyer == null ? null : buyer.username, owner == null ? null : owner.contact));
+            }
+            Comparator<String> text = Comparator.nullsFirst(Comparator.naturalOrder());
+            List<Comparator<BookingRow>> columns = List.of(Comparator.comparing(r -> r.booking.id, text), Comparator.comparing(r -> r.booking.carId, text),
+                    Comparator.comparing(r -> r.booking.status, text), Comparator.comparing(r -> r.buyerName, text), Comparator.comparing(r -> r.ownerContact, text),
+                    Comparator.comparing(r -> r.booking.pickupDate, text), Comparator.comparing(r -> r.booking.pickupTime, text),
+                    Comparator.comparingInt(r -> r.booking.days), Comparator.comparingDouble(r -> r.booking.totalPrice));
+            Comparator<BookingRow> order = columns.get(sortColumn);
+            rows.sort((ascending ? order : order.reversed()).thenComparing(r -> r.booking.id));
+            return new ArrayList<>(rows.subList(Math.min(offset, rows.size()), Math.min(offset + limit, rows.size())));
+        }
+
+        default List<Car> fetchCarsByIds(Collection<String> ids) {
+            Set<String> wanted = new HashSet<>(ids);
+            List<Car> cars = new ArrayList<>();
+            for (Car c : fetchCars()) if (wanted.contains(c.id)) cars.add(c);
+            return cars;
+        }
+
+        // Booked day ranges per car for bookings that still hold the car (Pending or Confirmed), packed as
+        // [start0, end0, start1, end1, ...] in epoch days with exclusive ends. Null when the backend could not be read.
+        default Map<String,long[]> fetchBookedRanges(Collection<String> carIds) {
+            Set<String> wanted = new HashSet<>(carIds);
+            Map<String,long[]> ranges = new HashMap<>();
+            for (Booking b : fetchBookings()) {
+                LocalDate start = Dates.parse(b.pickupDate);
+                if (start == null || !("Pending".equals(b.status) || "Confirmed".equals(b.status)) || !wanted.contains(b.carId)) continue;
+                long[] prev = ranges.getOrDefault(b.carId, new long[0]);
+                long[] next = Arrays.copyOf(prev, prev.length + 2);
+                next[prev.length] = start.toEpochDay(); next[prev.length + 1] = start.toEpochDay() + Math.max(1, b.days);
+                ranges.put(b.carId, next);
+            }
+            return ranges;
+        }
+
+        default List<PricingEngine.Rule> fetchPricingRules() { return Collections.emptyList(); }
+
+        default Analytics.Facts fetchAnalyticsFacts() {
+            Map<String,Car> cars = new HashMap<>();
+            for (Car c : fetchCars()) cars.put(c.id, c);
+            Analytics.Facts facts = new Analytics.Facts();
+            for (Booking b : fetchBookings()) {
+                Car c = cars.get(b.carId);
+                facts.add(c == null ? null : c.ownerId, c == null ? null : c.category, Dates.parse(b.pickupDate), b.days, b.totalPrice, b.status, -1, null);
+            }
+            return facts;
+        }
+
+        default Map<String,Integer> fleetByCategory() {
+            Map<String,Integer> fleet = new HashMap<>();
+            for (Car c : fetchCars()) fleet.merge(Analytics.label(c.category), 1, Integer::sum);
+            return fleet;
+        }
+
+        default Analytics.Report report(LocalDate from, LocalDate to) throws SQLException {
+            return Analytics.run(fetchAnalyticsFacts(), fleetByCategory(), from, to);
+        }
+
+        // Status changes of one booking or car, oldest first; empty where the backend keeps no history.
+        default List<StateEvent> fetchHistory(String entityId) { return Collections.emptyList(); }
+        // Status changes of all bookings and cars with from <= at < to, oldest first.
+        default List<StateEvent> fetchEvents(Timestamp from, Timestamp to) { return Collections.emptyList(); }
+        // Statuses of every booking and car as of the given moment, rebuilt by replaying the history.
+        default Map<String,String> statusesAt(Timestamp at) { return StateEvent.replay(fetchEvents(new Timestamp(0), at), new HashMap<>()); }
+
+        // Derived tables (counters, rollups) that can drift from the source rows; none by default.
+        default Map<String,Integer> checkDerivedData() { return Collections.emptyMap(); }
+        default boolean rebuildDerivedData() { return true; }
+    }
+
+    // ---------------- Circuit Breaker ----------------
+    // CLOSED: calls go through and consecutive failures are counted. After `threshold` of them it
+    // goes OPEN and callers fail fast for `cooldownMillis`; then one caller is let through as a
+    // HALF_OPEN probe, whose outcome closes the breaker or opens it for another cooldown.
+    public static class CircuitBreaker {
+        public enum State { CLOSED, OPEN, HALF_OPEN }
+
+        private final String name; private final int threshold; private final long cooldownMillis;
+        private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private volatile long openedAt, changedAt = System.currentTimeMillis();
+        private volatile Thread probe;
+        private final Map<State,LongAdder> entered = new EnumMap<>(State.class);
+        private final LongAdder rejected = new LongAdder(), failures = new LongAdder();
+
+        public CircuitBreaker(String name, int threshold, long cooldownMillis){
+            this.name=name; this.threshold=threshold; this.cooldownMillis=cooldownMillis;
+            for(State s : State.values()) entered.put(s, new LongAdder());
+        }
+
+        // False while open (or while another thread holds the half-open probe; the probe's own nested calls pass).
+        public boolean allow(){
+            State s = state.get();
+            if(s == State.CLOSED) return true;
+            if(s == State.HALF_OPEN && probe == Thread.currentThread()) return true;
+            if(s == State.OPEN && System.currentTimeMillis() - openedAt >= cooldownMillis && state.compareAndSet(State.OPEN, State.HALF_OPEN)){
+                probe = Thread.currentThread();
+                changed(State.OPEN, State.HALF_OPEN);
+                return true;
+            }
+            rejected.increment();
+            return false;
+        }
+
+        public void onSuccess(){
+            consecutiveFailures.set(0);
+            State s = state.get();
+            if(s != State.CLOSED && state.compareAndSet(s, State.CLOSED)) changed(s, State.CLOSED);
+        }
+
+        public void onFailure(){
+            failures.increment();
+            if(state.get() == State.HALF_OPEN || consecutiveFailures.incrementAndGet() >= threshold) trip();
+        }
+
+        public void trip(){
+            openedAt = System.currentTimeMillis();
+            State s = state.getAndSet(State.OPEN);
+            if(s != State.OPEN) changed(s, State.OPEN);
+        }
+
+        private void changed(State from, State to){
+            changedAt = System.currentTimeMillis();
+            entered.get(to).increment();
+            System.err.println("Circuit " + name + ": " + from + " -> " + to);
+        }
+
+        public State state(){ return state.get(); }
+        public long changedAt(){ return changedAt; }
+        public long enteredCount(State s){ return entered.get(s).sum(); }
+        public long rejectedCount(){ return rejected.sum(); }
+        public long failureCount(){ return failures.sum(); }
+    }
+
     // ---------------- DataStore (SUPABASE PostgreSQL Integration) ----------------
     public static class DataStore {
         
@@ -64,46 +485,154 @@ public class CarRentalFull {
         private static final String DB_HOST = "pooler.pwgmnmoxgblcawhmdpo.supabase.co"; // Pooler Host
         private static final String DB_PORT = "6543"; // Pooler Port
         private static final String DB_NAME = "postgres"; 
-        private static final String DB_USER = "postgres"; 
-        private static final String DB_PASS = "alwinjava123"; // Assumed simple password
+        private static final String DB_USER = System.getProperty("carrental.dbUser", "postgres"); 
+        private static final String DB_PASS = System.getProperty("carrental.dbPassword", "alwinjava123"); // Assumed simple password
         
-        private static final String JDBC_URL = "jdbc:postgresql://" + DB_HOST + ":" + DB_PORT + "/" + DB_NAME + "?pgbouncer=true&sslmode=require"; 
-        private static Connection connection = null; 
+        // -Dcarrental.jdbcUrl points the app at another Postgres, e.g. a local stand-in for testing sync.
+        private static final String JDBC_URL = System.getProperty("carrental.jdbcUrl", "jdbc:postgresql://" + DB_HOST + ":" + DB_PORT + "/" + DB_NAME + "?pgbouncer=true&sslmode=require"); 
+        private static volatile Connection connection = null; // autocommit only; never switched into a transaction
+        private static final Object TX_LOCK = new Object();
+        private static Connection txConnection; // guarded by TX_LOCK; autocommit off, used only by inTransaction
+        private static final ThreadLocal<Connection> TX = new ThreadLocal<>(); // set while this thread is inside inTransaction
+        // Remote-call limits (see Resilience below); declared here because the static block already connects.
+        private static final int QUERY_TIMEOUT_SECONDS = Integer.getInteger("carrental.queryTimeoutSeconds", 10);
+        private static final int READ_ATTEMPTS = Integer.getInteger("carrental.readAttempts", 3);
+        private static final long RETRY_BASE_MILLIS = 100, RETRY_MAX_MILLIS = 2000;
+        public static final CircuitBreaker BREAKER = new CircuitBreaker("supabase",
+                Integer.getInteger("carrental.breakerThreshold", 5), Long.getLong("carrental.breakerCooldownMillis", 15000));
+        public static final LongAdder readRetries = new LongAdder(), degradedReads = new LongAdder();
+        private static boolean schemaReady;
+        private static final String[] SYNCED_TABLES = {"users", "cars", "bookings"};
+        private static final int TOMBSTONE_DAYS = Integer.getInteger("carrental.tombstoneDays", 30);
+        private static volatile boolean eventsNeedBackfill;
+        // Daily rollup tables: {table, key column, key expression over bookings b / cars c}.
+        private static final String[][] ROLLUPS = {
+            {"rollup_car_daily", "car_id", "b.car_id"},
+            {"rollup_seller_daily", "seller_id", "c.owner_id"},
+            {"rollup_category_daily", "category", "COALESCE(c.category, '')"}};
+        // Read replicas (see Read Routing below); declared here because the static block already writes.
+        private static final List<Replica> replicas = new ArrayList<>();
+        private static final AtomicInteger nextReplica = new AtomicInteger();
+        private static final long STICKY_MILLIS = Long.getLong("carrental.replicaStickyMillis", 5000);
+        private static volatile long lastWriteMillis;
+        private static volatile String lastWriteLsn;
+        public static final LongAdder replicaReads = new LongAdder(), primaryReads = new LongAdder();
+        private static final ScheduledExecutorService MAINTENANCE = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "datastore-maintenance"); t.setDaemon(true); return t;
+        });
 
         static {
             try {
                 // 🛑 CORRECT DRIVER LOAD for PostgreSQL
                 Class.forName("org.postgresql.Driver"); 
-                connection = DriverManager.getConnection(JDBC_URL, DB_USER, DB_PASS); 
-                System.out.println("Supabase Database connected successfully.");
-                
-                createTablesIfNotExists();
-                
-                if (getUsersCount() == 0) {
-                    initializeDefaultData();
-                }
-
+                connect();
             } catch (Exception e) {
+                // Start degraded instead of exiting: reads serve the cached catalog and the breaker keeps probing.
                 System.err.println("Error connecting to Supabase: " + e.getMessage());
                 e.printStackTrace();
-                JOptionPane.showMessageDialog(null, "Database Connection Failed! Check Host/Password/Firewall.", "DB Error", JOptionPane.ERROR_MESSAGE);
-                System.exit(1); 
+                BREAKER.trip();
+                UIUtils.showErrorLater("Database Connection Failed! Check Host/Password/Firewall.\nShowing the last cached catalog until it reconnects.", "DB Error");
+            }
+
+            // Backfills seller_stats on first run, then keeps checking it for drift.
+            MAINTENANCE.scheduleWithFixedDelay(() -> { if (BREAKER.state() == CircuitBreaker.State.CLOSED) reconcileSellerStats(); }, 0, 15, TimeUnit.MINUTES);
+            MAINTENANCE.scheduleWithFixedDelay(() -> { if (BREAKER.state() == CircuitBreaker.State.CLOSED) purgeTombstones(); }, 5, 24 * 60, TimeUnit.MINUTES);
+            // Same for the daily rollups: an empty or drifted rollup is rebuilt from bookings.
+            MAINTENANCE.scheduleWithFixedDelay(() -> {
+                if (BREAKER.state() == CircuitBreaker.State.CLOSED && checkRollups().values().stream().anyMatch(n -> n != 0)) rebuildRollups();
+            }, 1, 24 * 60, TimeUnit.MINUTES);
+        }
+
+        // Opens the primary connection; the first successful one also creates the schema and seeds it.
+        private static synchronized Connection connect() throws SQLException {
+            Connection c = connection;
+            if (c != null && !c.isClosed()) return c;
+            c = open();
+            connection = c;
+            if (schemaReady) { System.out.println("Supabase Database reconnected."); return c; }
+            System.out.println("Supabase Database connected successfully.");
+            createTablesIfNotExists();
+            connectReplicas();
+            if (getUsersCount() == 0) {
+                initializeDefaultData();
             }
+            schemaReady = true;
+            return c;
         }
         
+        private static Connection open() throws SQLException {
+            Properties props = new Properties();
+            props.setProperty("user", DB_USER); props.setProperty("password", DB_PASS);
+            props.setProperty("connectTimeout", "5"); props.setProperty("loginTimeout", "10");
+            // A backstop for hangs the per-statement timeout can't see (dead sockets, stuck TLS).
+            props.setProperty("socketTimeout", String.valueOf(QUERY_TIMEOUT_SECONDS * 3)); props.setProperty("tcpKeepAlive", "true");
+            return DriverManager.getConnection(JDBC_URL, props);
+        }
+
         // *** Tables Creation (PostgreSQL Version) ***
         private static void createTablesIfNotExists() throws SQLException {
-            Statement stmt = connection.createStatement();
+            Statement stmt = statement(primary());
             // Note: If tables exist, the "IF NOT EXISTS" prevents errors.
             stmt.execute("CREATE TABLE IF NOT EXISTS users (id TEXT PRIMARY KEY, username TEXT UNIQUE NOT NULL, password TEXT NOT NULL, role TEXT NOT NULL, contact TEXT)");
             stmt.execute("CREATE TABLE IF NOT EXISTS cars (id TEXT PRIMARY KEY, name TEXT NOT NULL, model TEXT, price_per_day REAL NOT NULL, category TEXT, status TEXT, image_path TEXT, owner_id TEXT, fuel_type TEXT, seats INTEGER, transmission TEXT)");
             stmt.execute("CREATE TABLE IF NOT EXISTS bookings (id TEXT PRIMARY KEY, car_id TEXT, user_id TEXT, pickup_place TEXT, pickup_date TEXT, pickup_time TEXT, days INTEGER, total_price REAL, status TEXT DEFAULT 'Pending')");
+            stmt.execute("CREATE TABLE IF NOT EXISTS seller_stats (seller_id TEXT PRIMARY KEY, pending INTEGER NOT NULL DEFAULT 0, confirmed INTEGER NOT NULL DEFAULT 0, rejected INTEGER NOT NULL DEFAULT 0, revenue REAL NOT NULL DEFAULT 0)");
+            // created_at / decided_at feed the approval-latency report. The default is set separately so rows that
+            // predate the column keep a NULL created_at instead of the migration time, and stay out of the report.
+            stmt.execute("ALTER TABLE bookings ADD COLUMN IF NOT EXISTS created_at TIMESTAMPTZ");
+            stmt.execute("ALTER TABLE bookings ALTER COLUMN created_at SET DEFAULT now()");
+            stmt.execute("ALTER TABLE bookings ADD COLUMN IF NOT EXISTS decided_at TIMESTAMPTZ");
+            for (String[] t : ROLLUPS) {
+                stmt.execute("CREATE TABLE IF NOT EXISTS " + t[0] + " (day DATE NOT NULL, " + t[1] + " TEXT NOT NULL, bookings INTEGER NOT NULL DEFAULT 0, "
+                        + "revenue DOUBLE PRECISION NOT NULL DEFAULT 0, rented_days INTEGER NOT NULL DEFAULT 0, PRIMARY KEY (day, " + t[1] + "))");
+            }
+            stmt.execute("CREATE INDEX IF NOT EXISTS bookings_decided_at_idx ON bookings (decided_at)");
+            stmt.execute("CREATE TABLE IF NOT EXISTS pricing_rules (id TEXT PRIMARY KEY, scope_type TEXT NOT NULL, scope TEXT, kind TEXT NOT NULL, start_md TEXT, end_md TEXT, min_days INTEGER, factor REAL NOT NULL)");
+            // updated_at is the row version used by sync clients: pulls are "changed since", pushes are "unchanged since".
+            stmt.execute("CREATE OR REPLACE FUNCTION touch_updated_at() RETURNS trigger AS $$ BEGIN NEW.updated_at := clock_timestamp(); RETURN NEW; END $$ LANGUAGE plpgsql");
+            // pickup_date is free text; to_date raises on dd/MM/yyyy values that are not real dates (31/02/2025), which
+            // would abort a whole rollup rebuild. pickup_day gives NULL for those so set-based queries can skip them.
+            stmt.execute("CREATE OR REPLACE FUNCTION pickup_day(s TEXT) RETURNS DATE AS $$ BEGIN "
+                    + "IF s IS NULL OR s !~ '^[0-9]{2}/[0-9]{2}/[0-9]{4}$' THEN RETURN NULL; END IF; RETURN to_date(s, 'DD/MM/YYYY'); "
+                    + "EXCEPTION WHEN others THEN RETURN NULL; END $$ LANGUAGE plpgsql STABLE");
+            try (ResultSet rs = stmt.executeQuery("SELECT to_regclass('scheduled_events') IS NULL")) { rs.next(); eventsNeedBackfill = rs.getBoolean(1); }
+            stmt.execute("CREATE TABLE IF NOT EXISTS scheduled_events (id TEXT PRIMARY KEY, kind TEXT NOT NULL, target TEXT NOT NULL, due_at TIMESTAMPTZ NOT NULL, leased_until TIMESTAMPTZ)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS scheduled_events_due_idx ON scheduled_events (due_at)");
+            for (String table : SYNCED_TABLES) {
+                stmt.execute("ALTER TABLE " + table + " ADD COLUMN IF NOT EXISTS updated_at TIMESTAMPTZ NOT NULL DEFAULT clock_timestamp()");
+                // Deletes are tombstones (deleted_at set, row kept) so changesSince can report them; see purgeTombstones.
+                stmt.execute("ALTER TABLE " + table + " ADD COLUMN IF NOT EXISTS deleted_at TIMESTAMPTZ");
+                stmt.execute("CREATE INDEX IF NOT EXISTS " + table + "_updated_at_idx ON " + table + " (updated_at)");
+                stmt.execute("DROP TRIGGER IF EXISTS " + table + "_touch ON " + table);
+                stmt.execute("CREATE TRIGGER " + table + "_touch BEFORE UPDATE ON " + table + " FOR EACH ROW EXECUTE FUNCTION touch_updated_at()");
+            }
+            // state_events: append-only status history of bookings and cars, see fetchHistory.
+            stmt.execute("CREATE TABLE IF NOT EXISTS state_events (seq BIGSERIAL PRIMARY KEY, at TIMESTAMPTZ NOT NULL DEFAULT clock_timestamp(), "
+                    + "entity TEXT NOT NULL, entity_id TEXT NOT NULL, from_status TEXT, to_status TEXT)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS state_events_entity_idx ON state_events (entity_id, seq)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS state_events_at_idx ON state_events (at, seq)");
+            stmt.execute("CREATE OR REPLACE FUNCTION log_state_event() RETURNS trigger AS $$ BEGIN "
+                    + "IF TG_OP = 'INSERT' THEN INSERT INTO state_events (entity, entity_id, to_status) VALUES (TG_ARGV[0], NEW.id, NEW.status); "
+                    + "ELSIF NEW.deleted_at IS NOT NULL AND OLD.deleted_at IS NULL THEN "
+                    + "INSERT INTO state_events (entity, entity_id, from_status, to_status) VALUES (TG_ARGV[0], NEW.id, OLD.status, 'Deleted'); "
+                    + "ELSIF NEW.status IS DISTINCT FROM OLD.status THEN "
+                    + "INSERT INTO state_events (entity, entity_id, from_status, to_status) VALUES (TG_ARGV[0], NEW.id, OLD.status, NEW.status); "
+                    + "END IF; RETURN NULL; END $$ LANGUAGE plpgsql");
+            stmt.execute("CREATE OR REPLACE FUNCTION reject_state_event_change() RETURNS trigger AS $$ BEGIN "
+                    + "RAISE EXCEPTION 'state_events is append-only'; END $$ LANGUAGE plpgsql");
+            stmt.execute("DROP TRIGGER IF EXISTS state_events_append_only ON state_events");
+            stmt.execute("CREATE TRIGGER state_events_append_only BEFORE UPDATE OR DELETE ON state_events FOR EACH ROW EXECUTE FUNCTION reject_state_event_change()");
+            for (String[] t : new String[][]{{"bookings", "booking"}, {"cars", "car"}}) {
+                stmt.execute("DROP TRIGGER IF EXISTS " + t[0] + "_history ON " + t[0]);
+                stmt.execute("CREATE TRIGGER " + t[0] + "_history AFTER INSERT OR UPDATE OF status, deleted_at ON " + t[0]
+                        + " FOR EACH ROW EXECUTE FUNCTION log_state_event('" + t[1] + "')");
+            }
             stmt.close();
         }
 
         // --- Helper Methods ---
         private static int getUsersCount() throws SQLException {
-            Statement stmt = connection.createStatement();
+            Statement stmt = statement(primary());
             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM users");
             rs.next();
             int count = rs.getInt(1);
@@ -122,6 +651,7 @@ public class CarRentalFull {
                  addCar(new Car("C001","Toyota Camry","Camry",3500,"Sedan","Available","images/Toyota_Camry.jpeg","U004","Petrol",5,"Automatic"));
                  addCar(new Car("C002","Honda Civic","Civic",3200,"Sedan","Available","images/Honda_Civic.jpeg","U005","Petrol",5,"Automatic"));
                  addCar(new Car("C003","BMW X5","X5",7000,"SUV","Available","images/BMW_X5.jpeg","U004","Diesel",5,"Automatic"));
+                 for (PricingEngine.Rule r : PricingEngine.demoRules()) addPricingRule(r);
             } catch (Exception e) {
                  System.err.println("Failed to insert default data: " + e.getMessage());
             }
@@ -129,145 +659,3399 @@ public class CarRentalFull {
 
         // --- ID Generation ---
         private static String getNextId(String table, String prefix) {
-            String sql = "SELECT MAX(CAST(SUBSTR(id, 2) AS INTEGER)) FROM " + table;
-            try (Statement stmt = connection.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
-                if (rs.next()) { int max = rs.getInt(1); return String.format(prefix + "%03d", max + 1); }
-            } catch (SQLException e) { e.printStackTrace(); }
+            try { return allocateId(table, prefix); } catch (SQLException e) { e.printStackTrace(); }
             return prefix + "001"; 
         }
+        static String allocateId(String table, String prefix) throws SQLException {
+            String sql = "SELECT MAX(CAST(SUBSTR(id, 2) AS INTEGER)) FROM " + table;
+            return attempt(db -> {
+                try (Statement stmt = statement(db); ResultSet rs = stmt.executeQuery(sql)) {
+                    return String.format(prefix + "%03d", (rs.next() ? rs.getInt(1) : 0) + 1);
+                }
+            });
+        }
         public static String nextCarId(){ return getNextId("cars", "C"); }
         public static String nextUserId(){ return getNextId("users", "U"); }
         public static String nextBookingId(){ return getNextId("bookings", "B"); }
 
         // --- Data Mappers ---
+        // Low-cardinality columns go through Interner so every row shares one String per value.
         private static Car mapCar(ResultSet rs) throws SQLException {
             return new Car(rs.getString("id"), rs.getString("name"), rs.getString("model"), rs.getDouble("price_per_day"),
-                rs.getString("category"), rs.getString("status"), rs.getString("image_path"), rs.getString("owner_id"),
-                rs.getString("fuel_type"), rs.getInt("seats"), rs.getString("transmission"));
+                Interner.of(rs.getString("category")), Interner.of(rs.getString("status")), rs.getString("image_path"), rs.getString("owner_id"),
+                Interner.of(rs.getString("fuel_type")), rs.getInt("seats"), Interner.of(rs.getString("transmission")));
         }
         private static User mapUser(ResultSet rs) throws SQLException {
             return new User(rs.getString("id"), rs.getString("username"), rs.getString("password"),
-                rs.getString("role"), rs.getString("contact"));
+                Interner.of(rs.getString("role")), rs.getString("contact"));
+        }
+        // The change feed sends no password hashes (USER_FEED_COLUMNS); a mirror keeps only its signed-in user's.
+        private static User mapFeedUser(ResultSet rs) throws SQLException {
+            return new User(rs.getString("id"), rs.getString("username"), "", Interner.of(rs.getString("role")), rs.getString("contact"));
         }
         private static Booking mapBooking(ResultSet rs) throws SQLException {
             return new Booking(rs.getString("id"), rs.getString("car_id"), rs.getString("user_id"), 
                 rs.getString("pickup_place"), rs.getString("pickup_date"), rs.getString("pickup_time"),
-                rs.getInt("days"), rs.getDouble("total_price"), rs.getString("status")); 
+                rs.getInt("days"), rs.getDouble("total_price"), Interner.of(rs.getString("status"))); 
         }
 
         // --- CRUD and AUTH Operations ---
         public static Optional<User> authenticate(String username, String password, String role) {
-            String sql = "SELECT * FROM users WHERE username = ? AND password = ? AND role = ?";
-            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-                pstmt.setString(1, username); pstmt.setString(2, password); pstmt.setString(3, role);
+            if (!LoginLimiter.tryAcquire(username)) return Optional.empty();
+            String sql = "SELECT * FROM users WHERE username = ? AND role = ? AND deleted_at IS NULL";
+            try (PreparedStatement pstmt = prepare(primary(), sql)) {
+                pstmt.setString(1, username); pstmt.setString(2, role);
                 ResultSet rs = pstmt.executeQuery();
-                if (rs.next()) { return Optional.of(mapUser(rs)); }
+                if (rs.next()) {
+                    User u = mapUser(rs);
+                    if (!Passwords.verify(password, u.password)) return Optional.empty();
+                    // Legacy plaintext rows and hashes below the current cost are upgraded on login.
+                    if (Passwords.needsRehash(u.password)) { u.password = Passwords.hash(password); updatePassword(u.id, u.password); }
+                    LoginLimiter.onSuccess(username);
+                    return Optional.of(u);
+                }
             } catch (SQLException e) { e.printStackTrace(); } return Optional.empty();
         }
+        private static void updatePassword(String userId, String hash) {
+            String sql = "UPDATE users SET password = ? WHERE id = ?";
+            try (PreparedStatement pstmt = prepare(primary(), sql)) {
+                pstmt.setString(1, hash); pstmt.setString(2, userId); pstmt.executeUpdate(); wrote();
+            } catch (SQLException e) { e.printStackTrace(); }
+        }
         public static boolean usernameExists(String username) {
-            String sql = "SELECT 1 FROM users WHERE username = ?";
-            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-                pstmt.setString(1, username); return pstmt.executeQuery().next();
-            } catch (SQLException e) { e.printStackTrace(); } return false;
+            return read(db -> {
+                try (PreparedStatement pstmt = prepare(db, "SELECT 1 FROM users WHERE username = ?")) {
+                    pstmt.setString(1, username); return pstmt.executeQuery().next();
+                }
+            }, () -> false);
+        }
+        public static List<User> fetchUsers() {
+            return read(db -> {
+                List<User> users = new ArrayList<>();
+                try (Statement stmt = statement(db); ResultSet rs = stmt.executeQuery("SELECT * FROM users WHERE deleted_at IS NULL")) {
+                    while (rs.next()) { users.add(mapUser(rs)); }
+                } return users;
+            }, ArrayList::new);
+        }
+        // While the database is unreachable the catalog comes from the last snapshot (in memory or on disk).
+        public static List<Car> fetchCars() {
+            return read(db -> {
+                List<Car> cars = new ArrayList<>();
+                try (Statement stmt = statement(db); ResultSet rs = stmt.executeQuery("SELECT * FROM cars WHERE deleted_at IS NULL")) {
+                    while (rs.next()) { cars.add(mapCar(rs)); }
+                } return cars;
+            }, () -> CatalogSnapshot.cached().orElseGet(ArrayList::new));
+        }
+        public static List<Booking> fetchBookings() { // Fetch ALL bookings for Admin/Seller view
+            return read(db -> {
+                List<Booking> allBookings = new ArrayList<>();
+                try (Statement stmt = statement(db); ResultSet rs = stmt.executeQuery("SELECT * FROM bookings WHERE deleted_at IS NULL")) {
+                    while (rs.next()) { allBookings.add(mapBooking(rs)); }
+                } return allBookings;
+            }, ArrayList::new);
+        }
+        public static int countBookings() {
+            return read(db -> {
+                try (Statement stmt = statement(db); ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM bookings WHERE deleted_at IS NULL")) {
+                    return rs.next() ? rs.getInt(1) : 0;
+                }
+            }, () -> 0);
+        }
+
+        // Sort keys for fetchBookingRows, indexed like the admin booking table's columns.
+        public static final String[] BOOKING_ROW_SORT = {"b.id", "b.car_id", "b.status", "u.username", "o.contact", "b.pickup_date", "b.pickup_time", "b.days", "b.total_price"};
+
+        // One page of bookings with buyer and owner resolved by the DB, for PagedBookingModel; null if it could not be read.
+        public static List<BookingRow> fetchBookingRows(int sortColumn, boolean ascending, int offset, int limit) {
+            String order = BOOKING_ROW_SORT[sortColumn] + (ascending ? " ASC" : " DESC");
+            String sql = "SELECT b.*, u.username AS buyer_name, o.contact AS owner_contact FROM bookings b "
+                    + "LEFT JOIN users u ON u.id = b.user_id LEFT JOIN cars c ON c.id = b.car_id LEFT JOIN users o ON o.id = c.owner_id "
+                    + "WHERE b.deleted_at IS NULL ORDER BY " + order + ", b.id LIMIT ? OFFSET ?";
+            return read(db -> {
+                List<BookingRow> rows = new ArrayList<>();
+                try (PreparedStatement pstmt = prepare(db, sql)) {
+                    pstmt.setInt(1, limit); pstmt.setInt(2, offset);
+                    ResultSet rs = pstmt.executeQuery();
+                    while (rs.next()) { rows.add(new BookingRow(mapBooking(rs), rs.getString("buyer_name"), rs.getString("owner_contact"))); }
+                } return rows;
+            }, () -> null);
+        }
+
+        public static List<Booking> fetchBookingsByUserId(String userId) { // Fetch bookings by User ID
+            return read(db -> {
+                List<Booking> bookings = new ArrayList<>();
+                try (PreparedStatement pstmt = prepare(db, "SELECT * FROM bookings WHERE user_id = ? AND deleted_at IS NULL")) {
+                    pstmt.setString(1, userId);
+                    ResultSet rs = pstmt.executeQuery();
+                    while (rs.next()) { bookings.add(mapBooking(rs)); }
+                } return bookings;
+            }, ArrayList::new);
+        }
+
+        public static void updateBookingStatus(String bookingId, String newStatus) {
+            try { changeBookingStatus(bookingId, null, newStatus); }
+            catch (SQLException e) { 
+                e.printStackTrace(); 
+                UIUtils.showErrorLater("DB Error: Could not update booking status.", "DB Write Error"); 
+            }
+        }
+
+        // Moves a booking to newStatus, only from expectedStatus when that is given. Returns the new version,
+        // or CONFLICT if the booking is missing or was in another status.
+        public static long changeBookingStatus(String bookingId, String expectedStatus, String newStatus) throws SQLException {
+            String lookup = "SELECT b.status, b.total_price, c.owner_id, b.car_id, c.category, b.pickup_date, b.days, b.pickup_time FROM bookings b LEFT JOIN cars c ON c.id = b.car_id WHERE b.id = ? FOR UPDATE OF b";
+            String sql = "UPDATE bookings SET status = ?, decided_at = CASE WHEN ? = 'Pending' THEN NULL ELSE now() END WHERE id = ? RETURNING " + VERSION;
+            String[] previous = new String[1];
+            long[] version = {CONFLICT};
+            List<LifecycleScheduler.ScheduledEvent> events = new ArrayList<>();
+            inTransaction(() -> {
+                String oldStatus, ownerId, carId, category, pickup, pickupTime; double total; int days;
+                try (PreparedStatement pstmt = prepare(primary(), lookup)) {
+                    pstmt.setString(1, bookingId);
+                    ResultSet rs = pstmt.executeQuery();
+                    if (!rs.next()) return;
+                    if (expectedStatus != null && !expectedStatus.equals(rs.getString(1))) return;
+                    oldStatus = rs.getString(1); total = rs.getDouble(2); ownerId = rs.getString(3);
+                    carId = rs.getString(4); category = rs.getString(5); pickup = rs.getString(6); days = Math.max(1, rs.getInt(7)); pickupTime = rs.getString(8);
+                }
+                previous[0] = oldStatus;
+                try (PreparedStatement pstmt = prepare(primary(), sql)) {
+                    pstmt.setString(1, newStatus);
+                    pstmt.setString(2, newStatus);
+                    pstmt.setString(3, bookingId);
+                    ResultSet rs = pstmt.executeQuery();
+                    if (rs.next()) version[0] = rs.getLong(1);
+                }
+                if (ownerId != null && !newStatus.equals(oldStatus)) {
+                    int[] delta = new int[3];
+                    SellerStats.count(delta, oldStatus, -1); SellerStats.count(delta, newStatus, +1);
+                    double revenue = ("Confirmed".equals(newStatus) ? total : 0) - ("Confirmed".equals(oldStatus) ? total : 0);
+                    bumpSellerStats(ownerId, delta, revenue);
+                }
+                // Entering or leaving Confirmed adds or removes the booking's days from the rollups.
+                int sign = ("Confirmed".equals(newStatus) ? 1 : 0) - ("Confirmed".equals(oldStatus) ? 1 : 0);
+                LocalDate start = Dates.parse(pickup);
+                if (sign != 0 && start != null) bumpRollups(carId, ownerId, category, start, start.plusDays(days - 1), null, sign * total / days, sign);
+                // The booking's timers follow its status: expiry while Pending, return and reminder while Confirmed.
+                if (!newStatus.equals(oldStatus)) {
+                    cancelEvents(LifecycleScheduler.idsFor(bookingId));
+                    events.clear();
+                    events.addAll(LifecycleScheduler.plan(bookingId, carId, newStatus, pickup, pickupTime, days, System.currentTimeMillis()));
+                    scheduleEvents(events);
+                }
+            });
+            if (previous[0] != null && !newStatus.equals(previous[0])) {
+                LifecycleScheduler.cancelled(LifecycleScheduler.idsFor(bookingId));
+                LifecycleScheduler.offer(events);
+            }
+            return version[0];
+        }
+
+        // --- Seller Counters ---
+        // seller_stats holds pending/confirmed/rejected counts and confirmed revenue per car owner.
+        // Booking mutations adjust it in the same transaction, so reading a seller's numbers is a
+        // primary-key lookup instead of a scan over every booking.
+        public static SellerStats sellerStats(String sellerId) {
+            return read(db -> {
+                try (PreparedStatement pstmt = prepare(db, "SELECT * FROM seller_stats WHERE seller_id = ?")) {
+                    pstmt.setString(1, sellerId);
+                    ResultSet rs = pstmt.executeQuery();
+                    if (rs.next()) { return mapSellerStats(rs); }
+                }
+                return new SellerStats(sellerId, 0, 0, 0, 0);
+            }, () -> new SellerStats(sellerId, 0, 0, 0, 0));
+        }
+
+        // Recomputes every seller's counters from bookings and rewrites the rows that drifted, in one
+        // statement. It still runs under inTransaction: booking mutations commit their counter bumps
+        // there too, and a bump committed after this statement's snapshot would otherwise be overwritten
+        // with the older count. Returns the number of corrected sellers (-1 on error).
+        public static int reconcileSellerStats() {
+            String sql = "INSERT INTO seller_stats (seller_id, pending, confirmed, rejected, revenue) "
+                    + "SELECT COALESCE(t.owner_id, s.seller_id), COALESCE(t.pending, 0), COALESCE(t.confirmed, 0), COALESCE(t.rejected, 0), COALESCE(t.revenue, 0) "
+                    + "FROM (SELECT c.owner_id, "
+                    + "SUM(CASE WHEN b.status = 'Pending' THEN 1 ELSE 0 END) AS pending, "
+                    + "SUM(CASE WHEN b.status = 'Confirmed' THEN 1 ELSE 0 END) AS confirmed, "
+                    + "SUM(CASE WHEN b.status = 'Rejected' THEN 1 ELSE 0 END) AS rejected, "
+                    + "SUM(CASE WHEN b.status = 'Confirmed' THEN b.total_price ELSE 0 END) AS revenue "
+                    + "FROM bookings b JOIN cars c ON c.id = b.car_id WHERE c.owner_id IS NOT NULL GROUP BY c.owner_id) t "
+                    // sellers with a stored row but no bookings left are zeroed
+                    + "FULL OUTER JOIN seller_stats s ON s.seller_id = t.owner_id "
+                    + "ON CONFLICT (seller_id) DO UPDATE SET pending = EXCLUDED.pending, confirmed = EXCLUDED.confirmed, "
+                    + "rejected = EXCLUDED.rejected, revenue = EXCLUDED.revenue "
+                    + "WHERE seller_stats.pending <> EXCLUDED.pending OR seller_stats.confirmed <> EXCLUDED.confirmed "
+                    + "OR seller_stats.rejected <> EXCLUDED.rejected OR ABS(seller_stats.revenue - EXCLUDED.revenue) >= 0.005";
+            final int[] fixed = {0};
+            try {
+                inTransaction(() -> { try (Statement stmt = statement(primary())) { fixed[0] = stmt.executeUpdate(sql); } });
+            } catch (SQLException e) { e.printStackTrace(); return -1; }
+            if (fixed[0] > 0) System.out.println("seller_stats: corrected " + fixed[0] + " seller(s).");
+            return fixed[0];
+        }
+
+        private static SellerStats mapSellerStats(ResultSet rs) throws SQLException {
+            return new SellerStats(rs.getString("seller_id"), rs.getInt("pending"), rs.getInt("confirmed"),
+                rs.getInt("rejected"), rs.getDouble("revenue"));
+        }
+
+        private static void bumpSellerStats(String sellerId, int[] delta, double revenue) throws SQLException {
+            String sql = "INSERT INTO seller_stats (seller_id, pending, confirmed, rejected, revenue) VALUES (?,?,?,?,?) "
+                    + "ON CONFLICT (seller_id) DO UPDATE SET pending = seller_stats.pending + EXCLUDED.pending, "
+                    + "confirmed = seller_stats.confirmed + EXCLUDED.confirmed, rejected = seller_stats.rejected + EXCLUDED.rejected, "
+                    + "revenue = seller_stats.revenue + EXCLUDED.revenue";
+            try (PreparedStatement pstmt = prepare(primary(), sql)) {
+                pstmt.setString(1, sellerId); pstmt.setInt(2, delta[0]); pstmt.setInt(3, delta[1]);
+                pstmt.setInt(4, delta[2]); pstmt.setDouble(5, revenue); pstmt.executeUpdate();
+            }
+        }
+
+        // --- Daily Rollups ---
+        // One row per day and car / seller / category with bookings started that day, confirmed revenue
+        // (spread evenly over the rental days) and rented car-days. Booking mutations adjust them in the
+        // same transaction; reports read the rollups instead of scanning bookings. Tables are listed in ROLLUPS.
+
+        // Adds revenuePerDay and rentedDelta to every day in [first, last] and one booking to bookingDay (if given).
+        private static void bumpRollups(String carId, String sellerId, String category, LocalDate first, LocalDate last,
+                                        LocalDate bookingDay, double revenuePerDay, int rentedDelta) throws SQLException {
+            String[] keys = {carId, sellerId, category == null ? "" : category};
+            for (int t = 0; t < ROLLUPS.length; t++) {
+                if (keys[t] == null) continue;   // bookings for cars without an owner have no seller row
+                String table = ROLLUPS[t][0], key = ROLLUPS[t][1];
+                String sql = "INSERT INTO " + table + " (day, " + key + ", bookings, revenue, rented_days) "
+                        + "SELECT d::date, ?, CASE WHEN d::date = ? THEN 1 ELSE 0 END, ?, ? FROM generate_series(?::date, ?::date, interval '1 day') d "
+                        + "ON CONFLICT (day, " + key + ") DO UPDATE SET bookings = " + table + ".bookings + EXCLUDED.bookings, "
+                        + "revenue = " + table + ".revenue + EXCLUDED.revenue, rented_days = " + table + ".rented_days + EXCLUDED.rented_days";
+                try (PreparedStatement pstmt = prepare(primary(), sql)) {
+                    pstmt.setString(1, keys[t]); pstmt.setObject(2, bookingDay, Types.DATE); pstmt.setDouble(3, revenuePerDay); pstmt.setInt(4, rentedDelta);
+                    pstmt.setObject(5, first, Types.DATE); pstmt.setObject(6, last, Types.DATE); pstmt.executeUpdate();
+                }
+            }
+        }
+
+        // What a rollup table should contain, recomputed from bookings (columns: day, key, bookings, revenue, rented).
+        private static String rollupTruth(String[] t) {
+            return "SELECT day, k, SUM(n) AS bookings, SUM(rev) AS revenue, SUM(rented) AS rented FROM ("
+                    + "SELECT p.day0 + g AS day, " + t[2] + " AS k, CASE WHEN g = 0 THEN 1 ELSE 0 END AS n, "
+                    + "CASE WHEN b.status = 'Confirmed' THEN b.total_price / GREATEST(b.days, 1) ELSE 0 END AS rev, "
+                    + "CASE WHEN b.status = 'Confirmed' THEN 1 ELSE 0 END AS rented "
+                    + "FROM bookings b LEFT JOIN cars c ON c.id = b.car_id CROSS JOIN LATERAL (SELECT pickup_day(b.pickup_date) AS day0) p "
+                    + "CROSS JOIN LATERAL generate_series(0, CASE WHEN b.status = 'Confirmed' THEN GREATEST(b.days, 1) - 1 ELSE 0 END) g "
+                    + "WHERE p.day0 IS NOT NULL AND " + t[2] + " IS NOT NULL) x GROUP BY day, k";
+        }
+
+        // Rows that differ from a recomputation, per rollup table (-1 if the check failed).
+        public static Map<String,Integer> checkRollups() {
+            Map<String,Integer> mismatches = new LinkedHashMap<>();
+            for (String[] t : ROLLUPS) {
+                String sql = "SELECT COUNT(*) FROM (" + rollupTruth(t) + ") e FULL OUTER JOIN " + t[0] + " r ON r.day = e.day AND r." + t[1] + " = e.k "
+                        + "WHERE COALESCE(r.bookings, 0) <> COALESCE(e.bookings, 0) OR COALESCE(r.rented_days, 0) <> COALESCE(e.rented, 0) "
+                        + "OR ABS(COALESCE(r.revenue, 0) - COALESCE(e.revenue, 0)) > 0.01";
+                try (Statement stmt = statement(primary()); ResultSet rs = stmt.executeQuery(sql)) {
+                    rs.next(); mismatches.put(t[0], rs.getInt(1));
+                } catch (SQLException e) { e.printStackTrace(); mismatches.put(t[0], -1); }
+            }
+            return mismatches;
+        }
+
+        // Recomputes all rollup tables from bookings in one transaction. Returns false on error.
+        public static boolean rebuildRollups() {
+            try {
+                inTransaction(() -> {
+                    try (Statement stmt = statement(primary())) {
+                        for (String[] t : ROLLUPS) {
+                            stmt.execute("DELETE FROM " + t[0]);
+                            stmt.execute("INSERT INTO " + t[0] + " (day, " + t[1] + ", bookings, revenue, rented_days) "
+                                    + "SELECT day, k, bookings, revenue, rented FROM (" + rollupTruth(t) + ") e");
+                        }
+                    }
+                });
+            } catch (SQLException e) { e.printStackTrace(); return false; }
+            System.out.println("Rollup tables rebuilt from bookings.");
+            return true;
+        }
+
+        // Fills revenue and rented days for [r.from, r.to] from the rollups and approval latency for decisions in that range.
+        static void loadRollups(Analytics.Report r) throws SQLException {
+            Connection db = reader();
+            String bySeller = "SELECT seller_id, SUM(revenue) FROM rollup_seller_daily WHERE day BETWEEN ? AND ? GROUP BY seller_id";
+            String byCategory = "SELECT category, SUM(revenue), SUM(rented_days) FROM rollup_category_daily WHERE day BETWEEN ? AND ? GROUP BY category";
+            String byDay = "SELECT day, SUM(revenue) FROM rollup_category_daily WHERE day BETWEEN ? AND ? GROUP BY day";
+            String latency = "SELECT COUNT(*), AVG(h), percentile_disc(0.5) WITHIN GROUP (ORDER BY h), percentile_disc(0.9) WITHIN GROUP (ORDER BY h) "
+                    + "FROM (SELECT EXTRACT(EPOCH FROM decided_at - created_at) / 3600 AS h FROM bookings "
+                    + "WHERE decided_at >= ? AND decided_at < ? AND created_at IS NOT NULL) x";
+            try (PreparedStatement pstmt = prepare(db, bySeller)) {
+                pstmt.setObject(1, r.from, Types.DATE); pstmt.setObject(2, r.to, Types.DATE);
+                ResultSet rs = pstmt.executeQuery();
+                while (rs.next()) { r.revenueBySeller.put(Analytics.label(rs.getString(1)), rs.getDouble(2)); }
+            }
+            try (PreparedStatement pstmt = prepare(db, byCategory)) {
+                pstmt.setObject(1, r.from, Types.DATE); pstmt.setObject(2, r.to, Types.DATE);
+                ResultSet rs = pstmt.executeQuery();
+                while (rs.next()) {
+                    r.revenueByCategory.merge(Analytics.label(rs.getString(1)), rs.getDouble(2), Double::sum);
+                    r.rentedDaysByCategory.merge(Analytics.label(rs.getString(1)), rs.getLong(3), Long::sum);
+                }
+            }
+            try (PreparedStatement pstmt = prepare(db, byDay)) {
+                pstmt.setObject(1, r.from, Types.DATE); pstmt.setObject(2, r.to, Types.DATE);
+                ResultSet rs = pstmt.executeQuery();
+                while (rs.next()) { r.revenueByDay[(int)(rs.getDate(1).toLocalDate().toEpochDay() - r.from.toEpochDay())] = rs.getDouble(2); }
+            }
+            try (PreparedStatement pstmt = prepare(db, latency)) {
+                pstmt.setTimestamp(1, Timestamp.valueOf(r.from.atStartOfDay())); pstmt.setTimestamp(2, Timestamp.valueOf(r.to.plusDays(1).atStartOfDay()));
+                ResultSet rs = pstmt.executeQuery();
+                if (rs.next()) { r.decided = rs.getLong(1); r.avgLatencyHours = rs.getDouble(2); r.medianLatencyHours = rs.getDouble(3); r.p90LatencyHours = rs.getDouble(4); }
+            }
+        }
+
+        // --- Read Routing ---
+        // -Dcarrental.replicas=<jdbc url>[,<jdbc url>...] (same credentials as the primary) sends read-only
+        // queries round-robin to streaming replicas. After this session writes, its reads stay on the primary
+        // until a replica has replayed the write's WAL position, or for STICKY_MILLIS if that can't be checked.
+        private static final class Replica {
+            final String url; volatile Connection conn;
+            Replica(String url){ this.url = url; }
+        }
+
+        private static void connectReplicas() {
+            String urls = System.getProperty("carrental.replicas", "").trim();
+            if (urls.isEmpty()) return;
+            for (String url : urls.split(",")) replicas.add(new Replica(url.trim()));
+            checkReplicas();
+            MAINTENANCE.scheduleWithFixedDelay(DataStore::checkReplicas, 30, 30, TimeUnit.SECONDS);
+        }
+
+        // (Re)connects replicas that are down; an unreachable replica is simply skipped by reader().
+        private static void checkReplicas() {
+            for (Replica r : replicas) {
+                try {
+                    if (r.conn != null && r.conn.isValid(2)) continue;
+                    Connection c = DriverManager.getConnection(r.url, DB_USER, DB_PASS);
+                    c.setReadOnly(true);
+                    r.conn = c;
+                    System.out.println("Read replica connected: " + r.url);
+                } catch (SQLException e) {
+                    if (r.conn != null) System.err.println("Read replica down: " + r.url + " (" + e.getMessage() + ")");
+                    r.conn = null;
+                }
+            }
+        }
+
+        // Connection for a read-only query: a caught-up replica when one is available, otherwise the primary.
+        private static Connection reader() throws SQLException {
+            int n = replicas.size();
+            if (n > 0) {
+                boolean sticky = System.currentTimeMillis() - lastWriteMillis < STICKY_MILLIS;
+                int start = Math.floorMod(nextReplica.getAndIncrement(), n);
+                for (int i = 0; i < n; i++) {
+                    Connection c = replicas.get((start + i) % n).conn;
+                    if (c != null && (!sticky || caughtUp(c))) { replicaReads.increment(); return c; }
+                }
+            }
+            primaryReads.increment();
+            return primary();
+        }
+
+        private static boolean caughtUp(Connection replica) {
+            String lsn = lastWriteLsn;
+            if (lsn == null) return false;
+            try (PreparedStatement pstmt = replica.prepareStatement("SELECT pg_last_wal_replay_lsn() >= ?::pg_lsn")) {
+                pstmt.setString(1, lsn);
+                ResultSet rs = pstmt.executeQuery();
+                return rs.next() && rs.getBoolean(1);
+            } catch (SQLException e) { return false; }
+        }
+
+        // Called after every committed write on the primary.
+        private static void wrote() {
+            if (replicas.isEmpty()) return;
+            lastWriteMillis = System.currentTimeMillis();
+            try (Statement stmt = statement(primary()); ResultSet rs = stmt.executeQuery("SELECT pg_current_wal_lsn()::text")) {
+                lastWriteLsn = rs.next() ? rs.getString(1) : null;
+            } catch (SQLException e) { lastWriteLsn = null; }
+        }
+
+        // --- Resilience ---
+        // Every statement gets QUERY_TIMEOUT_SECONDS, so a slow network stalls a caller (often the EDT) for
+        // a bounded time. Idempotent reads go through read(): transient failures are retried with jittered
+        // exponential backoff and feed BREAKER; while it is open reads return their fallback (cars come from
+        // the cached catalog) and writes fail at once with the usual DB error dialog.
+        interface SqlRead<T> { T run(Connection db) throws SQLException; }
+
+        // Inside inTransaction this is the transaction's connection, so helpers called from the work join it.
+        private static Connection primary() throws SQLException {
+            Connection tx = TX.get();
+            if (tx != null) return tx;
+            if (BREAKER.state() == CircuitBreaker.State.OPEN) throw new SQLTransientConnectionException("Database unavailable (circuit open)", "08003");
+            Connection c = connection;
+            return c != null && !c.isClosed() ? c : connect();
+        }
+
+        private static PreparedStatement prepare(Connection db, String sql) throws SQLException {
+            PreparedStatement pstmt = db.prepareStatement(sql);
+            pstmt.setQueryTimeout(QUERY_TIMEOUT_SECONDS);
+            return pstmt;
+        }
+
+        private static Statement statement(Connection db) throws SQLException {
+            Statement stmt = db.createStatement();
+            stmt.setQueryTimeout(QUERY_TIMEOUT_SECONDS);
+            return stmt;
+        }
+
+        // Connection loss, timeouts, too many connections and serialization/deadlock aborts are worth retrying.
+        private static boolean isTransient(SQLException e) {
+            if (e instanceof SQLTransientException || e instanceof SQLRecoverableException) return true;
+            String state = e.getSQLState();
+            return state != null && (state.startsWith("08") || state.equals("57014") || state.equals("57P01")
+                    || state.equals("53300") || state.equals("40001") || state.equals("40P01"));
+        }
+
+        private static <T> T read(SqlRead<T> query, Supplier<T> fallback) {
+            for (int attempt = 1; ; attempt++) {
+                if (!BREAKER.allow()) { degradedReads.increment(); return fallback.get(); }
+                Connection db = null;
+                try {
+                    db = reader();
+                    T result = query.run(db);
+                    BREAKER.onSuccess();
+                    return result;
+                } catch (SQLException e) {
+                    boolean retry = isTransient(e);
+                    // A non-transient error still means the database answered.
+                    if (retry) { BREAKER.onFailure(); dropIfClosed(db); } else BREAKER.onSuccess();
+                    if (!retry || attempt >= READ_ATTEMPTS || BREAKER.state() == CircuitBreaker.State.OPEN) {
+                        e.printStackTrace();
+                        degradedReads.increment();
+                        return fallback.get();
+                    }
+                    readRetries.increment();
+                    long cap = Math.min(RETRY_MAX_MILLIS, RETRY_BASE_MILLIS << (attempt - 1));
+                    try { Thread.sleep(ThreadLocalRandom.current().nextLong(cap / 2, cap + 1)); }
+                    catch (InterruptedException ie) { Thread.currentThread().interrupt(); degradedReads.increment(); return fallback.get(); }
+                }
+            }
+        }
+
+        // One breaker-accounted try on the primary for callers that must tell "empty" from "failed" (sync, id allocation).
+        private static <T> T attempt(SqlRead<T> work) throws SQLException {
+            if (!BREAKER.allow()) throw new SQLTransientConnectionException("Database unavailable (circuit open)", "08003");
+            Connection db = null;
+            try {
+                db = primary();
+                T result = work.run(db);
+                BREAKER.onSuccess();
+                return result;
+            } catch (SQLException e) {
+                if (isTransient(e)) { BREAKER.onFailure(); dropIfClosed(db); } else BREAKER.onSuccess();
+                throw e;
+            }
+        }
+
+        // Forgets a connection the driver has closed after an I/O error, so the next call reconnects.
+        private static void dropIfClosed(Connection db) {
+            try {
+                if (db == null || !db.isClosed()) return;
+            } catch (SQLException e) { /* treat as closed */ }
+            if (db == connection) connection = null;
+            for (Replica r : replicas) if (r.conn == db) r.conn = null;
+        }
+
+        // --- Transactions ---
+        interface SqlWork { void run() throws SQLException; }
+
+        // Runs work as one transaction on a connection of its own (autocommit off for good), so single
+        // statements on the shared connection from other threads can never land inside it. Concurrent
+        // callers are serialised; a nested call joins the outer transaction.
+        private static void inTransaction(SqlWork work) throws SQLException {
+            if (TX.get() != null) { work.run(); return; }
+            primary(); // breaker check, and the shared connection owns schema setup; taken before TX_LOCK, as connect() may seed through here
+            synchronized (TX_LOCK) {
+                if (txConnection == null || txConnection.isClosed()) {
+                    txConnection = open();
+                    txConnection.setAutoCommit(false);
+                }
+                Connection conn = txConnection;
+                TX.set(conn);
+                try { work.run(); conn.commit(); BREAKER.onSuccess(); }
+                catch (SQLException | RuntimeException e) {
+                    if (e instanceof SQLException && isTransient((SQLException) e)) BREAKER.onFailure();
+                    try { conn.rollback(); } catch (SQLException ignored) { }
+                    throw e;
+                }
+                finally { TX.remove(); }
+            }
+            wrote();
+        }
+
+        public static void addCar(Car c) {
+            try { if (insertCar(c) == CONFLICT) throw new SQLException("Car " + c.id + " already exists", "23505"); }
+            catch (SQLException e) { e.printStackTrace(); UIUtils.showErrorLater("DB Error: Could not add car.", "DB Write Error"); }
+        }
+        public static void addUser(User u) {
+            try { if (insertUser(u) == CONFLICT) throw new SQLException("User " + u.username + " already exists", "23505"); }
+            catch (SQLException e) { e.printStackTrace(); UIUtils.showErrorLater("DB Error: Could not add user.", "DB Write Error"); }
+        }
+        public static void addBooking(Booking b) {
+            try { if (insertBooking(b) == CONFLICT) throw new SQLException("Booking " + b.id + " already exists or car " + b.carId + " was deleted", "23505"); }
+            catch (SQLException e) { e.printStackTrace(); UIUtils.showErrorLater("DB Error: Could not add booking.", "DB Write Error"); }
+        }
+        public static void updateCar(Car updated) {
+            try { updateCarIf(updated, ANY_VERSION); }
+            catch (SQLException e) { e.printStackTrace(); UIUtils.showErrorLater("DB Error: Could not update car.", "DB Write Error"); }
+        }
+        public static void deleteCar(String id) {
+            try { deleteCarIf(id, ANY_VERSION); }
+            catch (SQLException e) { e.printStackTrace(); UIUtils.showErrorLater("DB Error: Could not delete car.", "DB Write Error"); }
+        }
+
+        // --- Versioned Writes ---
+        // The UI methods above wrap these; SyncEngine calls them directly to replay queued offline changes.
+        // Each returns the row's new version (updated_at in epoch microseconds), or CONFLICT when the row
+        // already exists (inserts; also a booking whose car is deleted, and a car whose id a tombstone still holds)
+        // or is no longer at baseVersion (updates/deletes; ANY_VERSION skips the check).
+        public static final long CONFLICT = -1, ANY_VERSION = -1;
+        static final String VERSION = "(EXTRACT(EPOCH FROM updated_at) * 1000000)::bigint";
+
+        public static long insertCar(Car c) throws SQLException {
+            String sql = "INSERT INTO cars (id, name, model, price_per_day, category, status, image_path, owner_id, fuel_type, seats, transmission) VALUES (?,?,?,?,?,?,?,?,?,?,?) "
+                    + "ON CONFLICT DO NOTHING RETURNING " + VERSION;
+            long version = attempt(db -> {
+                try (PreparedStatement pstmt = prepare(db, sql)) {
+                    pstmt.setString(1, c.id); pstmt.setString(2, c.name); pstmt.setString(3, c.model); pstmt.setDouble(4, c.pricePerDay); 
+                    pstmt.setString(5, c.category); pstmt.setString(6, c.status); pstmt.setString(7, c.imagePath); pstmt.setString(8, c.ownerId);   
+                    pstmt.setString(9, c.fuelType); pstmt.setInt(10, c.seats); pstmt.setString(11, c.transmission);
+                    ResultSet rs = pstmt.executeQuery();
+                    return rs.next() ? rs.getLong(1) : CONFLICT;
+                }
+            });
+            if (version == CONFLICT) return CONFLICT;
+            CatalogSnapshot.invalidate();
+            wrote();
+            return version;
+        }
+        public static long insertUser(User u) throws SQLException {
+            String sql = "INSERT INTO users (id, username, password, role, contact) VALUES (?,?,?,?,?) ON CONFLICT DO NOTHING RETURNING " + VERSION;
+            if (!Passwords.isHashed(u.password)) u.password = Passwords.hash(u.password);
+            long version = attempt(db -> {
+                try (PreparedStatement pstmt = prepare(db, sql)) {
+                    pstmt.setString(1, u.id); pstmt.setString(2, u.username); pstmt.setString(3, u.password); 
+                    pstmt.setString(4, u.role); pstmt.setString(5, u.contact);
+                    ResultSet rs = pstmt.executeQuery();
+                    return rs.next() ? rs.getLong(1) : CONFLICT;
+                }
+            });
+            if (version != CONFLICT) wrote();
+            return version;
+        }
+        public static long insertBooking(Booking b) throws SQLException {
+            String sql = "INSERT INTO bookings (id, car_id, user_id, pickup_place, pickup_date, pickup_time, days, total_price, status) VALUES (?,?,?,?,?,?,?,?, 'Pending') "
+                    + "ON CONFLICT DO NOTHING RETURNING " + VERSION;
+            long[] version = {CONFLICT};
+            List<LifecycleScheduler.ScheduledEvent> events = LifecycleScheduler.plan(b.id, b.carId, "Pending", b.pickupDate, b.pickupTime, b.days, System.currentTimeMillis());
+            inTransaction(() -> {
+                // FOR SHARE holds off a concurrent delete of the car until this booking has committed.
+                String ownerId, category;
+                try (PreparedStatement pstmt = prepare(primary(), "SELECT owner_id, category FROM cars WHERE id = ? AND deleted_at IS NULL FOR SHARE")) {
+                    pstmt.setString(1, b.carId);
+                    ResultSet rs = pstmt.executeQuery();
+                    if (!rs.next()) return;
+                    ownerId = rs.getString(1); category = rs.getString(2);
+                }
+                try (PreparedStatement pstmt = prepare(primary(), sql)) {
+                    pstmt.setString(1, b.id); pstmt.setString(2, b.carId); pstmt.setString(3, b.userId);
+                    pstmt.setString(4, b.pickupPlace); pstmt.setString(5, b.pickupDate); pstmt.setString(6, b.pickupTime);
+                    pstmt.setInt(7, b.days); pstmt.setDouble(8, b.totalPrice);
+                    ResultSet rs = pstmt.executeQuery();
+                    if (!rs.next()) return;
+                    version[0] = rs.getLong(1);
+                }
+                if (ownerId != null) bumpSellerStats(ownerId, new int[]{1, 0, 0}, 0);
+                LocalDate start = Dates.parse(b.pickupDate);
+                if (start != null) bumpRollups(b.carId, ownerId, category, start, start, start, 0, 0);
+                scheduleEvents(events);
+            });
+            if (version[0] == CONFLICT) return CONFLICT;
+            LifecycleScheduler.offer(events);
+            return version[0];
+        }
+        public static long updateCarIf(Car updated, long baseVersion) throws SQLException {
+            String sql = "UPDATE cars SET name=?, model=?, price_per_day=?, category=?, status=?, image_path=?, owner_id=?, fuel_type=?, seats=?, transmission=? "
+                    + "WHERE id=? AND deleted_at IS NULL AND (? < 0 OR " + VERSION + " = ?) RETURNING " + VERSION;
+            long version = attempt(db -> {
+                try (PreparedStatement pstmt = prepare(db, sql)) {
+                    pstmt.setString(1, updated.name); pstmt.setString(2, updated.model); pstmt.setDouble(3, updated.pricePerDay);
+                    pstmt.setString(4, updated.category); pstmt.setString(5, updated.status); pstmt.setString(6, updated.imagePath);
+                    pstmt.setString(7, updated.ownerId); pstmt.setString(8, updated.fuelType); pstmt.setInt(9, updated.seats);
+                    pstmt.setString(10, updated.transmission); pstmt.setString(11, updated.id); pstmt.setLong(12, baseVersion); pstmt.setLong(13, baseVersion);
+                    ResultSet rs = pstmt.executeQuery();
+                    return rs.next() ? rs.getLong(1) : CONFLICT;
+                }
+            });
+            if (version == CONFLICT) return CONFLICT;
+            CatalogSnapshot.invalidate();
+            wrote();
+            return version;
+        }
+        public static long deleteCarIf(String id, long baseVersion) throws SQLException {
+            String sql = "UPDATE cars SET deleted_at = now() WHERE id = ? AND deleted_at IS NULL AND (? < 0 OR " + VERSION + " = ?)";
+            int deleted = attempt(db -> {
+                try (PreparedStatement pstmt = prepare(db, sql)) {
+                    pstmt.setString(1, id); pstmt.setLong(2, baseVersion); pstmt.setLong(3, baseVersion);
+                    return pstmt.executeUpdate();
+                }
+            });
+            if (deleted == 0) return CONFLICT;
+            CatalogSnapshot.invalidate();
+            wrote();
+            return 0;
+        }
+
+        // --- Change Feed ---
+        // changesSince(watermark, viewer) returns only the rows changed after the caller's per-table watermark:
+        // live rows in full, deleted rows as tombstone ids, and the watermark to send next time. The returned
+        // watermark stays WATERMARK_LAG behind the clock, so a transaction that commits with an older
+        // updated_at is picked up by the next poll instead of being skipped. Tombstones are kept for
+        // TOMBSTONE_DAYS; a watermark older than that gets a reset delta (every live row; drop the rest).
+        // The lag has to outlast the gap between a row's updated_at and its commit: no statement outlives
+        // QUERY_TIMEOUT_SECONDS, and the margin covers the short statements around it in the same transaction.
+        private static final int WATERMARK_MARGIN_SECONDS = 5;
+        static final long WATERMARK_LAG_MICROS = (QUERY_TIMEOUT_SECONDS + WATERMARK_MARGIN_SECONDS) * 1_000_000L;
+        private static final String USER_FEED_COLUMNS = "id, username, role, contact, updated_at, deleted_at";
+
+        public static class Versioned<T> {
+            public final T row; public final long version;
+            Versioned(T row, long version){ this.row=row; this.version=version; }
+        }
+
+        public static class Watermark {
+            public final long users, cars, bookings;   // epoch micros; 0 = never synced
+            public Watermark(long users, long cars, long bookings){ this.users=users; this.cars=cars; this.bookings=bookings; }
+        }
+
+        public static class Delta<T> {
+            public final List<Versioned<T>> changed = new ArrayList<>();
+            public final Set<String> deleted = new HashSet<>();
+            public final boolean reset; long watermark;
+            Delta(boolean reset, long watermark){ this.reset=reset; this.watermark=watermark; }
+        }
+
+        public static class ChangeSet {
+            public final Delta<User> users; public final Delta<Car> cars; public final Delta<Booking> bookings;
+            ChangeSet(Delta<User> users, Delta<Car> cars, Delta<Booking> bookings){ this.users=users; this.cars=cars; this.bookings=bookings; }
+            public Watermark watermark(){ return new Watermark(users.watermark, cars.watermark, bookings.watermark); }
+            public int size(){ return users.changed.size() + users.deleted.size() + cars.changed.size() + cars.deleted.size() + bookings.changed.size() + bookings.deleted.size(); }
+        }
+
+        // Bookings are scoped to `viewer`: all for admins, their own plus those on their cars for sellers, their own
+        // otherwise; a null viewer gets no bookings.
+        public static ChangeSet changesSince(Watermark since, User viewer) throws SQLException {
+            return attempt(db -> {
+                long horizon, ceiling;
+                try (Statement stmt = statement(db); ResultSet rs = stmt.executeQuery("SELECT (EXTRACT(EPOCH FROM clock_timestamp() - make_interval(days => "
+                        + TOMBSTONE_DAYS + ")) * 1000000)::bigint, (EXTRACT(EPOCH FROM clock_timestamp()) * 1000000)::bigint - " + WATERMARK_LAG_MICROS)) {
+                    rs.next(); horizon = rs.getLong(1); ceiling = rs.getLong(2);
+                }
+                Delta<User> users = delta(db, "users", USER_FEED_COLUMNS, "", since.users, horizon, ceiling, DataStore::mapFeedUser);
+                Delta<Car> cars = delta(db, "cars", "*", "", since.cars, horizon, ceiling, DataStore::mapCar);
+                Delta<Booking> bookings = new Delta<>(false, since.bookings);
+                if (viewer != null) {
+                    Role role = Role.of(viewer.role);
+                    String scope = role.has(Permission.VIEW_ALL_BOOKINGS) ? ""
+                            : role.has(Permission.APPROVE_BOOKINGS) ? " AND (user_id = ? OR car_id IN (SELECT id FROM cars WHERE owner_id = ?))" : " AND user_id = ?";
+                    String[] args = scope.isEmpty() ? new String[0] : scope.contains("owner_id") ? new String[]{viewer.id, viewer.id} : new String[]{viewer.id};
+                    bookings = delta(db, "bookings", "*", scope, since.bookings, horizon, ceiling, DataStore::mapBooking, args);
+                }
+                return new ChangeSet(users, cars, bookings);
+            });
+        }
+
+        interface RowMapper<T> { T map(ResultSet rs) throws SQLException; }
+
+        private static <T> Delta<T> delta(Connection db, String table, String columns, String scope, long since, long horizon, long ceiling, RowMapper<T> mapper, String... args) throws SQLException {
+            boolean reset = since > 0 && since < horizon;
+            Delta<T> delta = new Delta<>(reset, since);
+            String sql = "SELECT " + columns + ", " + VERSION + " AS version, deleted_at IS NOT NULL AS tombstone FROM " + table
+                    + " WHERE " + (reset || since == 0 ? "deleted_at IS NULL" : "updated_at > to_timestamp(? / 1000000.0)") + scope + " ORDER BY updated_at";
+            try (PreparedStatement pstmt = prepare(db, sql)) {
+                int p = 1;
+                if (!reset && since > 0) pstmt.setLong(p++, since);
+                for (String a : args) pstmt.setString(p++, a);
+                pstmt.setFetchSize(1000);
+                ResultSet rs = pstmt.executeQuery();
+                while (rs.next()) {
+                    if (rs.getBoolean("tombstone")) delta.deleted.add(rs.getString("id"));
+                    else delta.changed.add(new Versioned<>(mapper.map(rs), rs.getLong("version")));
+                }
+            }
+            // Everything up to the ceiling has been seen; rows past it come again next time (clients skip known versions).
+            delta.watermark = Math.max(since, ceiling);
+            return delta;
+        }
+
+        // Drops tombstones older than TOMBSTONE_DAYS that no other row still points at: a deleted car keeps its
+        // row while bookings name it, a deleted user while bookings or cars do. Bookings go first so cars and users
+        // freed in the same run go too. Returns the number removed (-1 on error).
+        private static final String[][] PURGE_ORDER = {
+            {"bookings", ""},
+            {"cars", " AND NOT EXISTS (SELECT 1 FROM bookings b WHERE b.car_id = cars.id)"},
+            {"users", " AND NOT EXISTS (SELECT 1 FROM bookings b WHERE b.user_id = users.id) AND NOT EXISTS (SELECT 1 FROM cars c WHERE c.owner_id = users.id)"}};
+
+        public static int purgeTombstones() {
+            int purged = 0;
+            for (String[] t : PURGE_ORDER) {
+                try (PreparedStatement pstmt = prepare(primary(), "DELETE FROM " + t[0] + " WHERE deleted_at < now() - make_interval(days => ?)" + t[1])) {
+                    pstmt.setInt(1, TOMBSTONE_DAYS);
+                    purged += pstmt.executeUpdate();
+                } catch (SQLException e) { e.printStackTrace(); return -1; }
+            }
+            if (purged > 0) System.out.println("Purged " + purged + " tombstone(s).");
+            return purged;
+        }
+
+        // --- Scheduled Events ---
+        // Lifecycle timers (see LifecycleScheduler), written in the same transaction as the booking change that
+        // caused them. A client fires an event only after leasing it, so several running clients don't double up;
+        // a lease that runs out (client died mid-batch) makes the event due again.
+        private static final int LEASE_SECONDS = 300;
+
+        private static void scheduleEvents(List<LifecycleScheduler.ScheduledEvent> events) throws SQLException {
+            if (events.isEmpty()) return;
+            String sql = "INSERT INTO scheduled_events (id, kind, target, due_at) VALUES (?,?,?,?) "
+                    + "ON CONFLICT (id) DO UPDATE SET kind = EXCLUDED.kind, target = EXCLUDED.target, due_at = EXCLUDED.due_at, leased_until = NULL";
+            try (PreparedStatement pstmt = prepare(primary(), sql)) {
+                for (LifecycleScheduler.ScheduledEvent e : events) {
+                    pstmt.setString(1, e.id); pstmt.setString(2, e.kind.name()); pstmt.setString(3, e.target); pstmt.setTimestamp(4, new Timestamp(e.due));
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+            }
+        }
+
+        private static void cancelEvents(List<String> ids) throws SQLException {
+            try (PreparedStatement pstmt = prepare(primary(), "DELETE FROM scheduled_events WHERE id = ANY(?)")) {
+                pstmt.setArray(1, primary().createArrayOf("text", ids.toArray()));
+                pstmt.executeUpdate();
+            }
+        }
+
+        // Unleased (or lease-expired) events due before `until`, for loading into the wheel.
+        public static List<LifecycleScheduler.ScheduledEvent> scheduledBefore(long until) throws SQLException {
+            return attempt(db -> {
+                List<LifecycleScheduler.ScheduledEvent> events = new ArrayList<>();
+                try (PreparedStatement pstmt = prepare(db, "SELECT id, kind, target, due_at FROM scheduled_events WHERE due_at < ? AND (leased_until IS NULL OR leased_until < now())")) {
+                    pstmt.setTimestamp(1, new Timestamp(until));
+                    pstmt.setFetchSize(5000);
+                    ResultSet rs = pstmt.executeQuery();
+                    while (rs.next()) {
+                        events.add(new LifecycleScheduler.ScheduledEvent(rs.getString(1), LifecycleScheduler.Kind.valueOf(rs.getString(2)), rs.getString(3), rs.getTimestamp(4).getTime()));
+                    }
+                } return events;
+            });
+        }
+
+        // Leases the given due events to this client; returns the ids it got (others are gone or held elsewhere).
+        public static Set<String> leaseEvents(Collection<String> ids) throws SQLException {
+            String sql = "UPDATE scheduled_events SET leased_until = now() + make_interval(secs => ?) "
+                    + "WHERE id = ANY(?) AND due_at <= now() AND (leased_until IS NULL OR leased_until < now()) RETURNING id";
+            return attempt(db -> {
+                Set<String> leased = new HashSet<>();
+                try (PreparedStatement pstmt = prepare(db, sql)) {
+                    pstmt.setInt(1, LEASE_SECONDS); pstmt.setArray(2, db.createArrayOf("text", ids.toArray()));
+                    ResultSet rs = pstmt.executeQuery();
+                    while (rs.next()) leased.add(rs.getString(1));
+                } return leased;
+            });
+        }
+
+        public static void completeEvents(Collection<String> ids) throws SQLException {
+            attempt(db -> {
+                try (PreparedStatement pstmt = prepare(db, "DELETE FROM scheduled_events WHERE id = ANY(?) AND leased_until IS NOT NULL")) {
+                    pstmt.setArray(1, db.createArrayOf("text", ids.toArray()));
+                    return pstmt.executeUpdate();
+                }
+            });
+        }
+
+        // Sets Rented cars back to Available unless another confirmed booking covers today. Returns the cars changed.
+        public static List<String> returnCars(Collection<String> carIds) throws SQLException {
+            String sql = "UPDATE cars SET status = 'Available' WHERE id = ANY(?) AND status = 'Rented' AND deleted_at IS NULL AND NOT EXISTS ("
+                    + "SELECT 1 FROM bookings b WHERE b.car_id = cars.id AND b.status = 'Confirmed' AND b.deleted_at IS NULL "
+                    + "AND pickup_day(b.pickup_date) <= current_date AND pickup_day(b.pickup_date) + GREATEST(b.days, 1) > current_date) RETURNING id";
+            List<String> returned = attempt(db -> {
+                List<String> ids = new ArrayList<>();
+                try (PreparedStatement pstmt = prepare(db, sql)) {
+                    pstmt.setArray(1, db.createArrayOf("text", carIds.toArray()));
+                    ResultSet rs = pstmt.executeQuery();
+                    while (rs.next()) ids.add(rs.getString(1));
+                } return ids;
+            });
+            if (returned.isEmpty()) return returned;
+            CatalogSnapshot.invalidate();
+            wrote();
+            return returned;
+        }
+
+        public static Booking findBookingById(String id) {
+            return read(db -> {
+                try (PreparedStatement pstmt = prepare(db, "SELECT * FROM bookings WHERE id = ? AND deleted_at IS NULL")) {
+                    pstmt.setString(1, id);
+                    ResultSet rs = pstmt.executeQuery();
+                    return rs.next() ? mapBooking(rs) : null;
+                }
+            }, () -> null);
+        }
+
+        // First start after scheduled_events was created: give existing Pending/Confirmed bookings their timers.
+        static int backfillScheduledEvents() throws SQLException {
+            if (!eventsNeedBackfill) return 0;
+            List<LifecycleScheduler.ScheduledEvent> events = new ArrayList<>();
+            long now = System.currentTimeMillis();
+            for (Booking b : fetchBookings()) events.addAll(LifecycleScheduler.plan(b.id, b.carId, b.status, b.pickupDate, b.pickupTime, b.days, now));
+            String sql = "INSERT INTO scheduled_events (id, kind, target, due_at) VALUES (?,?,?,?) ON CONFLICT (id) DO NOTHING";
+            inTransaction(() -> {
+                try (PreparedStatement pstmt = prepare(primary(), sql)) {
+                    for (LifecycleScheduler.ScheduledEvent e : events) {
+                        pstmt.setString(1, e.id); pstmt.setString(2, e.kind.name()); pstmt.setString(3, e.target); pstmt.setTimestamp(4, new Timestamp(e.due));
+                        pstmt.addBatch();
+                    }
+                    pstmt.executeBatch();
+                }
+            });
+            eventsNeedBackfill = false;
+            System.out.println("Scheduled " + events.size() + " lifecycle event(s) for existing bookings.");
+            return events.size();
+        }
+
+
+        // --- State History ---
+        // state_events is written by triggers on bookings and cars, so each change is recorded in the transaction
+        // that makes it, whichever client or code path made it. The table rejects updates and deletes.
+        public static List<StateEvent> fetchHistory(String entityId) {
+            return read(db -> {
+                List<StateEvent> events = new ArrayList<>();
+                try (PreparedStatement pstmt = prepare(db, "SELECT seq, at, entity, entity_id, from_status, to_status FROM state_events WHERE entity_id = ? ORDER BY seq")) {
+                    pstmt.setString(1, entityId);
+                    ResultSet rs = pstmt.executeQuery();
+                    while (rs.next()) events.add(mapEvent(rs));
+                } return events;
+            }, ArrayList::new);
+        }
+        // Range reads walk state_events_at_idx.
+        public static List<StateEvent> fetchEvents(Timestamp from, Timestamp to) {
+            return read(db -> {
+                List<StateEvent> events = new ArrayList<>();
+                try (PreparedStatement pstmt = prepare(db, "SELECT seq, at, entity, entity_id, from_status, to_status FROM state_events WHERE at >= ? AND at < ? ORDER BY at, seq")) {
+                    pstmt.setTimestamp(1, from); pstmt.setTimestamp(2, to);
+                    pstmt.setFetchSize(5000);
+                    ResultSet rs = pstmt.executeQuery();
+                    while (rs.next()) events.add(mapEvent(rs));
+                } return events;
+            }, ArrayList::new);
+        }
+        private static StateEvent mapEvent(ResultSet rs) throws SQLException {
+            return new StateEvent(rs.getLong(1), rs.getTimestamp(2), Interner.of(rs.getString(3)), rs.getString(4), Interner.of(rs.getString(5)), Interner.of(rs.getString(6)));
+        }
+
+        // --- Batch Quote Lookups ---
+        public static List<Car> fetchCarsByIds(Collection<String> ids) {
+            return read(db -> {
+                List<Car> cars = new ArrayList<>();
+                try (PreparedStatement pstmt = prepare(db, "SELECT * FROM cars WHERE id = ANY(?) AND deleted_at IS NULL")) {
+                    pstmt.setArray(1, db.createArrayOf("text", ids.toArray()));
+                    ResultSet rs = pstmt.executeQuery();
+                    while (rs.next()) { cars.add(mapCar(rs)); }
+                } return cars;
+            }, () -> {
+                Set<String> wanted = new HashSet<>(ids);
+                List<Car> cars = CatalogSnapshot.cached().orElseGet(ArrayList::new);
+                cars.removeIf(c -> !wanted.contains(c.id));
+                return cars;
+            });
+        }
+        // Same packing as RentalRepository.fetchBookedRanges; null while the database is unreachable.
+        public static Map<String,long[]> fetchBookedRanges(Collection<String> carIds) {
+            String sql = "SELECT car_id, pickup_date, days FROM bookings WHERE car_id = ANY(?) AND status IN ('Pending', 'Confirmed') AND deleted_at IS NULL";
+            Map<String,List<long[]>> byCar = read(db -> {
+                Map<String,List<long[]>> found = new HashMap<>();
+                try (PreparedStatement pstmt = prepare(db, sql)) {
+                    pstmt.setArray(1, db.createArrayOf("text", carIds.toArray()));
+                    ResultSet rs = pstmt.executeQuery();
+                    while (rs.next()) {
+                        LocalDate start = Dates.parse(rs.getString(2));
+                        if (start == null) continue;
+                        found.computeIfAbsent(rs.getString(1), k -> new ArrayList<>()).add(new long[]{start.toEpochDay(), start.toEpochDay() + Math.max(1, rs.getInt(3))});
+                    }
+                } return found;
+            }, () -> null);
+            if (byCar == null) return null;
+            Map<String,long[]> packed = new HashMap<>();
+            for (Map.Entry<String,List<long[]>> e : byCar.entrySet()) {
+                long[] ranges = new long[e.getValue().size() * 2];
+                for (int i = 0; i < e.getValue().size(); i++) { ranges[2*i] = e.getValue().get(i)[0]; ranges[2*i+1] = e.getValue().get(i)[1]; }
+                packed.put(e.getKey(), ranges);
+            }
+            return packed;
+        }
+
+        // --- Analytics Source ---
+        public static Analytics.Facts fetchAnalyticsFacts() {
+            String sql = "SELECT c.owner_id, c.category, b.pickup_date, b.days, b.total_price, b.status, b.created_at, b.decided_at "
+                       + "FROM bookings b LEFT JOIN cars c ON c.id = b.car_id";
+            return read(db -> {
+                Analytics.Facts facts = new Analytics.Facts();
+                try (Statement stmt = statement(db)) {
+                    stmt.setFetchSize(5000);
+                    ResultSet rs = stmt.executeQuery(sql);
+                    while (rs.next()) {
+                        Timestamp created = rs.getTimestamp(7), decided = rs.getTimestamp(8);
+                        facts.add(rs.getString(1), Interner.of(rs.getString(2)), Dates.parse(rs.getString(3)), rs.getInt(4),
+                            rs.getDouble(5), Interner.of(rs.getString(6)), created == null || decided == null ? -1 : decided.getTime() - created.getTime(),
+                            decided == null ? null : decided.toLocalDateTime().toLocalDate());
+                    }
+                } return facts;
+            }, Analytics.Facts::new);
+        }
+        public static Map<String,Integer> fleetByCategory() {
+            return read(db -> {
+                Map<String,Integer> fleet = new HashMap<>();
+                try (Statement stmt = statement(db); ResultSet rs = stmt.executeQuery("SELECT category, COUNT(*) FROM cars WHERE deleted_at IS NULL GROUP BY category")) {
+                    while (rs.next()) { fleet.put(Analytics.label(rs.getString(1)), rs.getInt(2)); }
+                } return fleet;
+            }, HashMap::new);
+        }
+
+        // --- Pricing Rules ---
+        public static List<PricingEngine.Rule> fetchPricingRules() {
+            return read(db -> {
+                List<PricingEngine.Rule> rules = new ArrayList<>();
+                try (Statement stmt = statement(db); ResultSet rs = stmt.executeQuery("SELECT * FROM pricing_rules ORDER BY id")) {
+                    while (rs.next()) {
+                        rules.add(new PricingEngine.Rule(rs.getString("id"), rs.getString("scope_type"), rs.getString("scope"), rs.getString("kind"),
+                            rs.getString("start_md"), rs.getString("end_md"), rs.getInt("min_days"), rs.getDouble("factor")));
+                    }
+                } return rules;
+            }, ArrayList::new);
+        }
+        public static void addPricingRule(PricingEngine.Rule r) {
+            String sql = "INSERT INTO pricing_rules (id, scope_type, scope, kind, start_md, end_md, min_days, factor) VALUES (?,?,?,?,?,?,?,?)";
+            try (PreparedStatement pstmt = prepare(primary(), sql)) {
+                pstmt.setString(1, r.id); pstmt.setString(2, r.scopeType); pstmt.setString(3, r.scope); pstmt.setString(4, r.kind);
+                pstmt.setString(5, r.startMd); pstmt.setString(6, r.endMd); pstmt.setInt(7, r.minDays); pstmt.setDouble(8, r.factor); pstmt.executeUpdate();
+                PricingEngine.invalidate();
+                wrote();
+            } catch (SQLException e) { e.printStackTrace(); UIUtils.showErrorLater("DB Error: Could not add pricing rule.", "DB Write Error"); }
+        }
+        public static User findUserById(String id) {
+            return read(db -> {
+                try (PreparedStatement pstmt = prepare(db, "SELECT * FROM users WHERE id = ? AND deleted_at IS NULL")) {
+                    pstmt.setString(1, id);
+                    ResultSet rs = pstmt.executeQuery();
+                    return rs.next() ? mapUser(rs) : null;
+                }
+            }, () -> null);
+        }
+        public static Car findCarById(String id) {
+            return read(db -> {
+                try (PreparedStatement pstmt = prepare(db, "SELECT * FROM cars WHERE id = ? AND deleted_at IS NULL")) {
+                    pstmt.setString(1, id);
+                    ResultSet rs = pstmt.executeQuery();
+                    return rs.next() ? mapCar(rs) : null;
+                }
+            }, () -> null);
+        }
+    }
+
+    // ---------------- Repository Backends ----------------
+    public static class Repositories {
+        private static volatile RentalRepository current;
+
+        public static RentalRepository get() {
+            RentalRepository r = current;
+            if (r == null) {
+                synchronized (Repositories.class) {
+                    if (current == null) current = open(System.getProperty("carrental.backend", "postgres"));
+                    r = current;
+                }
+            }
+            return r;
+        }
+
+        private static RentalRepository open(String backend) {
+            switch (backend.toLowerCase()) {
+                case "memory": return new InMemoryRepository();
+                case "sqlite":
+                    try { return new SqliteRepository(System.getProperty("carrental.sqlite", "jdbc:sqlite:carrental.db")); }
+                    catch (SQLException e) { throw new IllegalStateException("Cannot open SQLite backend", e); }
+                case "postgres": return new PostgresRepository();
+                case "offline":
+                    try { return new OfflineRepository(System.getProperty("carrental.mirror", "jdbc:sqlite:carrental-mirror.db")); }
+                    catch (SQLException e) { throw new IllegalStateException("Cannot open the offline mirror", e); }
+                default: throw new IllegalArgumentException("Unknown carrental.backend: " + backend);
+            }
+        }
+
+        // Demo data for a fresh store; mirrors DataStore.initializeDefaultData.
+        static void seed(RentalRepository r) {
+            r.addUser(new User("U001", "admin@demo", "admin123", "admin", "Admin Office"));
+            r.addUser(new User("U002", "user@demo", "user123", "user", "Customer 1"));
+            r.addUser(new User("U004", "seller@demo", "seller123", "seller", "+91-9876543210"));
+            r.addUser(new User("U005", "seller1@demo", "seller123", "seller", "+91-9876543211"));
+            r.addCar(new Car("C001","Toyota Camry","Camry",3500,"Sedan","Available","images/Toyota_Camry.jpeg","U004","Petrol",5,"Automatic"));
+            r.addCar(new Car("C002","Honda Civic","Civic",3200,"Sedan","Available","images/Honda_Civic.jpeg","U005","Petrol",5,"Automatic"));
+            r.addCar(new Car("C003","BMW X5","X5",7000,"SUV","Available","images/BMW_X5.jpeg","U004","Diesel",5,"Automatic"));
+        }
+
+        static String formatId(String prefix, int n) { return String.format(prefix + "%03d", n); }
+    }
+
+    // Runs the same operations against a fresh in-memory and a fresh SQLite backend, and against Postgres when
+    // -Dcarrental.jdbcUrl/dbUser/dbPassword are given, and reports every step where an answer differs from the
+    // in-memory one. The Postgres leg needs a scratch database holding only the demo data. Each backend is also
+    // timed over the script and over READ_ROUNDS rounds of the UI's reads. Needs the SQLite driver (and the
+    // Postgres driver for that leg) on the classpath; exits with 1 on a mismatch:
+    //   java -cp .:sqlite-jdbc.jar[:postgresql.jar] [-Dcarrental.jdbcUrl=...] 'CarRentalFull$RepositoryCheck'
+    public static class RepositoryCheck {
+        private static final int READ_ROUNDS = 200;
+
+        public static void main(String[] args) throws Exception {
+            // Background work such as the catalog snapshot rebuild goes through Repositories.get(); keep it off Supabase.
+            if (System.getProperty("carrental.backend") == null) System.setProperty("carrental.backend", "memory");
+            Path file = Files.createTempFile("carrental-check", ".db");
+            Map<String,List<String>> answers = new LinkedHashMap<>();
+            Map<String,long[]> millis = new LinkedHashMap<>();
+            try {
+                check(new InMemoryRepository(), answers, millis);
+                SqliteRepository sqlite = new SqliteRepository("jdbc:sqlite:" + file);
+                check(sqlite, answers, millis);
+                sqlite.conn.close();
+                if (System.getProperty("carrental.jdbcUrl") != null) check(new PostgresRepository(), answers, millis);
+            } finally { Files.deleteIfExists(file); }
+            List<String> expected = answers.get("memory");
+            int mismatches = 0, steps = expected.size();
+            for (Map.Entry<String,List<String>> backend : answers.entrySet()) {
+                List<String> actual = backend.getValue();
+                for (int i = 0; i < Math.max(expected.size(), actual.size()); i++) {
+                    String e = i < expected.size() ? expected.get(i) : "<missing>", a = i < actual.size() ? actual.get(i) : "<missing>";
+                    if (e.equals(a)) continue;
+                    mismatches++;
+                    System.out.println("MISMATCH\n  memory: " + e + "\n  " + backend.getKey() + ": " + a);
+                }
+            }
+            System.out.println(steps + " step(s) on " + answers.keySet() + ", " + mismatches + " mismatch(es).");
+            for (Map.Entry<String,long[]> e : millis.entrySet())
+                System.out.printf(Locale.ROOT, "%-8s script %6d ms, %d read rounds %6d ms%n", e.getKey(), e.getValue()[0], READ_ROUNDS, e.getValue()[1]);
+            System.exit(mismatches == 0 ? 0 : 1);
+        }
+
+        private static void check(RentalRepository r, Map<String,List<String>> answers, Map<String,long[]> millis) throws SQLException {
+            r.countBookings();   // connects, so the timings below leave out the connection setup
+            long started = System.nanoTime();
+            answers.put(r.name(), run(r));
+            long script = System.nanoTime() - started;
+            started = System.nanoTime();
+            for (int i = 0; i < READ_ROUNDS; i++) {
+                r.fetchCars(); r.fetchBookings(); r.fetchBookingsByUserId("U002"); r.findCarById("C001");
+                r.sellerStats("U004"); r.fetchBookingRows(i % 9, i % 2 == 0, 0, 20);
+            }
+            millis.put(r.name(), new long[]{script / 1_000_000, (System.nanoTime() - started) / 1_000_000});
+        }
+
+        // One line per step, "step: answer"; lists are sorted where the SPI does not promise an order.
+        static List<String> run(RentalRepository r) throws SQLException {
+            List<String> out = new ArrayList<>();
+            out.add("login: " + r.authenticate("admin@demo", "admin123", "admin").map(u -> u.id).orElse(null));
+            out.add("login with wrong password: " + r.authenticate("user@demo", "nope", "user").isPresent());
+            out.add("login with wrong role: " + r.authenticate("seller@demo", "seller123", "admin").isPresent());
+            out.add("username exists: " + r.usernameExists("user@demo") + " " + r.usernameExists("nobody@demo"));
+
+            String userId = r.nextUserId(), carId = r.nextCarId();
+            out.add("next ids: " + userId + " " + carId + " " + r.nextBookingId());
+            r.addUser(new User(userId, "check@demo", "check123", "user", "Checker"));
+            User u = r.findUserById(userId);
+            out.add("added user: " + (u == null ? null : u.username + " " + u.role + " " + u.contact + " " + Passwords.verify("check123", u.password)));
+            r.addCar(new Car(carId, "Kia Seltos", "Seltos", 2800, "SUV", "Available", null, "U004", "Petrol", 5, "Manual"));
+            out.add("added car: " + describe(r.findCarById(carId)));
+            Car c = r.findCarById(carId);
+            c.pricePerDay = 3000; c.status = "Maintenance";
+            r.updateCar(c);
+            out.add("updated car: " + describe(r.findCarById(carId)));
+
+            String[][] bookings = {{"U002", "C001", "05/01/2026", "3", "10500"}, {userId, carId, "10/01/2026", "2", "6000"},
+                                   {"U002", "C003", "01/02/2026", "1", "7000"}, {userId, "C002", "15/01/2026", "4", "12800"}};
+            List<String> bookingIds = new ArrayList<>();
+            for (String[] b : bookings) {
+                String id = r.nextBookingId();
+                bookingIds.add(id);
+                r.addBooking(new Booking(id, b[1], b[0], "Airport", b[2], "10:00", Integer.parseInt(b[3]), Double.parseDouble(b[4]), "Pending"));
+            }
+            out.add("booking ids: " + bookingIds);
+            r.updateBookingStatus(bookingIds.get(0), "Confirmed");
+            r.updateBookingStatus(bookingIds.get(1), "Rejected");
+            r.updateBookingStatus(bookingIds.get(2), "Confirmed");
+            out.add("stale confirm of a rejected booking: " + r.changeBookingStatus(bookingIds.get(1), "Pending", "Confirmed")
+                    + ", missing booking: " + r.changeBookingStatus("B999", null, "Confirmed")
+                    + ", pending confirmed: " + r.changeBookingStatus(bookingIds.get(3), "Pending", "Confirmed"));
+            LocalDate today = LocalDate.now();
+            out.add("decided today: " + r.report(today, today).decided);
+            out.add("bookings of U002: " + statuses(r.fetchBookingsByUserId("U002")));
+            out.add("bookings of " + userId + ": " + statuses(r.fetchBookingsByUserId(userId)));
+            out.add("all bookings: " + statuses(r.fetchBookings()) + ", count " + r.countBookings());
+            for (String seller : new String[]{"U004", "U005", userId}) {
+                SellerStats s = r.sellerStats(seller);
+                out.add("seller " + seller + ": " + s.pending + "/" + s.confirmed + "/" + s.rejected + " " + String.format(Locale.ROOT, "%.2f", s.revenue));
+            }
+            for (int col = 0; col < 9; col++) {
+                for (boolean asc : new boolean[]{true, false}) {
+                    List<String> page = new ArrayList<>();
+                    for (BookingRow row : r.fetchBookingRows(col, asc, 1, 2)) page.add(row.booking.id + "(" + row.buyerName + "," + row.ownerContact + ")");
+                    out.add("booking rows col " + col + (asc ? " asc: " : " desc: ") + page);
+                }
+            }
+
+            r.deleteCar(carId);
+            out.add("deleted car: " + describe(r.findCarById(carId)));
+            SellerStats owner = r.sellerStats("U004");
+            out.add("owner after delete: " + owner.pending + "/" + owner.confirmed + "/" + owner.rejected);
+            out.add("next car id after delete: " + r.nextCarId());
+            int before = r.countBookings();
+            r.addBooking(new Booking(r.nextBookingId(), carId, "U002", "Airport", "20/02/2026", "10:00", 1, 3000, "Pending"));
+            out.add("booking a deleted car: " + before + " -> " + r.countBookings());
+            r.addCar(new Car(carId, "Reused", "Id", 1000, "SUV", "Available", null, "U004", "Petrol", 5, "Manual"));
+            out.add("re-adding a deleted car id: " + describe(r.findCarById(carId)));
+            r.updateBookingStatus(bookingIds.get(1), "Pending");
+            owner = r.sellerStats("U004");
+            out.add("status change on a deleted car's booking: " + owner.pending + "/" + owner.confirmed + "/" + owner.rejected);
+            List<String> cars = new ArrayList<>();
+            for (Car x : r.fetchCars()) cars.add(x.id);
+            Collections.sort(cars);
+            List<String> users = new ArrayList<>();
+            for (User x : r.fetchUsers()) users.add(x.id);
+            Collections.sort(users);
+            out.add("cars: " + cars + ", users: " + users);
+            out.add("fleet: " + new TreeMap<>(r.fleetByCategory()));
+            out.add("analytics facts: " + r.fetchAnalyticsFacts().size());
+            return out;
+        }
+
+        private static String describe(Car c) {
+            return c == null ? null : String.join(" ", c.id, c.name, c.model, String.format(Locale.ROOT, "%.2f", c.pricePerDay), c.category, c.status,
+                    String.valueOf(c.ownerId), c.fuelType, String.valueOf(c.seats), c.transmission);
+        }
+
+        private static List<String> statuses(List<Booking> bookings) {
+            List<String> out = new ArrayList<>();
+            for (Booking b : bookings) out.add(b.id + "=" + b.status);
+            Collections.sort(out);
+            return out;
+        }
+    }
+
+    // End-to-end run of OfflineRepository + SyncEngine: a temp SQLite mirror against the configured Postgres
+    // (-Dcarrental.jdbcUrl/dbUser/dbPassword). Covers first pull, push of a local booking, pull of server
+    // edits, an offline spell (breaker tripped) with a conflicting edit and a taken provisional id, and a
+    // server delete. It edits and deletes demo rows, so point it at a scratch database. Exits with 1 on a failure:
+    //   java -cp .:postgresql.jar:sqlite-jdbc.jar -Dcarrental.jdbcUrl=... 'CarRentalFull$SyncCheck'
+    public static class SyncCheck {
+        private static int failures;
+
+        public static void main(String[] args) throws Exception {
+            if (System.getProperty("carrental.syncMillis") == null) System.setProperty("carrental.syncMillis", "300");
+            if (System.getProperty("carrental.breakerCooldownMillis") == null) System.setProperty("carrental.breakerCooldownMillis", "2000");
+            Path file = Files.createTempFile("carrental-mirror", ".db");
+            try (Connection server = DataStore.open()) {
+                OfflineRepository repo = new OfflineRepository("jdbc:sqlite:" + file);
+                SqliteRepository mirror = repo.local;
+                User user = repo.authenticate("user@demo", "user123", "user").orElse(null);
+                check("first pull signs the user in", user != null);
+                if (user == null) { System.exit(1); }
+                await("mirror has the server's cars", () -> DataStore.fetchCars().size() == mirror.fetchCars().size());
+                await("mirror has the server's users", () -> DataStore.fetchUsers().size() == mirror.fetchUsers().size());
+                check("only the signed-in user's hash is mirrored", mirror.queryOne("SELECT COUNT(*) FROM users WHERE password <> '' AND id <> ?", rs -> rs.getInt(1), user.id) == 0
+                        && !mirror.findUserById(user.id).password.isEmpty());
+
+                String booked = repo.nextBookingId();
+                repo.addBooking(new Booking(booked, "C001", user.id, "Airport", "20/12/2026", "10:00", 2, 7000, "Pending"));
+                await("local booking pushed", () -> repo.pendingChanges() == 0 && "Pending".equals(status(server, "bookings", booked)));
+                DataStore.updateBookingStatus(booked, "Confirmed");
+                await("server approval pulled", () -> "Confirmed".equals(mirror.queryOne("SELECT status FROM bookings WHERE id = ?", rs -> rs.getString(1), booked)));
+
+                // Offline: local edits queue up while the server changes the same car and takes the provisional booking id.
+                DataStore.BREAKER.trip();
+                Car local = repo.findCarById("C003"); local.pricePerDay = 1111; repo.updateCar(local);
+                Car other = repo.findCarById("C001"); other.status = "Maintenance"; repo.updateCar(other);
+                String provisional = repo.nextBookingId();
+                repo.addBooking(new Booking(provisional, "C002", user.id, "Station", "22/12/2026", "09:00", 1, 3200, "Pending"));
+                check("offline writes are queued", repo.pendingChanges() == 3);
+                check("offline sign-in for the mirrored user", repo.authenticate("user@demo", "user123", "user").isPresent());
+                check("no offline sign-in for other users", !repo.authenticate("admin@demo", "admin123", "admin").isPresent()
+                        && !repo.authenticate("admin@demo", "", "admin").isPresent());
+                try (Statement stmt = server.createStatement()) {
+                    stmt.executeUpdate("UPDATE cars SET price_per_day = 7777 WHERE id = 'C003'");
+                    stmt.executeUpdate("INSERT INTO bookings (id, car_id, user_id, pickup_place, pickup_date, pickup_time, days, total_price) "
+                            + "VALUES ('" + provisional + "', 'C003', 'U001', 'Depot', '01/01/2027', '10:00', 1, 7777)");
+                }
+                await("queue drained after reconnecting", () -> repo.pendingChanges() == 0);
+                await("conflicting edit lost to the server's copy", () -> repo.findCarById("C003").pricePerDay == 7777);
+                check("unconflicted edit pushed", "Maintenance".equals(status(server, "cars", "C001")));
+                check("conflict recorded", repo.sync.conflicts.sum() == 1);
+                List<String> mine = new ArrayList<>();
+                for (Booking b : repo.fetchBookingsByUserId(user.id)) if ("Station".equals(b.pickupPlace)) mine.add(b.id);
+                check("offline booking saved under a fresh id", mine.size() == 1 && !mine.get(0).equals(provisional) && "Pending".equals(status(server, "bookings", mine.get(0))));
+
+                DataStore.deleteCar("C002");
+                await("server delete pulled", () -> repo.findCarById("C002") == null);
+                System.out.println("pushed " + repo.sync.pushedChanges + ", pulled " + repo.sync.pulledRows + ", conflicts " + repo.sync.conflicts
+                        + ", failed cycles " + repo.sync.failedCycles);
+            } finally { Files.deleteIfExists(file); }
+            System.out.println(failures == 0 ? "Sync check passed." : failures + " check(s) failed.");
+            System.exit(failures == 0 ? 0 : 1);
+        }
+
+        interface Condition { boolean holds() throws Exception; }
+
+        private static void check(String what, boolean ok) {
+            if (!ok) failures++;
+            System.out.println((ok ? "ok    " : "FAIL  ") + what);
+        }
+
+        private static void await(String what, Condition condition) throws Exception {
+            long deadline = System.currentTimeMillis() + 30_000;
+            boolean ok;
+            while (!(ok = condition.holds()) && System.currentTimeMillis() < deadline) Thread.sleep(100);
+            check(what, ok);
+        }
+
+        private static String status(Connection server, String table, String id) throws SQLException {
+            try (PreparedStatement pstmt = server.prepareStatement("SELECT status FROM " + table + " WHERE id = ? AND deleted_at IS NULL")) {
+                pstmt.setString(1, id);
+                ResultSet rs = pstmt.executeQuery();
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
+    }
+
+    // The Supabase DataStore, including its counters, rollups, replicas and SQL paging.
+    public static class PostgresRepository implements RentalRepository {
+
+        public String name() { return "postgres"; }
+        public Optional<User> authenticate(String username, String password, String role) { return DataStore.authenticate(username, password, role); }
+        public boolean usernameExists(String username) { return DataStore.usernameExists(username); }
+        public List<User> fetchUsers() { return DataStore.fetchUsers(); }
+        public List<Car> fetchCars() { return DataStore.fetchCars(); }
+        public List<Booking> fetchBookings() { return DataStore.fetchBookings(); }
+        public List<Booking> fetchBookingsByUserId(String userId) { return DataStore.fetchBookingsByUserId(userId); }
+        public User findUserById(String id) { return DataStore.findUserById(id); }
+        public Car findCarById(String id) { return DataStore.findCarById(id); }
+        public void addUser(User u) { DataStore.addUser(u); }
+        public void addCar(Car c) { DataStore.addCar(c); }
+        public void updateCar(Car c) { DataStore.updateCar(c); }
+        public void deleteCar(String id) { DataStore.deleteCar(id); }
+        public void addBooking(Booking b) { DataStore.addBooking(b); }
+        public void updateBookingStatus(String bookingId, String newStatus) { DataStore.updateBookingStatus(bookingId, newStatus); }
+        public boolean changeBookingStatus(String bookingId, String expectedStatus, String newStatus) throws SQLException {
+            return DataStore.changeBookingStatus(bookingId, expectedStatus, newStatus) != DataStore.CONFLICT;
+        }
+        public String nextCarId() { return DataStore.nextCarId(); }
+        public String nextUserId() { return DataStore.nextUserId(); }
+        public String nextBookingId() { return DataStore.nextBookingId(); }
+
+        @Override public SellerStats sellerStats(String sellerId) { return DataStore.sellerStats(sellerId); }
+        @Override public int countBookings() { return DataStore.countBookings(); }
+        @Override public List<BookingRow> fetchBookingRows(int sortColumn, boolean ascending, int offset, int limit) { return DataStore.fetchBookingRows(sortColumn, ascending, offset, limit); }
+        @Override public List<Car> fetchCarsByIds(Collection<String> ids) { return DataStore.fetchCarsByIds(ids); }
+        @Override public Map<String,long[]> fetchBookedRanges(Collection<String> carIds) { return DataStore.fetchBookedRanges(carIds); }
+        @Override public List<PricingEngine.Rule> fetchPricingRules() { return DataStore.fetchPricingRules(); }
+        @Override public Analytics.Facts fetchAnalyticsFacts() { return DataStore.fetchAnalyticsFacts(); }
+        @Override public Map<String,Integer> fleetByCategory() { return DataStore.fleetByCategory(); }
+        @Override public Analytics.Report report(LocalDate from, LocalDate to) throws SQLException { return Analytics.fromRollups(from, to); }
+        @Override public List<StateEvent> fetchHistory(String entityId) { return DataStore.fetchHistory(entityId); }
+        @Override public List<StateEvent> fetchEvents(Timestamp from, Timestamp to) { return DataStore.fetchEvents(from, to); }
+        @Override public Map<String,Integer> checkDerivedData() { return DataStore.checkRollups(); }
+        @Override public boolean rebuildDerivedData() { return DataStore.rebuildRollups() && DataStore.reconcileSellerStats() >= 0; }
+    }
+
+    // Local SQLite file with the same tables as the standalone SQLite build (demofinalfinal.java),
+    // so both can share carrental.db. One connection; calls are serialised.
+    // Writes follow the Postgres backend: a deleted car moves to deleted_cars, which keeps its id taken and
+    // its owner known to the bookings that name it; seller_stats is bumped in the write's transaction; bookings
+    // carry created_at / decided_at (epoch ms). The standalone build knows none of this, so the counters are
+    // reconciled against the bookings each time the file is opened.
+    public static class SqliteRepository implements RentalRepository {
+        final Connection conn;
+
+        public SqliteRepository(String url) throws SQLException { this(url, true); }
+
+        // seedDemoData=false leaves an empty file empty (the offline mirror fills it from the server).
+        public SqliteRepository(String url, boolean seedDemoData) throws SQLException {
+            try { Class.forName("org.sqlite.JDBC"); } catch (ClassNotFoundException e) { throw new SQLException("SQLite driver not on the classpath", e); }
+            conn = DriverManager.getConnection(url);
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE TABLE IF NOT EXISTS users (id TEXT PRIMARY KEY, username TEXT UNIQUE NOT NULL, password TEXT NOT NULL, role TEXT NOT NULL, contact TEXT)");
+                stmt.execute("CREATE TABLE IF NOT EXISTS cars (id TEXT PRIMARY KEY, name TEXT NOT NULL, model TEXT, price_per_day REAL NOT NULL, category TEXT, status TEXT, image_path TEXT, owner_id TEXT, fuel_type TEXT, seats INTEGER, transmission TEXT)");
+                stmt.execute("CREATE TABLE IF NOT EXISTS bookings (id TEXT PRIMARY KEY, car_id TEXT, user_id TEXT, pickup_place TEXT, pickup_date TEXT, pickup_time TEXT, days INTEGER, total_price REAL, status TEXT DEFAULT 'Pending')");
+                stmt.execute("CREATE INDEX IF NOT EXISTS bookings_user_idx ON bookings (user_id)");
+                stmt.execute("CREATE INDEX IF NOT EXISTS bookings_car_idx ON bookings (car_id)");
+                stmt.execute("CREATE TABLE IF NOT EXISTS deleted_cars (id TEXT PRIMARY KEY, owner_id TEXT, category TEXT, deleted_at INTEGER NOT NULL)");
+                stmt.execute("CREATE TABLE IF NOT EXISTS seller_stats (seller_id TEXT PRIMARY KEY, pending INTEGER NOT NULL DEFAULT 0, confirmed INTEGER NOT NULL DEFAULT 0, rejected INTEGER NOT NULL DEFAULT 0, revenue REAL NOT NULL DEFAULT 0)");
+                Set<String> columns = new HashSet<>(select("PRAGMA table_info(bookings)", rs -> rs.getString("name")));
+                if (!columns.contains("created_at")) stmt.execute("ALTER TABLE bookings ADD COLUMN created_at INTEGER");
+                if (!columns.contains("decided_at")) stmt.execute("ALTER TABLE bookings ADD COLUMN decided_at INTEGER");
+            }
+            if (seedDemoData && fetchUsers().isEmpty()) Repositories.seed(this);
+            reconcileSellerStats();
+        }
+
+        public String name() { return "sqlite"; }
+
+        public synchronized Optional<User> authenticate(String username, String password, String role) {
+            if (!LoginLimiter.tryAcquire(username)) return Optional.empty();
+            User u = queryOne("SELECT * FROM users WHERE username = ? AND role = ?", this::mapUser, username, role);
+            if (u == null || !Passwords.verify(password, u.password)) return Optional.empty();
+            if (Passwords.needsRehash(u.password)) { u.password = Passwords.hash(password); update("UPDATE users SET password = ? WHERE id = ?", "update password", u.password, u.id); }
+            LoginLimiter.onSuccess(username);
+            return Optional.of(u);
+        }
+        public synchronized boolean usernameExists(String username) { return queryOne("SELECT id FROM users WHERE username = ?", rs -> rs.getString(1), username) != null; }
+        public synchronized List<User> fetchUsers() { return query("SELECT * FROM users", this::mapUser); }
+        public synchronized List<Car> fetchCars() { return query("SELECT * FROM cars", this::mapCar); }
+        public synchronized List<Booking> fetchBookings() { return query("SELECT * FROM bookings", this::mapBooking); }
+        public synchronized List<Booking> fetchBookingsByUserId(String userId) { return query("SELECT * FROM bookings WHERE user_id = ?", this::mapBooking, userId); }
+        public synchronized User findUserById(String id) { return queryOne("SELECT * FROM users WHERE id = ?", this::mapUser, id); }
+        public synchronized Car findCarById(String id) { return queryOne("SELECT * FROM cars WHERE id = ?", this::mapCar, id); }
+
+        public synchronized void addUser(User u) {
+            if (!Passwords.isHashed(u.password)) u.password = Passwords.hash(u.password);
+            update("INSERT INTO users (id, username, password, role, contact) VALUES (?,?,?,?,?)", "add user", u.id, u.username, u.password, u.role, u.contact);
+        }
+        public synchronized void addCar(Car c) { write("add car", () -> insertCar(c)); }
+        public synchronized void updateCar(Car c) {
+            update("UPDATE cars SET name=?, model=?, price_per_day=?, category=?, status=?, image_path=?, owner_id=?, fuel_type=?, seats=?, transmission=? WHERE id=?", "update car",
+                c.name, c.model, c.pricePerDay, c.category, c.status, c.imagePath, c.ownerId, c.fuelType, c.seats, c.transmission, c.id);
+            CatalogSnapshot.invalidate();
+        }
+        public synchronized void deleteCar(String id) { write("delete car", () -> removeCar(id)); }
+        public synchronized void addBooking(Booking b) { write("add booking", () -> insertBooking(b)); }
+        public synchronized void updateBookingStatus(String bookingId, String newStatus) { write("update booking status", () -> changeBookingStatus(bookingId, null, newStatus)); }
+        public synchronized String nextCarId() { return nextId("(SELECT id FROM cars UNION ALL SELECT id FROM deleted_cars)", "C"); }
+        public synchronized String nextUserId() { return nextId("users", "U"); }
+        public synchronized String nextBookingId() { return nextId("bookings", "B"); }
+
+        @Override public synchronized int countBookings() { Integer n = queryOne("SELECT COUNT(*) FROM bookings", rs -> rs.getInt(1)); return n == null ? 0 : n; }
+
+        // The throwing forms of the writes, for OfflineRepository to run inside its outbox transaction.
+        synchronized void insertCar(Car c) throws SQLException {
+            transaction(() -> {
+                if (!select("SELECT id FROM deleted_cars WHERE id = ?", rs -> rs.getString(1), c.id).isEmpty()) throw new SQLException("Car " + c.id + " already exists", "23505");
+                execute("INSERT INTO cars (id, name, model, price_per_day, category, status, image_path, owner_id, fuel_type, seats, transmission) VALUES (?,?,?,?,?,?,?,?,?,?,?)",
+                    c.id, c.name, c.model, c.pricePerDay, c.category, c.status, c.imagePath, c.ownerId, c.fuelType, c.seats, c.transmission);
+            });
+            CatalogSnapshot.invalidate();
+        }
+        synchronized void removeCar(String id) throws SQLException {
+            transaction(() -> {
+                execute("INSERT OR IGNORE INTO deleted_cars (id, owner_id, category, deleted_at) SELECT id, owner_id, category, ? FROM cars WHERE id = ?", System.currentTimeMillis(), id);
+                execute("DELETE FROM cars WHERE id = ?", id);
+            });
+            CatalogSnapshot.invalidate();
+        }
+        synchronized void insertBooking(Booking b) throws SQLException {
+            transaction(() -> {
+                List<String[]> car = select("SELECT owner_id FROM cars WHERE id = ?", rs -> new String[]{rs.getString(1)}, b.carId);
+                if (car.isEmpty()) throw new SQLException("Booking " + b.id + " already exists or car " + b.carId + " was deleted", "23505");
+                execute("INSERT INTO bookings (id, car_id, user_id, pickup_place, pickup_date, pickup_time, days, total_price, status, created_at) VALUES (?,?,?,?,?,?,?,?, 'Pending', ?)",
+                    b.id, b.carId, b.userId, b.pickupPlace, b.pickupDate, b.pickupTime, b.days, b.totalPrice, System.currentTimeMillis());
+                if (car.get(0)[0] != null) bumpSellerStats(car.get(0)[0], new int[]{1, 0, 0}, 0);
+            });
+        }
+        public synchronized boolean changeBookingStatus(String bookingId, String expectedStatus, String newStatus) throws SQLException {
+            boolean[] changed = {false};
+            transaction(() -> {
+                List<Object[]> found = select("SELECT b.status, b.total_price, c.owner_id FROM bookings b LEFT JOIN " + ALL_CARS + " c ON c.id = b.car_id WHERE b.id = ?",
+                    rs -> new Object[]{rs.getString(1), rs.getDouble(2), rs.getString(3)}, bookingId);
+                if (found.isEmpty() || expectedStatus != null && !expectedStatus.equals(found.get(0)[0])) return;
+                String oldStatus = (String)found.get(0)[0], ownerId = (String)found.get(0)[2]; double total = (Double)found.get(0)[1];
+                execute("UPDATE bookings SET status = ?, decided_at = ? WHERE id = ?", newStatus, "Pending".equals(newStatus) ? null : System.currentTimeMillis(), bookingId);
+                if (ownerId != null && !newStatus.equals(oldStatus)) {
+                    int[] delta = new int[3];
+                    SellerStats.count(delta, oldStatus, -1); SellerStats.count(delta, newStatus, +1);
+                    bumpSellerStats(ownerId, delta, ("Confirmed".equals(newStatus) ? total : 0) - ("Confirmed".equals(oldStatus) ? total : 0));
+                }
+                changed[0] = true;
+            });
+            return changed[0];
+        }
+
+        // --- Seller Counters ---
+        // Live and deleted cars, so a deleted car's bookings still count for its owner.
+        private static final String ALL_CARS = "(SELECT id, owner_id, category FROM cars UNION ALL SELECT id, owner_id, category FROM deleted_cars)";
+        private static final String SELLER_TRUTH = "SELECT c.owner_id AS seller_id, "
+                + "SUM(CASE WHEN b.status = 'Pending' THEN 1 ELSE 0 END) AS pending, "
+                + "SUM(CASE WHEN b.status = 'Confirmed' THEN 1 ELSE 0 END) AS confirmed, "
+                + "SUM(CASE WHEN b.status = 'Rejected' THEN 1 ELSE 0 END) AS rejected, "
+                + "SUM(CASE WHEN b.status = 'Confirmed' THEN b.total_price ELSE 0 END) AS revenue "
+                + "FROM bookings b JOIN " + ALL_CARS + " c ON c.id = b.car_id WHERE c.owner_id IS NOT NULL GROUP BY c.owner_id";
+
+        @Override public synchronized SellerStats sellerStats(String sellerId) {
+            SellerStats s = queryOne("SELECT * FROM seller_stats WHERE seller_id = ?", rs -> new SellerStats(rs.getString("seller_id"), rs.getInt("pending"),
+                rs.getInt("confirmed"), rs.getInt("rejected"), rs.getDouble("revenue")), sellerId);
+            return s != null ? s : new SellerStats(sellerId, 0, 0, 0, 0);
+        }
+
+        private void bumpSellerStats(String sellerId, int[] delta, double revenue) throws SQLException {
+            execute("INSERT INTO seller_stats (seller_id, pending, confirmed, rejected, revenue) VALUES (?,?,?,?,?) "
+                + "ON CONFLICT (seller_id) DO UPDATE SET pending = pending + excluded.pending, confirmed = confirmed + excluded.confirmed, "
+                + "rejected = rejected + excluded.rejected, revenue = revenue + excluded.revenue", sellerId, delta[0], delta[1], delta[2], revenue);
+        }
+
+        // Sellers whose stored counters differ from their bookings (-1 on error).
+        synchronized int sellerStatsDrift() {
+            Integer n = queryOne("SELECT (SELECT COUNT(*) FROM (" + SELLER_TRUTH + ") t LEFT JOIN seller_stats s ON s.seller_id = t.seller_id "
+                + "WHERE s.seller_id IS NULL OR s.pending <> t.pending OR s.confirmed <> t.confirmed OR s.rejected <> t.rejected OR ABS(s.revenue - t.revenue) >= 0.005) "
+                + "+ (SELECT COUNT(*) FROM seller_stats WHERE (pending <> 0 OR confirmed <> 0 OR rejected <> 0 OR ABS(revenue) >= 0.005) "
+                + "AND seller_id NOT IN (SELECT seller_id FROM (" + SELLER_TRUTH + ")))", rs -> rs.getInt(1));
+            return n == null ? -1 : n;
+        }
+
+        // Rewrites seller_stats from the bookings when it drifted; returns the number of sellers that were off (-1 on error).
+        synchronized int reconcileSellerStats() {
+            int drift = sellerStatsDrift();
+            if (drift <= 0) return drift;
+            try {
+                transaction(() -> {
+                    execute("DELETE FROM seller_stats");
+                    execute("INSERT INTO seller_stats (seller_id, pending, confirmed, rejected, revenue) " + SELLER_TRUTH);
+                });
+            } catch (SQLException e) { e.printStackTrace(); return -1; }
+            System.out.println("seller_stats: corrected " + drift + " seller(s).");
+            return drift;
+        }
+
+        @Override public Map<String,Integer> checkDerivedData() { return Collections.singletonMap("seller_stats", sellerStatsDrift()); }
+        @Override public boolean rebuildDerivedData() { return reconcileSellerStats() >= 0; }
+
+        @Override public synchronized Analytics.Facts fetchAnalyticsFacts() {
+            Analytics.Facts facts = new Analytics.Facts();
+            query("SELECT c.owner_id, c.category, b.pickup_date, b.days, b.total_price, b.status, b.created_at, b.decided_at FROM bookings b LEFT JOIN " + ALL_CARS + " c ON c.id = b.car_id", rs -> {
+                long created = rs.getLong(7); boolean noCreated = rs.wasNull();
+                long decided = rs.getLong(8); boolean undecided = rs.wasNull();
+                facts.add(rs.getString(1), Interner.of(rs.getString(2)), Dates.parse(rs.getString(3)), rs.getInt(4), rs.getDouble(5), Interner.of(rs.getString(6)),
+                    noCreated || undecided ? -1 : decided - created, undecided ? null : new Timestamp(decided).toLocalDateTime().toLocalDate());
+                return null;
+            });
+            return facts;
+        }
+
+        private String nextId(String table, String prefix) {
+            Integer max = queryOne("SELECT MAX(CAST(SUBSTR(id, 2) AS INTEGER)) FROM " + table, rs -> rs.getInt(1));
+            return Repositories.formatId(prefix, (max == null ? 0 : max) + 1);
+        }
+
+        interface RowMapper<T> { T map(ResultSet rs) throws SQLException; }
+        interface Work { void run() throws SQLException; }
+
+        <T> List<T> query(String sql, RowMapper<T> mapper, Object... args) {
+            try { return select(sql, mapper, args); }
+            catch (SQLException e) { e.printStackTrace(); return new ArrayList<>(); }
+        }
+        <T> List<T> select(String sql, RowMapper<T> mapper, Object... args) throws SQLException {
+            List<T> out = new ArrayList<>();
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                for (int i = 0; i < args.length; i++) pstmt.setObject(i + 1, args[i]);
+                ResultSet rs = pstmt.executeQuery();
+                while (rs.next()) out.add(mapper.map(rs));
+            }
+            return out;
+        }
+        <T> T queryOne(String sql, RowMapper<T> mapper, Object... args) {
+            List<T> rows = query(sql, mapper, args);
+            return rows.isEmpty() ? null : rows.get(0);
+        }
+        void update(String sql, String what, Object... args) { write(what, () -> execute(sql, args)); }
+        void write(String what, Work work) {
+            try { transaction(work); }
+            catch (SQLException e) { e.printStackTrace(); UIUtils.showErrorLater("DB Error: Could not " + what + ".", "DB Write Error"); }
+        }
+        // Runs work in one transaction, or as part of the caller's when one is already open.
+        synchronized void transaction(Work work) throws SQLException {
+            if (!conn.getAutoCommit()) { work.run(); return; }
+            conn.setAutoCommit(false);
+            try { work.run(); conn.commit(); }
+            catch (SQLException | RuntimeException e) { conn.rollback(); throw e; }
+            finally { conn.setAutoCommit(true); }
+        }
+        int execute(String sql, Object... args) throws SQLException {
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                for (int i = 0; i < args.length; i++) pstmt.setObject(i + 1, args[i]);
+                return pstmt.executeUpdate();
+            }
+        }
+
+        Car mapCar(ResultSet rs) throws SQLException {
+            return new Car(rs.getString("id"), rs.getString("name"), rs.getString("model"), rs.getDouble("price_per_day"),
+                Interner.of(rs.getString("category")), Interner.of(rs.getString("status")), rs.getString("image_path"), rs.getString("owner_id"),
+                Interner.of(rs.getString("fuel_type")), rs.getInt("seats"), Interner.of(rs.getString("transmission")));
+        }
+        User mapUser(ResultSet rs) throws SQLException {
+            return new User(rs.getString("id"), rs.getString("username"), rs.getString("password"), Interner.of(rs.getString("role")), rs.getString("contact"));
+        }
+        Booking mapBooking(ResultSet rs) throws SQLException {
+            return new Booking(rs.getString("id"), rs.getString("car_id"), rs.getString("user_id"),
+                rs.getString("pickup_place"), rs.getString("pickup_date"), rs.getString("pickup_time"),
+                rs.getInt("days"), rs.getDouble("total_price"), Interner.of(rs.getString("status")));
+        }
+    }
+
+    // Everything in hash maps behind one read/write lock; lost on exit. Useful for demos and as the
+    // baseline when comparing backends. Returned objects are copies so callers can't edit the store.
+    // Writes follow the Postgres backend: deleted cars stay behind as tombstones, seller counters move
+    // with every booking change, and bookings remember when they were made and decided.
+    public static class InMemoryRepository implements RentalRepository {
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final Map<String,User> users = new LinkedHashMap<>();
+        private final Map<String,User> usersByName = new HashMap<>();
+        private final Map<String,Car> cars = new LinkedHashMap<>();
+        private final Map<String,Car> deletedCars = new HashMap<>();          // keeps the id taken and the owner known
+        private final Map<String,Booking> bookings = new LinkedHashMap<>();
+        private final Map<String,long[]> bookingTimes = new HashMap<>();      // created, decided (-1 while Pending) in epoch ms
+        private final Map<String,List<String>> bookingIdsByUser = new HashMap<>();
+        private final Map<String,double[]> sellerCounters = new HashMap<>();  // pending, confirmed, rejected, revenue
+
+        public InMemoryRepository() { Repositories.seed(this); }
+
+        public String name() { return "memory"; }
+
+        public Optional<User> authenticate(String username, String password, String role) {
+            if (!LoginLimiter.tryAcquire(username)) return Optional.empty();
+            User u = read(() -> usersByName.get(username));
+            if (u == null || !u.role.equals(role) || !Passwords.verify(password, u.password)) return Optional.empty();
+            LoginLimiter.onSuccess(username);
+            return Optional.of(copy(u));
+        }
+        public boolean usernameExists(String username) { return read(() -> usersByName.containsKey(username)); }
+        public List<User> fetchUsers() { return read(() -> { List<User> out = new ArrayList<>(); for (User u : users.values()) out.add(copy(u)); return out; }); }
+        public List<Car> fetchCars() { return read(() -> { List<Car> out = new ArrayList<>(); for (Car c : cars.values()) out.add(copy(c)); return out; }); }
+        public List<Booking> fetchBookings() { return read(() -> { List<Booking> out = new ArrayList<>(); for (Booking b : bookings.values()) out.add(copy(b)); return out; }); }
+        public List<Booking> fetchBookingsByUserId(String userId) {
+            return read(() -> {
+                List<Booking> out = new ArrayList<>();
+                for (String id : bookingIdsByUser.getOrDefault(userId, Collections.emptyList())) out.add(copy(bookings.get(id)));
+                return out;
+            });
+        }
+        public User findUserById(String id) { return read(() -> copy(users.get(id))); }
+        public Car findCarById(String id) { return read(() -> copy(cars.get(id))); }
+
+        public void addUser(User u) {
+            User stored = copy(u);
+            if (!Passwords.isHashed(stored.password)) stored.password = u.password = Passwords.hash(u.password);
+            write(() -> { users.put(stored.id, stored); usersByName.put(stored.username, stored); });
+        }
+        public void addCar(Car c) {
+            Car stored = copy(c);
+            if (!write(() -> !cars.containsKey(stored.id) && !deletedCars.containsKey(stored.id) && cars.put(stored.id, stored) == null)) { failed("add car"); return; }
+            CatalogSnapshot.invalidate();
+        }
+        public void updateCar(Car c) { Car stored = copy(c); write(() -> cars.replace(stored.id, stored)); CatalogSnapshot.invalidate(); }
+        public void deleteCar(String id) { write(() -> { Car c = cars.remove(id); if (c != null) deletedCars.put(id, c); }); CatalogSnapshot.invalidate(); }
+        public void addBooking(Booking b) {
+            Booking stored = copy(b);
+            stored.status = "Pending";
+            boolean added = write(() -> {
+                Car car = cars.get(stored.carId);
+                if (car == null || bookings.containsKey(stored.id)) return false;
+                bookings.put(stored.id, stored);
+                bookingTimes.put(stored.id, new long[]{System.currentTimeMillis(), -1});
+                bookingIdsByUser.computeIfAbsent(stored.userId, k -> new ArrayList<>()).add(stored.id);
+                if (car.ownerId != null) sellerCounters.computeIfAbsent(car.ownerId, k -> new double[4])[0]++;
+                return true;
+            });
+            if (!added) failed("add booking");
+        }
+        public void updateBookingStatus(String bookingId, String newStatus) { changeBookingStatus(bookingId, null, newStatus); }
+        public boolean changeBookingStatus(String bookingId, String expectedStatus, String newStatus) {
+            return write(() -> {
+                Booking b = bookings.get(bookingId);
+                if (b == null || expectedStatus != null && !expectedStatus.equals(b.status)) return false;
+                String oldStatus = b.status;
+                b.status = newStatus;
+                bookingTimes.get(bookingId)[1] = "Pending".equals(newStatus) ? -1 : System.currentTimeMillis();
+                Car car = carOrTombstone(b.carId);
+                if (car != null && car.ownerId != null && !newStatus.equals(oldStatus)) {
+                    int[] delta = new int[3];
+                    SellerStats.count(delta, oldStatus, -1); SellerStats.count(delta, newStatus, +1);
+                    double[] counters = sellerCounters.computeIfAbsent(car.ownerId, k -> new double[4]);
+                    for (int i = 0; i < 3; i++) counters[i] += delta[i];
+                    counters[3] += ("Confirmed".equals(newStatus) ? b.totalPrice : 0) - ("Confirmed".equals(oldStatus) ? b.totalPrice : 0);
+                }
+                return true;
+            });
+        }
+        public String nextCarId() { return read(() -> Repositories.formatId("C", Math.max(maxId(cars.keySet()), maxId(deletedCars.keySet())) + 1)); }
+        public String nextUserId() { return read(() -> Repositories.formatId("U", maxId(users.keySet()) + 1)); }
+        public String nextBookingId() { return read(() -> Repositories.formatId("B", maxId(bookings.keySet()) + 1)); }
+
+        @Override public int countBookings() { return read(bookings::size); }
+        @Override public List<Car> fetchCarsByIds(Collection<String> ids) {
+            return read(() -> { List<Car> out = new ArrayList<>(); for (String id : ids) { Car c = cars.get(id); if (c != null) out.add(copy(c)); } return out; });
+        }
+        @Override public SellerStats sellerStats(String sellerId) {
+            return read(() -> {
+                double[] c = sellerCounters.getOrDefault(sellerId, new double[4]);
+                return new SellerStats(sellerId, (int)c[0], (int)c[1], (int)c[2], c[3]);
+            });
+        }
+        @Override public Analytics.Facts fetchAnalyticsFacts() {
+            return read(() -> {
+                Analytics.Facts facts = new Analytics.Facts();
+                for (Booking b : bookings.values()) {
+                    Car c = carOrTombstone(b.carId);
+                    long[] t = bookingTimes.get(b.id);
+                    facts.add(c == null ? null : c.ownerId, c == null ? null : c.category, Dates.parse(b.pickupDate), b.days, b.totalPrice, b.status,
+                        t[1] < 0 ? -1 : t[1] - t[0], t[1] < 0 ? null : new Timestamp(t[1]).toLocalDateTime().toLocalDate());
+                }
+                return facts;
+            });
+        }
+
+        private Car carOrTombstone(String id) { Car c = cars.get(id); return c != null ? c : deletedCars.get(id); }
+
+        // Same report as the Postgres backend gives for a rejected write.
+        private static void failed(String what) { UIUtils.showErrorLater("DB Error: Could not " + what + ".", "DB Write Error"); }
+
+        private static int maxId(Set<String> ids) {
+            int max = 0;
+            for (String id : ids) { try { max = Math.max(max, Integer.parseInt(id.substring(1))); } catch (RuntimeException ignored) { } }
+            return max;
+        }
+
+        private <T> T read(Supplier<T> body) {
+            lock.readLock().lock();
+            try { return body.get(); } finally { lock.readLock().unlock(); }
+        }
+        private void write(Runnable body) {
+            lock.writeLock().lock();
+            try { body.run(); } finally { lock.writeLock().unlock(); }
+        }
+        private <T> T write(Supplier<T> body) {
+            lock.writeLock().lock();
+            try { return body.get(); } finally { lock.writeLock().unlock(); }
+        }
+
+        private static User copy(User u) { return u == null ? null : new User(u.id, u.username, u.password, u.role, u.contact); }
+        private static Car copy(Car c) {
+            return c == null ? null : new Car(c.id, c.name, c.model, c.pricePerDay, c.category, c.status, c.imagePath, c.ownerId, c.fuelType, c.seats, c.transmission);
+        }
+        private static Booking copy(Booking b) {
+            return b == null ? null : new Booking(b.id, b.carId, b.userId, b.pickupPlace, b.pickupDate, b.pickupTime, b.days, b.totalPrice, b.status);
+        }
+    }
+
+    // Offline-first client for the Postgres backend (-Dcarrental.backend=offline): the UI reads and writes a
+    // local SQLite mirror (-Dcarrental.mirror) of users, cars and the signed-in user's bookings, so every call
+    // has local latency whether or not Supabase answers. Each write lands in the mirror together with an
+    // outbox row in one local transaction; SyncEngine pushes the outbox and pulls server changes.
+    public static class OfflineRepository implements RentalRepository {
+        final SqliteRepository local;
+        final SyncEngine sync;
+
+        interface LocalWork { void run() throws SQLException; }
+
+        public OfflineRepository(String url) throws SQLException {
+            local = new SqliteRepository(url, false);
+            try (Statement stmt = local.conn.createStatement()) {
+                stmt.execute("CREATE TABLE IF NOT EXISTS sync_versions (entity TEXT NOT NULL, id TEXT NOT NULL, version INTEGER NOT NULL, PRIMARY KEY (entity, id))");
+                stmt.execute("CREATE TABLE IF NOT EXISTS sync_meta (key TEXT PRIMARY KEY, value INTEGER NOT NULL)");
+                stmt.execute("CREATE TABLE IF NOT EXISTS outbox (seq INTEGER PRIMARY KEY AUTOINCREMENT, entity TEXT NOT NULL, op TEXT NOT NULL, entity_id TEXT NOT NULL, "
+                        + "base_version INTEGER NOT NULL, expected TEXT, value TEXT)");
+                stmt.execute("CREATE TABLE IF NOT EXISTS sync_conflicts (seq INTEGER, op TEXT, entity_id TEXT, detail TEXT, at INTEGER)");
+            }
+            sync = new SyncEngine(this);
+            sync.start();
+        }
+
+        public String name() { return "offline"; }
+
+        // Signs in against the server while it is reachable and keeps that user's hash in the mirror, so the
+        // same user can sign in here offline later; nobody else's hash is mirrored. An empty mirror waits for one sync.
+        public Optional<User> authenticate(String username, String password, String role) {
+            if (!sync.hasPulled()) sync.syncNow();
+            Optional<User> u;
+            if (sync.online()) {
+                u = DataStore.authenticate(username, password, role);
+                if (u.isPresent()) {
+                    User s = u.get();
+                    try {
+                        local.execute("INSERT INTO users (id, username, password, role, contact) VALUES (?,?,?,?,?) "
+                                + "ON CONFLICT (id) DO UPDATE SET password = excluded.password", s.id, s.username, s.password, s.role, s.contact);
+                    } catch (SQLException e) { e.printStackTrace(); }
+                }
+            } else u = local.authenticate(username, password, role);
+            u.ifPresent(sync::scopeTo);
+            return u;
+        }
+        public boolean usernameExists(String username) { return local.usernameExists(username); }
+        public List<User> fetchUsers() { return local.fetchUsers(); }
+        public List<Car> fetchCars() { return local.fetchCars(); }
+        public List<Booking> fetchBookings() { return local.fetchBookings(); }
+        public List<Booking> fetchBookingsByUserId(String userId) { return local.fetchBookingsByUserId(userId); }
+        public User findUserById(String id) { return local.findUserById(id); }
+        public Car findCarById(String id) { return local.findCarById(id); }
+        @Override public int countBookings() { return local.countBookings(); }
+        // History is kept by the server only; empty while it cannot be reached.
+        @Override public List<StateEvent> fetchHistory(String entityId) { return DataStore.fetchHistory(entityId); }
+        @Override public List<StateEvent> fetchEvents(Timestamp from, Timestamp to) { return DataStore.fetchEvents(from, to); }
+        // The mirror holds only the signed-in user's bookings, so availability is asked of the server;
+        // null (unknown) while it cannot be reached.
+        @Override public Map<String,long[]> fetchBookedRanges(Collection<String> carIds) { return sync.online() ? DataStore.fetchBookedRanges(carIds) : null; }
+
+        public void addUser(User u) { write(() -> local.addUser(u), "user", "ADD_USER", u.id, null, null); }
+        public void addCar(Car c) { write(() -> local.insertCar(c), "car", "ADD_CAR", c.id, null, null); }
+        public void updateCar(Car c) { write(() -> local.updateCar(c), "car", "UPDATE_CAR", c.id, null, null); }
+        public void deleteCar(String id) { write(() -> local.removeCar(id), "car", "DELETE_CAR", id, null, null); }
+        public void addBooking(Booking b) { write(() -> local.insertBooking(b), "booking", "ADD_BOOKING", b.id, null, null); }
+        public void updateBookingStatus(String bookingId, String newStatus) {
+            try { changeBookingStatus(bookingId, null, newStatus); }
+            catch (SQLException e) { e.printStackTrace(); UIUtils.showErrorLater("DB Error: Could not save change locally.", "DB Write Error"); }
+        }
+        // Checked against the mirror now and queued with the status it moved from, so the server applies it
+        // only if the booking is still there; otherwise the push is a conflict and the server's status wins.
+        public boolean changeBookingStatus(String bookingId, String expectedStatus, String newStatus) throws SQLException {
+            synchronized (local) {
+                String current = local.queryOne("SELECT status FROM bookings WHERE id = ?", rs -> rs.getString(1), bookingId);
+                if (current == null || expectedStatus != null && !expectedStatus.equals(current)) return false;
+                queue(() -> local.changeBookingStatus(bookingId, current, newStatus), "booking", "BOOKING_STATUS", bookingId, current, newStatus);
+            }
+            sync.nudge();
+            return true;
+        }
+
+        // Ids come from the server while it is reachable; offline ones are provisional and renamed on push if taken.
+        public String nextCarId() { return nextId("cars", "C", local::nextCarId); }
+        public String nextUserId() { return nextId("users", "U", local::nextUserId); }
+        public String nextBookingId() { return nextId("bookings", "B", local::nextBookingId); }
+
+        private String nextId(String table, String prefix, Supplier<String> offline) {
+            if (sync.online()) {
+                try { return DataStore.allocateId(table, prefix); } catch (SQLException e) { /* fall back to a provisional id */ }
+            }
+            return offline.get();
+        }
+
+        private void write(LocalWork change, String entity, String op, String id, String expected, String value) {
+            try { queue(change, entity, op, id, expected, value); }
+            catch (SQLException e) { e.printStackTrace(); UIUtils.showErrorLater("DB Error: Could not save change locally.", "DB Write Error"); }
+            sync.nudge();
+        }
+
+        // Applies change to the mirror and records it in the outbox, in one local transaction.
+        private void queue(LocalWork change, String entity, String op, String id, String expected, String value) throws SQLException {
+            synchronized (local) {
+                inLocalTransaction(() -> {
+                    change.run();
+                    local.execute("INSERT INTO outbox (entity, op, entity_id, base_version, expected, value) VALUES (?,?,?,?,?,?)",
+                            entity, op, id, version(entity, id), expected, value);
+                });
+            }
+        }
+
+        // Last server version of a row this mirror has seen, or DataStore.ANY_VERSION if it never came from the server.
+        long version(String entity, String id) {
+            Long v = local.queryOne("SELECT version FROM sync_versions WHERE entity = ? AND id = ?", rs -> rs.getLong(1), entity, id);
+            return v == null ? DataStore.ANY_VERSION : v;
+        }
+
+        void inLocalTransaction(LocalWork work) throws SQLException {
+            synchronized (local) {
+                local.conn.setAutoCommit(false);
+                try { work.run(); local.conn.commit(); }
+                catch (SQLException | RuntimeException e) { local.conn.rollback(); throw e; }
+                finally { local.conn.setAutoCommit(true); }
+            }
+        }
+
+        public int pendingChanges() { Integer n = local.queryOne("SELECT COUNT(*) FROM outbox", rs -> rs.getInt(1)); return n == null ? 0 : n; }
+    }
+
+    // ---------------- Sync Engine ----------------
+    // Background loop behind OfflineRepository, every -Dcarrental.syncMillis (default 5 s) and right after
+    // each local write. Push: outbox entries in order, as versioned writes (an update names the version it
+    // was made against; a status change names the status it moved from). A rejected entry is a conflict:
+    // it is logged to sync_conflicts, dropped, and the row is re-pulled so the server's copy wins.
+    // Pull: DataStore.changesSince from the per-table watermarks, skipping rows with queued local changes.
+    public static class SyncEngine {
+        private final OfflineRepository repo;
+        private final SqliteRepository local;
+        private final ScheduledExecutorService loop = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "offline-sync"); t.setDaemon(true); return t;
+        });
+        private final AtomicBoolean nudged = new AtomicBoolean();
+        private volatile User viewer;
+        private volatile boolean pulled;
+        public final LongAdder pushedChanges = new LongAdder(), pulledRows = new LongAdder(), conflicts = new LongAdder(), failedCycles = new LongAdder();
+
+        private static class Op {
+            final long seq, base; final String entity, op, id, expected, value;
+            Op(ResultSet rs) throws SQLException {
+                seq = rs.getLong("seq"); base = rs.getLong("base_version"); entity = rs.getString("entity"); op = rs.getString("op");
+                id = rs.getString("entity_id"); expected = rs.getString("expected"); value = rs.getString("value");
+            }
+        }
+
+        SyncEngine(OfflineRepository repo) { this.repo = repo; this.local = repo.local; }
+
+        void start() { loop.scheduleWithFixedDelay(this::cycle, 0, Long.getLong("carrental.syncMillis", 5000), TimeUnit.MILLISECONDS); }
+
+        // Collapses a burst of writes into one extra cycle.
+        void nudge() { if (nudged.compareAndSet(false, true)) loop.execute(() -> { nudged.set(false); cycle(); }); }
+
+        void syncNow() {
+            try { loop.submit(this::cycle).get(30, TimeUnit.SECONDS); }
+            catch (Exception e) { System.err.println("Initial sync did not finish: " + e); }
+        }
+
+        boolean hasPulled() { return pulled; }
+        boolean online() { return pulled && DataStore.BREAKER.state() == CircuitBreaker.State.CLOSED; }
+
+        // Bookings and the password hash are mirrored per user: switching users drops the previous user's synced
+        // bookings, and the first sign-in blanks any other hash left by older builds that mirrored them all.
+        void scopeTo(User user) {
+            User previous = viewer;
+            viewer = user;
+            if (previous != null && previous.id.equals(user.id)) return;
+            try {
+                repo.inLocalTransaction(() -> {
+                    local.execute("UPDATE users SET password = '' WHERE id <> ? AND password <> ''", user.id);
+                    local.execute("DELETE FROM bookings WHERE id NOT IN (SELECT entity_id FROM outbox WHERE entity = 'booking')");
+                    local.execute("DELETE FROM sync_versions WHERE entity = 'booking'");
+                    local.execute("DELETE FROM sync_meta WHERE key = 'bookings'");
+                });
+            } catch (SQLException e) { e.printStackTrace(); }
+            nudge();
+        }
+
+        private void cycle() {
+            try {
+                push();
+                pull();
+                pulled = true;
+            } catch (SQLException e) {
+                failedCycles.increment();
+                if (!(e instanceof SQLTransientException || e instanceof SQLRecoverableException)) e.printStackTrace();
+            } catch (RuntimeException e) {
+                failedCycles.increment();
+                e.printStackTrace();
+            }
+        }
+
+        private void push() throws SQLException {
+            for (Op op; (op = local.queryOne("SELECT * FROM outbox ORDER BY seq LIMIT 1", Op::new)) != null; ) {
+                long version; String id = op.id;
+                switch (op.op) {
+                    case "ADD_USER": {
+                        User u = local.findUserById(op.id);
+                        version = u == null ? 0 : DataStore.insertUser(u);
+                        break;
+                    }
+                    case "ADD_CAR": {
+                        Car c = local.findCarById(op.id);
+                        if (c == null) { version = 0; break; }
+                        version = DataStore.insertCar(c);
+                        if (version == DataStore.CONFLICT) { c.id = id = rename("car", op.id, DataStore.allocateId("cars", "C")); version = DataStore.insertCar(c); }
+                        break;
+                    }
+                    case "UPDATE_CAR": {
+                        Car c = local.findCarById(op.id);
+                        version = c == null ? 0 : DataStore.updateCarIf(c, op.base);
+                        break;
+                    }
+                    case "DELETE_CAR": version = DataStore.deleteCarIf(op.id, op.base); break;
+                    case "ADD_BOOKING": {
+                        Booking b = local.queryOne("SELECT * FROM bookings WHERE id = ?", local::mapBooking, op.id);
+                        if (b == null) { version = 0; break; }
+                        version = DataStore.insertBooking(b);
+                        if (version == DataStore.CONFLICT) { b.id = id = rename("booking", op.id, DataStore.allocateId("bookings", "B")); version = DataStore.insertBooking(b); }
+                        break;
+                    }
+                    case "BOOKING_STATUS": version = DataStore.changeBookingStatus(op.id, op.expected, op.value); break;
+                    default: version = 0; System.err.println("Dropping unknown outbox op " + op.op);
+                }
+                if (version == DataStore.CONFLICT) conflict(op, id); else pushed(op, id, version);
+            }
+        }
+
+        private void pushed(Op op, String id, long version) throws SQLException {
+            repo.inLocalTransaction(() -> {
+                local.execute("DELETE FROM outbox WHERE seq = ?", op.seq);
+                if (op.op.startsWith("DELETE")) { local.execute("DELETE FROM sync_versions WHERE entity = ? AND id = ?", op.entity, id); return; }
+                if (version <= 0) return;
+                local.execute("INSERT OR REPLACE INTO sync_versions (entity, id, version) VALUES (?,?,?)", op.entity, id, version);
+                // Later queued changes to the same row were made on top of this one.
+                local.execute("UPDATE outbox SET base_version = ? WHERE entity = ? AND entity_id = ? AND base_version <> ?", version, op.entity, id, DataStore.ANY_VERSION);
+            });
+            pushedChanges.increment();
+        }
+
+        private void conflict(Op op, String id) throws SQLException {
+            conflicts.increment();
+            System.err.println("Sync conflict: " + op.op + " " + op.id + " was changed on the server; keeping the server's copy.");
+            String table = op.entity + "s";
+            repo.inLocalTransaction(() -> {
+                local.execute("DELETE FROM outbox WHERE seq = ?", op.seq);
+                local.execute("INSERT INTO sync_conflicts (seq, op, entity_id, detail, at) VALUES (?,?,?,?,?)",
+                        op.seq, op.op, id, op.expected == null ? null : op.expected + " -> " + op.value, System.currentTimeMillis());
+                if (op.op.startsWith("ADD")) local.execute("DELETE FROM " + table + " WHERE id = ?", id);
+                local.execute("DELETE FROM sync_versions WHERE entity = ? AND id = ?", op.entity, id);
+                // The server's copy changed after op.base, so pulling from there brings it back.
+                long rewind = Math.max(0, op.base);
+                local.execute("UPDATE sync_meta SET value = MIN(value, ?) WHERE key = ?", rewind, table);
+            });
+        }
+
+        // A provisional id the server already uses: move the row (and anything queued or booked against it) to a fresh one.
+        private String rename(String entity, String from, String to) throws SQLException {
+            repo.inLocalTransaction(() -> {
+                local.execute("UPDATE " + entity + "s SET id = ? WHERE id = ?", to, from);
+                if (entity.equals("car")) local.execute("UPDATE bookings SET car_id = ? WHERE car_id = ?", to, from);
+                local.execute("UPDATE outbox SET entity_id = ? WHERE entity = ? AND entity_id = ?", to, entity, from);
+            });
+            System.err.println("Sync: " + entity + " " + from + " was taken on the server, saved as " + to + ".");
+            return to;
+        }
+
+        private void pull() throws SQLException {
+            User who = viewer;
+            DataStore.ChangeSet changes = DataStore.changesSince(new DataStore.Watermark(watermark("users"), watermark("cars"), watermark("bookings")), who);
+            repo.inLocalTransaction(() -> {
+                Set<String> queued = new HashSet<>(local.query("SELECT entity || ':' || entity_id FROM outbox", rs -> rs.getString(1)));
+                // Pulled users carry no password; a row keeps the one stored here (the signed-in user's, else blank).
+                apply("user", changes.users, queued, u -> new Object[]{u.id, u.username, u.role, u.contact},
+                        "INSERT OR REPLACE INTO users (id, username, password, role, contact) VALUES (?1, ?2, COALESCE((SELECT password FROM users WHERE id = ?1), ''), ?3, ?4)");
+                apply("car", changes.cars, queued, c -> new Object[]{c.id, c.name, c.model, c.pricePerDay, c.category, c.status, c.imagePath, c.ownerId, c.fuelType, c.seats, c.transmission},
+                        "INSERT OR REPLACE INTO cars (id, name, model, price_per_day, category, status, image_path, owner_id, fuel_type, seats, transmission) VALUES (?,?,?,?,?,?,?,?,?,?,?)");
+                if (who == viewer) {
+                    apply("booking", changes.bookings, queued, b -> new Object[]{b.id, b.carId, b.userId, b.pickupPlace, b.pickupDate, b.pickupTime, b.days, b.totalPrice, b.status},
+                            "INSERT OR REPLACE INTO bookings (id, car_id, user_id, pickup_place, pickup_date, pickup_time, days, total_price, status) VALUES (?,?,?,?,?,?,?,?,?)");
+                }
+            });
+            pulledRows.add(changes.size());
+            if (!changes.cars.changed.isEmpty() || !changes.cars.deleted.isEmpty()) CatalogSnapshot.invalidate();
+        }
+
+        // Upserts changed rows, removes tombstoned ones (all unlisted ones on a reset) and advances the table's watermark.
+        private <T> void apply(String entity, DataStore.Delta<T> delta, Set<String> queued, Function<T,Object[]> columns, String upsert) throws SQLException {
+            String table = entity + "s";
+            Set<String> keep = new HashSet<>();
+            for (DataStore.Versioned<T> v : delta.changed) {
+                Object[] row = columns.apply(v.row);
+                keep.add((String) row[0]);
+                if (fresh(entity, (String) row[0], v.version, queued)) local.execute(upsert, row);
+            }
+            Collection<String> gone = delta.reset ? local.query("SELECT id FROM " + table, rs -> rs.getString(1)) : delta.deleted;
+            for (String id : gone) {
+                if (keep.contains(id) || queued.contains(entity + ":" + id)) continue;
+                local.execute("DELETE FROM " + table + " WHERE id = ?", id);
+                local.execute("DELETE FROM sync_versions WHERE entity = ? AND id = ?", entity, id);
+            }
+            setWatermark(table, delta.watermark);
+        }
+
+        // True (and records the version) when a pulled row is newer than the mirror's copy and has no queued local change.
+        private boolean fresh(String entity, String id, long version, Set<String> queued) throws SQLException {
+            if (queued.contains(entity + ":" + id) || repo.version(entity, id) == version) return false;
+            local.execute("INSERT OR REPLACE INTO sync_versions (entity, id, version) VALUES (?,?,?)", entity, id, version);
+            return true;
+        }
+
+        private long watermark(String table) {
+            Long v = local.queryOne("SELECT value FROM sync_meta WHERE key = ?", rs -> rs.getLong(1), table);
+            return v == null ? 0 : v;
+        }
+        private void setWatermark(String table, long value) throws SQLException {
+            local.execute("INSERT OR REPLACE INTO sync_meta (key, value) VALUES (?,?)", table, value);
+        }
+    }
+
+    // ---------------- Lifecycle Scheduler ----------------
+    // Fires booking/car transitions when they come due: EXPIRE moves a booking still Pending after
+    // -Dcarrental.pendingTtlHours (default 48, or at pickup if sooner) to Expired; RETURN sets the car back to
+    // Available when a confirmed rental ends; REMIND tells the renter a day before pickup. Timers live in
+    // scheduled_events (so they survive restarts); the ones due within the next hour are held in a hashed
+    // timing wheel of one-second slots, so a tick only looks at the events due in that second however many
+    // are scheduled further out. Due events are leased, handled and deleted in batches.
+    // -Dcarrental.lifecycle=false turns it off for this client.
+    public static class LifecycleScheduler {
+        public enum Kind { EXPIRE, RETURN, REMIND }
+
+        public static final class ScheduledEvent {
+            public final String id, target; public final Kind kind; public final long due;
+            ScheduledEvent(String id, Kind kind, String target, long due){ this.id=id; this.kind=kind; this.target=target; this.due=due; }
+        }
+
+        private static final long TICK_MILLIS = 1000;
+        private static final int SLOTS = 4096;                                      // ~68 minutes per revolution
+        private static final long HORIZON_MILLIS = (SLOTS - 120) * TICK_MILLIS;      // loaded ahead; stays inside one revolution
+        private static final long REFILL_MILLIS = 60_000;
+        private static final int BATCH = 1000;
+        private static final long PENDING_TTL_MILLIS = TimeUnit.HOURS.toMillis(Long.getLong("carrental.pendingTtlHours", 48));
+        private static final long REMIND_BEFORE_MILLIS = TimeUnit.HOURS.toMillis(24);
+        private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("H:mm");
+
+        // wheel.get(slot) holds events due in that second (mod SLOTS); `live` maps id -> the current event for that id,
+        // so a rescheduled or cancelled event is skipped when its old slot comes round. Both guarded by `wheel`.
+        private static final List<List<ScheduledEvent>> wheel = new ArrayList<>(Collections.nCopies(SLOTS, (List<ScheduledEvent>) null));
+        private static final Map<String,ScheduledEvent> live = new HashMap<>();
+        private static long cursor, loadedUntil;
+        private static final ScheduledExecutorService LOOP = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "lifecycle-scheduler"); t.setDaemon(true); return t;
+        });
+        private static final AtomicBoolean started = new AtomicBoolean();
+        private static final List<Consumer<Booking>> reminderListeners = new CopyOnWriteArrayList<>();
+        private static final LongAdder expired = new LongAdder(), returned = new LongAdder(), reminded = new LongAdder(), failedBatches = new LongAdder();
+
+        public static void start(){
+            if(!Boolean.parseBoolean(System.getProperty("carrental.lifecycle", "true")) || !started.compareAndSet(false, true)) return;
+            LOOP.execute(() -> {
+                synchronized(wheel){ cursor = System.currentTimeMillis() / TICK_MILLIS * TICK_MILLIS; }
+                try{ DataStore.backfillScheduledEvents(); }catch(SQLException e){ e.printStackTrace(); }
+                refill();
+            });
+            LOOP.scheduleWithFixedDelay(LifecycleScheduler::tick, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+            LOOP.scheduleWithFixedDelay(LifecycleScheduler::refill, REFILL_MILLIS, REFILL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+
+        public static void onReminder(Consumer<Booking> listener){ reminderListeners.add(listener); }
+
+        // The timers a booking should have in `status`; ids are per booking and kind, so rescheduling overwrites.
+        static List<ScheduledEvent> plan(String bookingId, String carId, String status, String pickupDate, String pickupTime, int days, long now){
+            List<ScheduledEvent> events = new ArrayList<>();
+            LocalDate date = Dates.parse(pickupDate);
+            LocalDateTime pickup = date == null ? null : date.atTime(parseTime(pickupTime));
+            long pickupMillis = pickup == null ? Long.MAX_VALUE : pickup.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            if("Pending".equals(status)){
+                events.add(new ScheduledEvent("expire:" + bookingId, Kind.EXPIRE, bookingId, Math.min(now + PENDING_TTL_MILLIS, Math.max(now, pickupMillis))));
+            }else if("Confirmed".equals(status) && pickup != null){
+                long end = pickup.plusDays(Math.max(1, days)).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+                if(carId != null) events.add(new ScheduledEvent("return:" + bookingId, Kind.RETURN, carId, end));
+                if(pickupMillis - REMIND_BEFORE_MILLIS > now) events.add(new ScheduledEvent("remind:" + bookingId, Kind.REMIND, bookingId, pickupMillis - REMIND_BEFORE_MILLIS));
+            }
+            return events;
+        }
+
+        static List<String> idsFor(String bookingId){
+            return Arrays.asList("expire:" + bookingId, "return:" + bookingId, "remind:" + bookingId);
+        }
+
+        private static LocalTime parseTime(String time){
+            try{ return LocalTime.parse(time == null ? "" : time.trim(), TIME); }catch(DateTimeParseException e){ return LocalTime.MIDNIGHT; }
+        }
+
+        // Called after a committed change; events inside the loaded window go straight into the wheel, the rest
+        // are picked up by a later refill.
+        static void offer(Collection<ScheduledEvent> events){
+            synchronized(wheel){ for(ScheduledEvent e : events) if(e.due < loadedUntil) put(e); }
+        }
+
+        static void cancelled(Collection<String> ids){
+            synchronized(wheel){ for(String id : ids) live.remove(id); }
+        }
+
+        private static void put(ScheduledEvent e){
+            live.put(e.id, e);
+            long at = Math.max(e.due, cursor);   // overdue (e.g. after a restart) fires on the next tick
+            int slot = (int) Math.floorMod(at / TICK_MILLIS, (long) SLOTS);
+            if(wheel.get(slot) == null) wheel.set(slot, new ArrayList<>());
+            wheel.get(slot).add(e);
+        }
+
+        private static void refill(){
+            long until = System.currentTimeMillis() + HORIZON_MILLIS;
+            try{
+                List<ScheduledEvent> due = DataStore.scheduledBefore(until);
+                synchronized(wheel){
+                    for(ScheduledEvent e : due){
+                        ScheduledEvent known = live.get(e.id);
+                        if(known == null || known.due != e.due) put(e);
+                    }
+                    loadedUntil = until;
+                }
+            }catch(SQLException e){ /* database unreachable; the next refill catches up */ }
+        }
+
+        // Walks every second since the last tick (more than one if the thread was held up) and fires what came due.
+        private static void tick(){
+            List<ScheduledEvent> due = new ArrayList<>();
+            long now = System.currentTimeMillis();
+            synchronized(wheel){
+                if(cursor == 0) return;
+                for(; cursor <= now; cursor += TICK_MILLIS){
+                    List<ScheduledEvent> bucket = wheel.get((int) Math.floorMod(cursor / TICK_MILLIS, (long) SLOTS));
+                    if(bucket == null || bucket.isEmpty()) continue;
+                    for(Iterator<ScheduledEvent> it = bucket.iterator(); it.hasNext(); ){
+                        ScheduledEvent e = it.next();
+                        if(live.get(e.id) != e){ it.remove(); continue; }
+                        if(e.due >= cursor + TICK_MILLIS) continue;   // a later revolution
+                        it.remove(); live.remove(e.id); due.add(e);
+                    }
+                }
+            }
+            for(int i = 0; i < due.size(); i += BATCH) fire(due.subList(i, Math.min(due.size(), i + BATCH)));
+        }
+
+        private static void fire(List<ScheduledEvent> batch){
+            List<String> ids = new ArrayList<>();
+            for(ScheduledEvent e : batch) ids.add(e.id);
+            try{
+                Set<String> leased = DataStore.leaseEvents(ids);
+                List<String> cars = new ArrayList<>(), done = new ArrayList<>();
+                for(ScheduledEvent e : batch){
+                    if(!leased.contains(e.id)) continue;
+                    switch(e.kind){
+                        case EXPIRE:
+                            if(DataStore.changeBookingStatus(e.target, "Pending", "Expired") != DataStore.CONFLICT) expired.increment();
+                            break;
+                        case RETURN: cars.add(e.target); break;
+                        case REMIND: {
+                            Booking b = DataStore.findBookingById(e.target);
+                            if(b != null && "Confirmed".equals(b.status)){ for(Consumer<Booking> l : reminderListeners) l.accept(b); reminded.increment(); }
+                            break;
+                        }
+                    }
+                    done.add(e.id);
+                }
+                if(!cars.isEmpty()) returned.add(DataStore.returnCars(cars).size());
+                if(!done.isEmpty()) DataStore.completeEvents(done);
+            }catch(SQLException | RuntimeException e){
+                // Leased events come due again when the lease runs out and are reloaded by refill.
+                failedBatches.increment();
+                e.printStackTrace();
+            }
+        }
+
+        public static int loadedCount(){ synchronized(wheel){ return live.size(); } }
+        public static long expiredCount(){ return expired.sum(); }
+        public static long returnedCount(){ return returned.sum(); }
+        public static long remindedCount(){ return reminded.sum(); }
+        public static long failedBatchCount(){ return failedBatches.sum(); }
+    }
+
+    // ---------------- Passwords & Sessions ----------------
+    // Stored format: pbkdf2$<iterations>$<salt b64>$<hash b64>. Anything else is a legacy plaintext row.
+    public static class Passwords {
+        // Work factor; raising it upgrades existing hashes on each user's next successful login.
+        public static final int ITERATIONS = Integer.getInteger("carrental.pbkdf2.iterations", 120_000);
+        private static final String PREFIX = "pbkdf2$";
+        private static final SecureRandom RNG = new SecureRandom();
+
+        public static boolean isHashed(String stored){ return stored != null && stored.startsWith(PREFIX); }
+
+        public static String hash(String password){
+            byte[] salt = new byte[16]; RNG.nextBytes(salt);
+            Base64.Encoder b64 = Base64.getEncoder().withoutPadding();
+            return PREFIX + ITERATIONS + "$" + b64.encodeToString(salt) + "$" + b64.encodeToString(derive(password, salt, ITERATIONS));
+        }
+
+        public static boolean verify(String password, String stored){
+            if(stored == null || stored.isEmpty()) return false; // blank: no password known here (e.g. another user in an offline mirror)
+            if(!isHashed(stored)) return MessageDigest.isEqual(password.getBytes(java.nio.charset.StandardCharsets.UTF_8),
+                    stored.getBytes(java.nio.charset.StandardCharsets.UTF_8));
+            String[] parts = stored.split("\\$");
+            if(parts.length != 4) return false;
+            try{
+                Base64.Decoder b64 = Base64.getDecoder();
+                return MessageDigest.isEqual(b64.decode(parts[3]), derive(password, b64.decode(parts[2]), Integer.parseInt(parts[1])));
+            }catch(IllegalArgumentException e){ return false; } // malformed stored hash (bad base64, count or salt): never a match
+        }
+
+        public static boolean needsRehash(String stored){
+            if(!isHashed(stored)) return true;
+            String[] parts = stored.split("\\$");
+            try{ return parts.length != 4 || Integer.parseInt(parts[1]) < ITERATIONS; }
+            catch(NumberFormatException e){ return true; }
+        }
+
+        private static byte[] derive(String password, byte[] salt, int iterations){
+            PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, 256);
+            try{ return SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded(); }
+            catch(GeneralSecurityException e){ throw new IllegalStateException(e); }
+            finally{ spec.clearPassword(); }
+        }
+    }
+
+    // Signed session tokens: <payload b64>.<HMAC-SHA256 b64>, payload = userId:role:expiryMillis.
+    // Checking one is a single HMAC, so operations after login never repeat the password hash or hit the DB.
+    public static class Sessions {
+        public static final long TTL_MILLIS = Long.getLong("carrental.session.ttl", 8L * 60 * 60 * 1000);
+        private static final byte[] KEY = new byte[32];
+        static { new SecureRandom().nextBytes(KEY); } // per process: tokens die with the client
+        private static final ThreadLocal<Mac> MAC = ThreadLocal.withInitial(() -> {
+            try{ Mac m = Mac.getInstance("HmacSHA256"); m.init(new SecretKeySpec(KEY, "HmacSHA256")); return m; }
+            catch(GeneralSecurityException e){ throw new IllegalStateException(e); }
+        });
+
+        public static class Session {
+            public final String userId, role; public final long expiresAt;
+            Session(String userId, String role, long expiresAt){ this.userId=userId; this.role=role; this.expiresAt=expiresAt; }
+        }
+
+        public static String issue(User u){
+            String payload = u.id + ":" + u.role + ":" + (System.currentTimeMillis() + TTL_MILLIS);
+            Base64.Encoder b64 = Base64.getUrlEncoder().withoutPadding();
+            byte[] raw = payload.getBytes(java.nio.charset.StandardCharsets.UTF_8);
+            return b64.encodeToString(raw) + "." + b64.encodeToString(MAC.get().doFinal(raw));
+        }
+
+        public static Optional<Session> verify(String token){
+            if(token == null) return Optional.empty();
+            int dot = token.indexOf('.');
+            if(dot < 0) return Optional.empty();
+            try{
+                Base64.Decoder b64 = Base64.getUrlDecoder();
+                byte[] raw = b64.decode(token.substring(0, dot));
+                if(!MessageDigest.isEqual(MAC.get().doFinal(raw), b64.decode(token.substring(dot + 1)))) return Optional.empty();
+                String[] parts = new String(raw, java.nio.charset.StandardCharsets.UTF_8).split(":");
+                long expiresAt = Long.parseLong(parts[2]);
+                if(expiresAt < System.currentTimeMillis()) return Optional.empty();
+                return Optional.of(new Session(parts[0], parts[1], expiresAt));
+            }catch(IllegalArgumentException | ArrayIndexOutOfBoundsException e){ return Optional.empty(); }
+        }
+    }
+
+    // ---------------- Login Limiter ----------------
+    // Token buckets in front of DataStore.authenticate: one per username plus a global budget.
+    // Each bucket is a single AtomicLong (GCRA: the time at which the bucket is next full), so
+    // a check is one CAS and never blocks. The global budget is split over stripes picked by
+    // username hash, keeping a burst of distinct usernames from contending on one counter.
+    public static class LoginLimiter {
+        private static final int USER_BURST = 5;
+        private static final long USER_INTERVAL = TimeUnit.SECONDS.toNanos(30);  // one attempt regained every 30s
+        private static final int STRIPES = 8;
+        private static final int GLOBAL_BURST_PER_STRIPE = 16;
+        private static final long GLOBAL_INTERVAL = TimeUnit.MILLISECONDS.toNanos(200); // ~40 attempts/s overall
+        private static final int MAX_TRACKED_USERS = 10_000;
+        private static final long SWEEP_INTERVAL = USER_INTERVAL;                 // at most one idle-bucket sweep per interval
+        private static final long REPORT_INTERVAL = TimeUnit.MINUTES.toNanos(1);  // at most one metrics line per minute
+
+        private static final ConcurrentHashMap<String, AtomicLong> users = new ConcurrentHashMap<>();
+        private static final AtomicLong[] global = new AtomicLong[STRIPES];
+        static { for(int i=0;i<STRIPES;i++) global[i] = new AtomicLong(Long.MIN_VALUE); }
+
+        private static final LongAdder allowed = new LongAdder();
+        private static final LongAdder rejectedUser = new LongAdder();
+        private static final LongAdder rejectedGlobal = new LongAdder();
+        private static final AtomicLong nextSweep = new AtomicLong(System.nanoTime());
+        private static final AtomicLong nextReport = new AtomicLong(System.nanoTime());
+
+        // The per-user bucket is checked first, so one user hammering their own name never drains the
+        // global budget; if the global budget then says no, the user's attempt is handed back.
+        public static boolean tryAcquire(String username){
+            String key = key(username);
+            long now = System.nanoTime();
+            if(users.size() > MAX_TRACKED_USERS) evictIdle(now);
+            AtomicLong user = users.computeIfAbsent(key, k -> new AtomicLong(Long.MIN_VALUE));
+            if(!acquire(user, now, USER_INTERVAL, USER_BURST)){
+                rejectedUser.increment(); report(now); return false;
+            }
+            if(!acquire(stripe(key), now, GLOBAL_INTERVAL, GLOBAL_BURST_PER_STRIPE)){
+                user.addAndGet(-USER_INTERVAL);
+                rejectedGlobal.increment(); report(now); return false;
+            }
+            allowed.increment();
+            return true;
+        }
+
+        // True when the next attempt for this username would be refused, by its own bucket or the global budget.
+        public static boolean isThrottled(String username){
+            String key = key(username);
+            long now = System.nanoTime();
+            AtomicLong b = users.get(key);
+            return (b != null && b.get() - now > USER_INTERVAL * (USER_BURST - 1))
+                    || stripe(key).get() - now > GLOBAL_INTERVAL * (GLOBAL_BURST_PER_STRIPE - 1);
+        }
+
+        public static void onSuccess(String username){ users.remove(key(username)); }
+
+        public static long allowedCount(){ return allowed.sum(); }
+        public static long rejectedUserCount(){ return rejectedUser.sum(); }
+        public static long rejectedGlobalCount(){ return rejectedGlobal.sum(); }
+
+        private static boolean acquire(AtomicLong tat, long now, long interval, int burst){
+            long tolerance = interval * (burst - 1);
+            while(true){
+                long current = tat.get();
+                long base = current == Long.MIN_VALUE || current - now < 0 ? now : current;
+                if(base - now > tolerance) return false;
+                if(tat.compareAndSet(current, base + interval)) return true;
+            }
+        }
+
+        private static AtomicLong stripe(String key){ return global[(key.hashCode() & 0x7fffffff) % STRIPES]; }
+
+        // Buckets whose theoretical arrival time has passed are full again and carry no state. The sweep
+        // is O(n), so it runs at most once per SWEEP_INTERVAL however many attempts arrive over the cap.
+        private static void evictIdle(long now){
+            long due = nextSweep.get();
+            if(now - due < 0 || !nextSweep.compareAndSet(due, now + SWEEP_INTERVAL)) return;
+            users.entrySet().removeIf(e -> e.getValue().get() - now < 0);
+        }
+
+        // Rejections are rare and worth seeing; logged at most once per REPORT_INTERVAL.
+        private static void report(long now){
+            long due = nextReport.get();
+            if(now - due < 0 || !nextReport.compareAndSet(due, now + REPORT_INTERVAL)) return;
+            System.out.println("Login limiter: " + allowedCount() + " allowed, " + rejectedUserCount() + " rejected per user, "
+                    + rejectedGlobalCount() + " rejected by the global limit, " + users.size() + " user(s) tracked.");
+        }
+
+        private static String key(String username){ return username == null ? "" : username.trim().toLowerCase(); }
+    }
+
+    // ---------------- Catalog Snapshot ----------------
+    // The car list, re-encoded shortly after every burst of car mutations into a direct (off-heap) buffer
+    // tagged with an ETag, and kept on disk so the next start can map it and show the catalog before the
+    // DB answers. Each write goes to a new generation file (catalog.snap.<n>) and the older ones are then
+    // deleted; a file is never replaced in place, so a live mapping of it (which Windows would not let us
+    // replace) never blocks a write.
+    // Catalog reads are served from those bytes as they are: no serialization or copy per request, and
+    // nothing but the headers when the caller already holds the current ETag.
+    public static class CatalogSnapshot {
+        private static final int MAGIC = 0x43525331; // "CRS1", doubles as the format version
+        private static final int HEADER = 12; // magic + generation
+        private static final AtomicLong generation = new AtomicLong(); // bumped by every car mutation
+        private static volatile Snapshot current; // this session's newest encoding, null until the first rebuild or store
+        private static final AtomicBoolean dirty = new AtomicBoolean(); // current has not reached FILE yet
+
+        public static final Path FILE = Paths.get(System.getProperty("carrental.snapshot", "catalog.snap")); // base name of the generation files
+        private static final ScheduledExecutorService WRITER = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "catalog-snapshot"); t.setDaemon(true); return t;
+        });
+        private static final AtomicBoolean rebuildQueued = new AtomicBoolean();
+        static {
+            // On exit only an encoding that is already in memory is flushed; the hook never waits on the DB.
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> { if(dirty.get()) write(); }, "catalog-snapshot-exit"));
+        }
+
+        // One encoding of the catalog: the bytes off-heap, the ETag and the ready-made response headers
+        // next to them, and the decoded cars for the DB-down fallback in fetchCars.
+        private static final class Snapshot {
+            final long generation; final ByteBuffer bytes; final String etag; final List<Car> cars;
+            final ByteBuffer ok, notModified;
+            Snapshot(long generation, ByteBuffer bytes, List<Car> cars){
+                this.generation=generation; this.bytes=bytes; this.cars=Collections.unmodifiableList(cars);
+                CRC32 crc = new CRC32(); crc.update(bytes.duplicate());
+                etag = "\"" + generation + "-" + Long.toHexString(crc.getValue()) + "\"";
+                ok = ascii("HTTP/1.1 200 OK\r\nContent-Type: application/octet-stream\r\nContent-Length: " + bytes.remaining()
+                        + "\r\nETag: " + etag + "\r\nConnection: close\r\n\r\n");
+                notModified = ascii("HTTP/1.1 304 Not Modified\r\nETag: " + etag + "\r\nConnection: close\r\n\r\n");
+            }
+            static Snapshot of(List<Car> cars, long gen){
+                byte[] raw = encode(cars, gen);
+                ByteBuffer direct = ByteBuffer.allocateDirect(raw.length);
+                direct.put(raw).flip();
+                return new Snapshot(gen, direct, new ArrayList<>(cars));
+            }
+        }
+        private static final ByteBuffer NOT_FOUND = ascii("HTTP/1.1 404 Not Found\r\nContent-Length: 0\r\nConnection: close\r\n\r\n");
+
+        // Mutations in quick succession share one re-encode and one rewrite of the snapshot file.
+        public static void invalidate(){
+            generation.incrementAndGet();
+            if(rebuildQueued.compareAndSet(false, true))
+                WRITER.schedule(() -> { rebuildQueued.set(false); rebuild(); }, 2, TimeUnit.SECONDS);
+        }
+
+        // Encodes the catalog as the DB has it now and writes it to FILE.
+        static void rebuild(){
+            // Read the generation before fetching: a mutation racing with us leaves the snapshot stale, never wrong.
+            long gen = generation.get();
+            try{
+                current = Snapshot.of(Repositories.get().fetchCars(), gen);
+                dirty.set(true);
+            }catch(RuntimeException e){ System.err.println("Could not rebuild catalog snapshot: " + e.getMessage()); return; }
+            write();
+        }
+
+        // Adopts a catalog the caller has just read, so keeping the snapshot current costs no second DB read.
+        public static void store(List<Car> cars){
+            current = Snapshot.of(cars, generation.get());
+            dirty.set(true);
+            WRITER.execute(CatalogSnapshot::write);
+        }
+
+        // Writes the newest encoding to the next generation file via a temp file, so readers never see a
+        // half-written file, then removes the older generations. One that is still mapped (Windows refuses
+        // to delete it) is left for the next write or the next start to remove.
+        private static synchronized void write(){
+            if(!dirty.getAndSet(false)) return;
+            Snapshot s = current;
+            try{
+                List<Path> older = generations();
+                Path next = FILE.resolveSibling(FILE.getFileName() + "." + (older.isEmpty() ? 1 : generationOf(older.get(0)) + 1));
+                Path tmp = FILE.resolveSibling(FILE.getFileName() + ".tmp");
+                try(FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)){
+                    ByteBuffer view = s.bytes.duplicate();
+                    while(view.hasRemaining()) ch.write(view);
+                    ch.force(true);
+                }
+                try{ Files.move(tmp, next, StandardCopyOption.ATOMIC_MOVE); }
+                catch(AtomicMoveNotSupportedException e){ Files.move(tmp, next); }
+                for(Path p : older){
+                    try{ Files.deleteIfExists(p); }catch(IOException e){ /* still mapped; removed by a later write */ }
+                }
+            }catch(IOException e){ System.err.println("Could not write catalog snapshot: " + e.getMessage()); }
+        }
+
+        // Snapshot files, newest generation first. The plain base name (written by older builds) is generation 0.
+        private static List<Path> generations() throws IOException {
+            Path dir = FILE.toAbsolutePath().getParent();
+            List<Path> found = new ArrayList<>();
+            if(dir == null || !Files.isDirectory(dir)) return found;
+            try(DirectoryStream<Path> files = Files.newDirectoryStream(dir)){
+                for(Path p : files) if(generationOf(p) >= 0) found.add(p);
+            }
+            found.sort(Comparator.comparingLong(CatalogSnapshot::generationOf).reversed());
+            return found;
+        }
+
+        private static long generationOf(Path p){
+            String base = FILE.getFileName().toString(), name = p.getFileName().toString();
+            if(name.equals(base)) return 0;
+            if(!name.startsWith(base + ".")) return -1;
+            String n = name.substring(base.length() + 1);
+            return !n.isEmpty() && n.length() < 19 && n.chars().allMatch(Character::isDigit) ? Long.parseLong(n) : -1;
+        }
+
+        // The newest catalog known without asking the DB: this session's snapshot, else the file from the last run.
+        public static Optional<List<Car>> cached(){
+            Snapshot s = current;
+            return s != null ? Optional.of(new ArrayList<>(s.cars)) : load();
+        }
+
+        // Maps the newest readable generation file and decodes it, skipping ones that are foreign or corrupt;
+        // empty if none is usable. When this session has no encoding yet the mapping becomes the current
+        // snapshot, so it is served straight from the page cache until the first rebuild replaces it.
+        public static Optional<List<Car>> load(){
+            List<Path> files;
+            try{ files = generations(); }catch(IOException e){ System.err.println("Cannot list catalog snapshots: " + e); return Optional.empty(); }
+            for(Path p : files){
+                try(FileChannel ch = FileChannel.open(p, StandardOpenOption.READ)){
+                    ByteBuffer mapped = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+                    List<Car> cars = decode(mapped);
+                    synchronized(CatalogSnapshot.class){
+                        if(current == null) current = new Snapshot(mapped.getLong(4), mapped, new ArrayList<>(cars));
+                    }
+                    return Optional.of(cars);
+                }catch(IOException | RuntimeException e){
+                    System.err.println("Ignoring catalog snapshot " + p.getFileName() + ": " + e);
+                }
+            }
+            return Optional.empty();
+        }
+
+        // The current encoding, built from the repository if this session has none yet.
+        private static Snapshot snapshot(){
+            Snapshot s = current;
+            if(s != null) return s;
+            synchronized(CatalogSnapshot.class){
+                if(current == null) rebuild();
+                return current != null ? current : Snapshot.of(Collections.emptyList(), generation.get());
+            }
+        }
+
+        public static String etag(){ return snapshot().etag; }
+        public static ByteBuffer bytes(){ return snapshot().bytes.asReadOnlyBuffer(); }
+
+        // Writes a complete HTTP response for the catalog: 304 with no body when ifNoneMatch already names
+        // the current ETag (or is "*"), otherwise 200 with the body gathered straight from the direct buffer.
+        // Returns whether the body was sent.
+        public static boolean serve(String ifNoneMatch, GatheringByteChannel out) throws IOException {
+            Snapshot s = snapshot();
+            if(ifNoneMatch != null){
+                for(String tag : ifNoneMatch.split(",")){
+                    String t = tag.trim();
+                    if(t.equals("*") || t.equals(s.etag) || t.equals("W/" + s.etag)){ writeFully(out, s.notModified.duplicate()); return false; }
+                }
+            }
+            writeFully(out, s.ok.duplicate(), s.bytes.duplicate());
+            return true;
+        }
+
+        // Opt-in catalog endpoint (-Dcarrental.catalogPort): GET /catalog on a few daemon threads.
+        public static void listen(int port) throws IOException {
+            ServerSocketChannel server = ServerSocketChannel.open();
+            server.bind(new InetSocketAddress(port));
+            ExecutorService workers = Executors.newFixedThreadPool(4, r -> {
+                Thread t = new Thread(r, "catalog-http"); t.setDaemon(true); return t;
+            });
+            Thread acceptor = new Thread(() -> {
+                while(server.isOpen()){
+                    try{
+                        SocketChannel ch = server.accept();
+                        workers.execute(() -> answer(ch));
+                    }catch(IOException e){ System.err.println("Catalog endpoint: " + e.getMessage()); }
+                }
+            }, "catalog-http-accept");
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        private static void answer(SocketChannel ch){
+            try(SocketChannel c = ch){
+                c.socket().setSoTimeout(5000);
+                String[] head = readHead(c.socket().getInputStream());
+                if(head == null) return;
+                String[] request = head[0].split(" ");
+                if(request.length < 2 || !request[0].equals("GET") || !request[1].equals("/catalog")){ writeFully(c, NOT_FOUND.duplicate()); return; }
+                String ifNoneMatch = null;
+                for(int i=1;i<head.length;i++){
+                    int colon = head[i].indexOf(':');
+                    if(colon > 0 && head[i].substring(0, colon).trim().equalsIgnoreCase("If-None-Match")) ifNoneMatch = head[i].substring(colon + 1).trim();
+                }
+                serve(ifNoneMatch, c);
+            }catch(IOException e){ /* client went away or timed out */ }
+        }
+
+        // Request line and header lines up to the blank line; null if the client sent more than 8 KB of them.
+        private static String[] readHead(InputStream in) throws IOException {
+            byte[] buf = new byte[8192];
+            int n = 0, b;
+            while((b = in.read()) >= 0){
+                if(n == buf.length) return null;
+                buf[n++] = (byte) b;
+                if(n >= 4 && buf[n-4] == '\r' && buf[n-3] == '\n' && buf[n-2] == '\r' && buf[n-1] == '\n')
+                    return new String(buf, 0, n - 4, java.nio.charset.StandardCharsets.ISO_8859_1).split("\r\n");
+            }
+            return null;
+        }
+
+        private static void writeFully(GatheringByteChannel out, ByteBuffer... parts) throws IOException {
+            long left = 0;
+            for(ByteBuffer p : parts) left += p.remaining();
+            while(left > 0) left -= out.write(parts);
+        }
+
+        private static ByteBuffer ascii(String s){
+            byte[] b = s.getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+            ByteBuffer direct = ByteBuffer.allocateDirect(b.length);
+            direct.put(b).flip();
+            return direct.asReadOnlyBuffer();
+        }
+
+        // True when both lists encode to the same bytes, i.e. the grid shows exactly the DB state.
+        public static boolean sameCatalog(List<Car> a, List<Car> b){
+            byte[] x = encode(a, 0), y = encode(b, 0);
+            return Arrays.equals(x, HEADER, x.length, y, HEADER, y.length);
+        }
+
+        static byte[] encode(List<Car> cars, long gen){
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(64 + cars.size() * 96);
+            try(DataOutputStream out = new DataOutputStream(bos)){
+                out.writeInt(MAGIC); out.writeLong(gen); out.writeInt(cars.size());
+                for(Car c : cars){
+                    writeStr(out,c.id); writeStr(out,c.name); writeStr(out,c.model); out.writeDouble(c.pricePerDay);
+                    writeStr(out,c.category); writeStr(out,c.status); writeStr(out,c.imagePath); writeStr(out,c.ownerId);
+                    writeStr(out,c.fuelType); out.writeInt(c.seats); writeStr(out,c.transmission);
+                }
+            }catch(IOException e){ throw new UncheckedIOException(e); }
+            return bos.toByteArray();
+        }
+
+        public static List<Car> decode(ByteBuffer buf){
+            ByteBuffer in = buf.duplicate();
+            if(in.getInt() != MAGIC) throw new IllegalArgumentException("Not a catalog snapshot");
+            in.getLong();
+            int n = in.getInt();
+            List<Car> cars = new ArrayList<>(n);
+            for(int i=0;i<n;i++){
+                String id=readStr(in), name=readStr(in), model=readStr(in); double price=in.getDouble();
+                String category=readStr(in), status=readStr(in), image=readStr(in), owner=readStr(in), fuel=readStr(in);
+                int seats=in.getInt(); String trans=readStr(in);
+                cars.add(new Car(id,name,model,price,category,status,image,owner,fuel,seats,trans));
+            }
+            return cars;
+        }
+
+        // Strings are a UTF-8 length prefix (-1 for null) followed by the bytes.
+        private static void writeStr(DataOutputStream out, String v) throws IOException {
+            if(v == null){ out.writeInt(-1); return; }
+            byte[] b = v.getBytes(java.nio.charset.StandardCharsets.UTF_8);
+            out.writeInt(b.length); out.write(b);
+        }
+        private static String readStr(ByteBuffer in){
+            int len = in.getInt();
+            if(len < 0) return null;
+            byte[] b = new byte[len]; in.get(b);
+            return new String(b, java.nio.charset.StandardCharsets.UTF_8);
+        }
+    }
+
+    // ---------------- Columnar Catalog ----------------
+    // Column-per-field view of the car list for in-memory filtering: primitive arrays for the
+    // numbers and one dictionary-encoded byte per row for each low-cardinality text field.
+    // A filter is evaluated in one fused pass into a bitmap (one bit per row, 64 rows per long).
+    public static class CarColumns {
+        public final int size;
+        public final String[] ids;
+        public final double[] prices;
+        public final int[] seats;
+        public final byte[] status, category, fuel, transmission;
+        public final Dict statusDict = new Dict(), categoryDict = new Dict(), fuelDict = new Dict(), transmissionDict = new Dict();
+
+        // Trimmed values (blank for null) get codes 0..254 in order of first appearance. Past that,
+        // every further value shares code OTHER and is kept per row on the side, so a column never
+        // fails on cardinality; only filters on those rare values take the slow path.
+        public static class Dict {
+            static final int OTHER = 255;
+            private final Map<String,Integer> codes = new HashMap<>();
+            private final List<String> values = new ArrayList<>();
+            private final Map<Integer,String> otherByRow = new HashMap<>();
+            private final Set<String> otherValues = new HashSet<>();
+
+            byte encode(int row, String v){
+                String k = key(v);
+                Integer c = codes.get(k);
+                if(c == null){
+                    if(values.size() == OTHER){ otherByRow.put(row, k); otherValues.add(k); return (byte)OTHER; }
+                    c = values.size(); codes.put(k, c); values.add(k);
+                }
+                return (byte)(int)c;
+            }
+            // The value's code, OTHER if it is one of the overflow values, -1 if no row has it.
+            public int code(String v){
+                String k = key(v);
+                Integer c = codes.get(k);
+                return c != null ? c : otherValues.contains(k) ? OTHER : -1;
+            }
+            public String value(int row, byte code){ return (code & 0xFF) == OTHER ? otherByRow.get(row) : values.get(code & 0xFF); }
+            public int size(){ return values.size() + otherValues.size(); }
+
+            // Rows holding an overflow value, for the slow path of an OTHER match.
+            long[] otherRows(String v, int words){
+                long[] bits = new long[words];
+                String k = key(v);
+                for(Map.Entry<Integer,String> e : otherByRow.entrySet()) if(e.getValue().equals(k)) bits[e.getKey() >>> 6] |= 1L << e.getKey();
+                return bits;
+            }
+            private static String key(String v){ return v == null ? "" : v.trim(); }
+        }
+
+        // Null fields are not filtered on; both ends of the ranges are inclusive.
+        public static class Filter {
+            public Double minPrice, maxPrice; public Integer minSeats, maxSeats;
+            public String status, category, fuel, transmission;
+        }
+
+        public CarColumns(List<Car> cars){
+            size = cars.size();
+            ids = new String[size]; prices = new double[size]; seats = new int[size];
+            status = new byte[size]; category = new byte[size]; fuel = new byte[size]; transmission = new byte[size];
+            for(int i=0;i<size;i++){
+                Car c = cars.get(i);
+                ids[i]=c.id; prices[i]=c.pricePerDay; seats[i]=c.seats;
+                status[i]=statusDict.encode(i, c.status); category[i]=categoryDict.encode(i, c.category);
+                fuel[i]=fuelDict.encode(i, c.fuelType); transmission[i]=transmissionDict.encode(i, c.transmission);
+            }
+        }
+
+        // All predicates are fused into one pass that builds each 64-row word in a register. A predicate
+        // on an overflow value matches code OTHER there and is narrowed to the exact rows afterwards.
+        public long[] evaluate(Filter f){
+            double min = f.minPrice == null ? Double.NEGATIVE_INFINITY : f.minPrice;
+            double max = f.maxPrice == null ? Double.POSITIVE_INFINITY : f.maxPrice;
+            int minSeats = f.minSeats == null ? Integer.MIN_VALUE : f.minSeats;
+            int maxSeats = f.maxSeats == null ? Integer.MAX_VALUE : f.maxSeats;
+            int st = f.status == null ? ANY : statusDict.code(f.status), ca = f.category == null ? ANY : categoryDict.code(f.category);
+            int fu = f.fuel == null ? ANY : fuelDict.code(f.fuel), tr = f.transmission == null ? ANY : transmissionDict.code(f.transmission);
+            long[] bits = new long[words()];
+            if(st == -1 || ca == -1 || fu == -1 || tr == -1) return bits;
+            for(int w=0, base=0; base<size; w++, base+=64){
+                int end = Math.min(size, base + 64);
+                long word = 0;
+                for(int i=base;i<end;i++){
+                    boolean hit = prices[i] >= min & prices[i] <= max & seats[i] >= minSeats & seats[i] <= maxSeats
+                            & (st == ANY | status[i] == (byte)st) & (ca == ANY | category[i] == (byte)ca)
+                            & (fu == ANY | fuel[i] == (byte)fu) & (tr == ANY | transmission[i] == (byte)tr);
+                    word |= (hit ? 1L : 0L) << (i - base);
+                }
+                bits[w] = word;
+            }
+            if(st == Dict.OTHER) and(bits, statusDict.otherRows(f.status, bits.length));
+            if(ca == Dict.OTHER) and(bits, categoryDict.otherRows(f.category, bits.length));
+            if(fu == Dict.OTHER) and(bits, fuelDict.otherRows(f.fuel, bits.length));
+            if(tr == Dict.OTHER) and(bits, transmissionDict.otherRows(f.transmission, bits.length));
+            return bits;
+        }
+        private static final int ANY = Integer.MIN_VALUE;
+
+        public static boolean contains(long[] bits, int row){ return (bits[row >>> 6] & (1L << row)) != 0; }
+
+        public static int count(long[] bits){ int n=0; for(long w : bits) n += Long.bitCount(w); return n; }
+
+        public static int[] rows(long[] bits){
+            int[] out = new int[count(bits)]; int k=0;
+            for(int w=0;w<bits.length;w++){
+                long word = bits[w];
+                while(word != 0){ out[k++] = (w<<6) + Long.numberOfTrailingZeros(word); word &= word - 1; }
+            }
+            return out;
+        }
+
+        private static void and(long[] into, long[] other){ for(int i=0;i<into.length;i++) into[i] &= other[i]; }
+
+        private int words(){ return (size + 63) >>> 6; }
+    }
+
+    // ---------------- Facet Index ----------------
+    // Per-facet bitmaps (one bit per car slot) kept in step with the catalog: sync() compares each
+    // fetched car's raw fields with the ones it last indexed (no allocation for unchanged cars) and
+    // only rewrites bitmaps for cars that changed; counts come from bitmap intersections, not car scans.
+    public static class FacetIndex {
+        public enum Facet {
+            CATEGORY("Category"), FUEL("Fuel"), TRANSMISSION("Transmission"), SEATS("Seats"), PRICE("Price/day"), AVAILABILITY("Availability");
+            public final String label;
+            Facet(String label){ this.label = label; }
+
+            String valueOf(Car c){
+                switch(this){
+                    case CATEGORY: return blankAs(c.category);
+                    case FUEL: return blankAs(c.fuelType);
+                    case TRANSMISSION: return blankAs(c.transmission);
+                    case SEATS: return String.valueOf(c.seats);
+                    case PRICE: return priceBucket(c.pricePerDay);
+                    default: return blankAs(c.status);
+                }
+            }
+        }
+
+        private static final double[] PRICE_EDGES = {2000, 4000, 7000};
+
+        private final Map<String,Integer> slotById = new HashMap<>();
+        private final List<String[]> valuesBySlot = new ArrayList<>();   // null = free slot
+        private final List<String> idBySlot = new ArrayList<>();
+        private final List<Car> carBySlot = new ArrayList<>();           // copy of the facet fields last indexed per slot (callers mutate Cars)
+        private final Deque<Integer> freeSlots = new ArrayDeque<>();
+        private final BitSet live = new BitSet();
+        private final EnumMap<Facet,Map<String,BitSet>> postings = new EnumMap<>(Facet.class);
+
+        public FacetIndex(){ for(Facet f : Facet.values()) postings.put(f, new TreeMap<>()); }
+
+        // Brings the index in line with the given catalog, touching only added, changed and removed cars.
+        public void sync(List<Car> cars){
+            BitSet seen = new BitSet(valuesBySlot.size());
+            for(Car c : cars){
+                Integer slot = slotById.get(c.id);
+                if(slot != null && sameFacets(carBySlot.get(slot), c)){ seen.set(slot); continue; }
+                String[] values = valuesOf(c);
+                if(slot != null && Arrays.equals(values, valuesBySlot.get(slot))){ seen.set(slot); carBySlot.set(slot, facetFields(c)); continue; }
+                if(slot != null) remove(c.id);
+                seen.set(add(c, values));
+            }
+            BitSet gone = (BitSet)live.clone(); gone.andNot(seen);
+            for(int s = gone.nextSetBit(0); s >= 0; s = gone.nextSetBit(s + 1)) remove(idBySlot.get(s));
+        }
+
+        // Returns the slot the car was given.
+        private int add(Car c, String[] values){
+            String id = c.id;
+            int slot = freeSlots.isEmpty() ? valuesBySlot.size() : freeSlots.pop();
+            if(slot == valuesBySlot.size()){ valuesBySlot.add(null); idBySlot.add(null); carBySlot.add(null); }
+            valuesBySlot.set(slot, values); idBySlot.set(slot, id); carBySlot.set(slot, facetFields(c));
+            slotById.put(id, slot); live.set(slot);
+            for(Facet f : Facet.values()) postings.get(f).computeIfAbsent(values[f.ordinal()], k -> new BitSet()).set(slot);
+            return slot;
+        }
+
+        private void remove(String id){
+            Integer slot = slotById.remove(id);
+            if(slot == null) return;
+            String[] values = valuesBySlot.get(slot);
+            for(Facet f : Facet.values()){
+                Map<String,BitSet> byValue = postings.get(f);
+                BitSet bits = byValue.get(values[f.ordinal()]);
+                bits.clear(slot);
+                if(bits.isEmpty()) byValue.remove(values[f.ordinal()]);
+            }
+            valuesBySlot.set(slot, null); idBySlot.set(slot, null); carBySlot.set(slot, null);
+            live.clear(slot); freeSlots.push(slot);
+        }
+
+        public boolean hasValue(Facet f, String value){ return postings.get(f).containsKey(value); }
+
+        // Slots of the given cars, to pass as the scope of counts(); ids not in the index are ignored.
+        public BitSet scope(Iterable<String> ids){
+            BitSet bits = new BitSet(valuesBySlot.size());
+            for(String id : ids){ Integer s = slotById.get(id); if(s != null) bits.set(s); }
+            return bits;
+        }
+
+        // For each facet, the count per value given the selections on the *other* facets, so choosing
+        // a category still shows how many cars every other category would give. A non-null scope
+        // (see scope()) limits the counts to those cars, e.g. the current search results.
+        public EnumMap<Facet,Map<String,Integer>> counts(Map<Facet,String> selection, BitSet scope){
+            EnumMap<Facet,Map<String,Integer>> out = new EnumMap<>(Facet.class);
+            for(Facet f : Facet.values()){
+                BitSet base = restrict(selection, f);
+                if(scope != null) base.and(scope);
+                Map<String,Integer> byValue = new LinkedHashMap<>();
+                for(Map.Entry<String,BitSet> e : orderedPostings(f)){
+                    BitSet hit = (BitSet)e.getValue().clone(); hit.and(base);
+                    byValue.put(e.getKey(), hit.cardinality());
+                }
+                out.put(f, byValue);
+            }
+            return out;
+        }
+
+        private BitSet restrict(Map<Facet,String> selection, Facet skip){
+            BitSet bits = (BitSet)live.clone();
+            for(Map.Entry<Facet,String> e : selection.entrySet()){
+                if(e.getKey() == skip) continue;
+                BitSet p = postings.get(e.getKey()).get(e.getValue());
+                if(p == null){ bits.clear(); break; }
+                bits.and(p);
+            }
+            return bits;
+        }
+
+        // Seats and price buckets read better in numeric order than in string order.
+        private List<Map.Entry<String,BitSet>> orderedPostings(Facet f){
+            List<Map.Entry<String,BitSet>> entries = new ArrayList<>(postings.get(f).entrySet());
+            if(f == Facet.SEATS) entries.sort(Comparator.comparingInt(e -> parseIntOr(e.getKey())));
+            if(f == Facet.PRICE) entries.sort(Comparator.comparingInt(e -> bucketOrder(e.getKey())));
+            return entries;
+        }
+
+        private static Car facetFields(Car c){
+            return new Car(c.id, null, null, c.pricePerDay, c.category, c.status, null, null, c.fuelType, c.seats, c.transmission);
+        }
+
+        private static boolean sameFacets(Car a, Car b){
+            return Objects.equals(a.category, b.category) && Objects.equals(a.fuelType, b.fuelType) && Objects.equals(a.transmission, b.transmission)
+                    && a.seats == b.seats && Double.compare(a.pricePerDay, b.pricePerDay) == 0 && Objects.equals(a.status, b.status);
+        }
+
+        private static String[] valuesOf(Car c){
+            String[] v = new String[Facet.values().length];
+            for(Facet f : Facet.values()) v[f.ordinal()] = f.valueOf(c);
+            return v;
+        }
+
+        static String priceBucket(double price){
+            if(price < PRICE_EDGES[0]) return "Under ₹" + UIUtils.MONEY.format(PRICE_EDGES[0]);
+            for(int i=1;i<PRICE_EDGES.length;i++)
+                if(price < PRICE_EDGES[i]) return "₹" + UIUtils.MONEY.format(PRICE_EDGES[i-1]) + " - " + UIUtils.MONEY.format(PRICE_EDGES[i]);
+            return "₹" + UIUtils.MONEY.format(PRICE_EDGES[PRICE_EDGES.length-1]) + "+";
+        }
+        // The [low, high) prices a bucket label covers; infinite at the open ends.
+        static double[] priceRange(String bucket){
+            int i = bucketOrder(bucket);
+            return new double[]{ i == 0 ? Double.NEGATIVE_INFINITY : PRICE_EDGES[Math.min(i, PRICE_EDGES.length) - 1],
+                                 i >= PRICE_EDGES.length ? Double.POSITIVE_INFINITY : PRICE_EDGES[i] };
+        }
+        private static int bucketOrder(String bucket){
+            for(int i=0;i<=PRICE_EDGES.length;i++) if(priceBucket(i == 0 ? 0 : PRICE_EDGES[i-1]).equals(bucket)) return i;
+            return PRICE_EDGES.length + 1;
+        }
+        private static int parseIntOr(String s){ try{ return Integer.parseInt(s); }catch(NumberFormatException e){ return Integer.MAX_VALUE; } }
+        private static String blankAs(String s){ return s == null || s.trim().isEmpty() ? "Unspecified" : s.trim(); }
+    }
+
+    // ---------------- Search Index ----------------
+    // Type-ahead index over car name, model and category, matching substrings throughout. Queries of
+    // 3+ chars intersect trigram posting lists and only verify the surviving candidates; shorter ones
+    // test each distinct word (far fewer than rows) and union the postings of those that contain them.
+    public static class SearchIndex {
+        private final List<Car> cars;
+        private final String[] text;                       // "name model category", lower-cased, per row
+        private final Map<String,int[]> words = new HashMap<>();
+        private final Map<String,int[]> trigrams = new HashMap<>();
+
+        // Growable sorted int list used while building postings.
+        private static class Postings {
+            int[] rows = new int[4]; int n;
+            void add(int row){
+                if(n > 0 && rows[n-1] == row) return;
+                if(n == rows.length) rows = Arrays.copyOf(rows, n * 2);
+                rows[n++] = row;
+            }
+            int[] toArray(){ return Arrays.copyOf(rows, n); }
+        }
+
+        public SearchIndex(List<Car> cars){
+            this.cars = new ArrayList<>(cars);
+            text = new String[cars.size()];
+            Map<String,Postings> w = new HashMap<>(), g = new HashMap<>();
+            for(int i=0;i<cars.size();i++){
+                Car c = cars.get(i);
+                text[i] = (nz(c.name) + " " + nz(c.model) + " " + nz(c.category)).toLowerCase();
+                for(String word : text[i].split("\\s+")){
+                    if(word.isEmpty()) continue;
+                    w.computeIfAbsent(word, k -> new Postings()).add(i);
+                    for(int j=0;j+3<=word.length();j++) g.computeIfAbsent(word.substring(j, j+3), k -> new Postings()).add(i);
+                }
+            }
+            w.forEach((k,v) -> words.put(k, v.toArray()));
+            g.forEach((k,v) -> trigrams.put(k, v.toArray()));
+        }
+
+        public Car car(int row){ return cars.get(row); }
+        public int size(){ return cars.size(); }
+
+        // Rows whose name/model/category contain the query, in catalog order.
+        public int[] match(String query){
+            String q = query == null ? "" : query.trim().toLowerCase();
+            if(q.isEmpty()){ int[] all = new int[cars.size()]; for(int i=0;i<all.length;i++) all[i]=i; return all; }
+            if(q.length() < 3) return q.indexOf(' ') >= 0 ? scan(q) : wordRows(q); // "a b" spans words
+            int[] candidates = null;
+            for(int j=0;j+3<=q.length();j++){
+                String gram = q.substring(j, j+3);
+                if(gram.indexOf(' ') >= 0) continue; // grams are indexed per word
+                int[] p = trigrams.get(gram);
+                if(p == null) return new int[0];
+                candidates = candidates == null ? p : intersect(candidates, p);
+                if(candidates.length == 0 || Thread.currentThread().isInterrupted()) return new int[0];
+            }
+            if(candidates == null) return scan(q); // only short words, e.g. "x5 a4"
+            int[] out = new int[candidates.length]; int n = 0;
+            for(int row : candidates) if(text[row].contains(q)) out[n++] = row;
+            return Arrays.copyOf(out, n);
+        }
+
+        // Distinct car names among matched rows, in catalog order.
+        public List<String> suggest(int[] rows, int limit){
+            Set<String> names = new LinkedHashSet<>();
+            for(int i=0;i<rows.length && names.size()<limit;i++) names.add(cars.get(rows[i]).name);
+            return new ArrayList<>(names);
+        }
+
+        private int[] wordRows(String q){
+            BitSet hits = new BitSet(cars.size());
+            for(Map.Entry<String,int[]> e : words.entrySet()) if(e.getKey().contains(q)) for(int row : e.getValue()) hits.set(row);
+            return hits.stream().toArray();
+        }
+
+        private int[] scan(String q){
+            int[] out = new int[text.length]; int n = 0;
+            for(int i=0;i<text.length;i++) if(text[i].contains(q)) out[n++] = i;
+            return Arrays.copyOf(out, n);
+        }
+
+        private static int[] intersect(int[] a, int[] b){
+            int[] out = new int[Math.min(a.length, b.length)]; int i=0, j=0, n=0;
+            while(i < a.length && j < b.length){
+                if(a[i] < b[j]) i++; else if(a[i] > b[j]) j++; else { out[n++] = a[i]; i++; j++; }
+            }
+            return Arrays.copyOf(out, n);
+        }
+
+        private static String nz(String s){ return s == null ? "" : s; }
+    }
+
+    // ---------------- Pricing Engine ----------------
+    // Rate rules (weekend, season, duration tier) scoped to all cars, a category or a single car.
+    // Each scope is compiled once into a prefix sum of daily multipliers, so a quote is two array
+    // reads and a tier lookup regardless of how many days or rules are involved.
+    public static class PricingEngine {
+        public static class Rule {
+            public final String id, scopeType, scope, kind, startMd, endMd;   // scopeType: all|category|car, kind: weekend|season|tier
+            public final int minDays; public final double factor;
+            public Rule(String id, String scopeType, String scope, String kind, String startMd, String endMd, int minDays, double factor){
+                this.id=id; this.scopeType=scopeType; this.scope=scope; this.kind=kind;
+                this.startMd=startMd; this.endMd=endMd; this.minDays=minDays; this.factor=factor;
+            }
+            boolean appliesTo(Car c){
+                if("car".equals(scopeType)) return c.id.equals(scope);
+                if("category".equals(scopeType)) return scope != null && scope.equalsIgnoreCase(c.category);
+                return true;
+            }
+        }
+
+        // Compiled rules for one scope. prefix[i] is the sum of multipliers for days [origin, origin+i).
+        static final class RateTable {
+            final long version;   // rule-set version it was compiled from
+            final long origin; final double[] prefix;
+            final int[] tierMin; final double[] tierFactor;   // descending by tierMin
+            final List<Rule> dayRules;
+            RateTable(long version, long origin, double[] prefix, int[] tierMin, double[] tierFactor, List<Rule> dayRules){
+                this.version=version; this.origin=origin; this.prefix=prefix; this.tierMin=tierMin; this.tierFactor=tierFactor; this.dayRules=dayRules;
+            }
+            double dayUnits(long startDay, int days){
+                long from = startDay - origin, to = from + days;
+                if(from >= 0 && to < prefix.length) return prefix[(int)to] - prefix[(int)from];
+                double sum = 0;   // outside the compiled window: evaluate day by day
+                for(int i=0;i<days;i++) sum += dayFactor(dayRules, LocalDate.ofEpochDay(startDay + i));
+                return sum;
+            }
+            double tier(int days){
+                for(int i=0;i<tierMin.length;i++) if(days >= tierMin[i]) return tierFactor[i];
+                return 1.0;
+            }
+        }
+
+        private static final DateTimeFormatter MD = DateTimeFormatter.ofPattern("MM-dd");
+        private static final int WINDOW_YEARS = 3;
+        private static final ConcurrentHashMap<String,RateTable> TABLES = new ConcurrentHashMap<>();
+        // Bumped by invalidate(). Rule sets and tables carry the version they were built from, so one
+        // compiled from rules read before an invalidate() is never served after it.
+        private static final AtomicLong version = new AtomicLong();
+        private static volatile RuleSet ruleSet;
+
+        private static final class RuleSet {
+            final long version; final List<Rule> rules; final Set<String> carScoped;   // car ids that have their own rules
+            RuleSet(long version, List<Rule> rules, Set<String> carScoped){ this.version=version; this.rules=rules; this.carScoped=carScoped; }
+        }
+
+        // Sample rules seeded into a new database; with no rules at all every day prices at x1.0.
+        public static List<Rule> demoRules(){
+            return List.of(
+                new Rule("R001", "all", null, "weekend", null, null, 0, 1.15),
+                new Rule("R002", "all", null, "season", "12-15", "01-05", 0, 1.25),
+                new Rule("R003", "all", null, "season", "05-01", "06-15", 0, 1.10),
+                new Rule("R004", "category", "SUV", "weekend", null, null, 0, 1.05),
+                new Rule("R005", "all", null, "tier", null, null, 7, 0.90),
+                new Rule("R006", "all", null, "tier", null, null, 14, 0.85),
+                new Rule("R007", "all", null, "tier", null, null, 28, 0.80));
+        }
+
+        // Drops compiled tables; the rules are re-read from the database on the next quote.
+        public static void invalidate(){ version.incrementAndGet(); ruleSet = null; TABLES.clear(); }
+
+        public static double quote(Car c, LocalDate start, int days){
+            if(days <= 0) return 0;
+            RateTable t = table(c);
+            return c.pricePerDay * t.dayUnits(start.toEpochDay(), days) * t.tier(days);
+        }
+
+        public static double dailyRate(Car c, LocalDate day){ return quote(c, day, 1); }
+
+        static RateTable table(Car c){
+            RuleSet rs = rules();
+            String key = rs.carScoped.contains(c.id) ? "car:" + c.id : c.category == null ? "" : c.category.toLowerCase(Locale.ROOT);
+            RateTable t = TABLES.get(key);
+            if(t != null && t.version == rs.version) return t;
+            t = compile(rs.version, rs.rules, c);
+            TABLES.put(key, t); // if invalidate() ran meanwhile, the version check above ignores this entry
+            return t;
+        }
+
+        private static RuleSet rules(){
+            long v = version.get();
+            RuleSet rs = ruleSet;
+            if(rs == null || rs.version != v){
+                List<Rule> list = Repositories.get().fetchPricingRules();
+                Set<String> ids = new HashSet<>();
+                for(Rule r : list) if("car".equals(r.scopeType)) ids.add(r.scope);
+                rs = new RuleSet(v, list, ids);
+                ruleSet = rs;
+            }
+            return rs;
+        }
+
+        private static RateTable compile(long version, List<Rule> all, Car sample){
+            List<Rule> dayRules = new ArrayList<>();
+            TreeMap<Integer,Double> tiers = new TreeMap<>(Comparator.reverseOrder());
+            for(Rule r : all){
+                if(!r.appliesTo(sample)) continue;
+                if("tier".equals(r.kind)) tiers.merge(r.minDays, r.factor, Math::min);   // the cheaper tier wins on overlap
+                else dayRules.add(r);
+            }
+            LocalDate from = LocalDate.now().withDayOfYear(1).minusYears(1);
+            int len = (int)(from.plusYears(WINDOW_YEARS + 1).toEpochDay() - from.toEpochDay());
+            double[] prefix = new double[len + 1];
+            LocalDate d = from;
+            for(int i=0;i<len;i++, d = d.plusDays(1)) prefix[i+1] = prefix[i] + dayFactor(dayRules, d);
+            int[] tierMin = new int[tiers.size()]; double[] tierFactor = new double[tiers.size()];
+            int i = 0;
+            for(Map.Entry<Integer,Double> e : tiers.entrySet()){ tierMin[i] = e.getKey(); tierFactor[i++] = e.getValue(); }
+            return new RateTable(version, from.toEpochDay(), prefix, tierMin, tierFactor, dayRules);
+        }
+
+        static double dayFactor(List<Rule> dayRules, LocalDate d){
+            double f = 1.0;
+            DayOfWeek dow = d.getDayOfWeek();
+            MonthDay md = MonthDay.from(d);
+            for(Rule r : dayRules){
+                if("weekend".equals(r.kind) && (dow == DayOfWeek.SATURDAY || dow == DayOfWeek.SUNDAY)) f *= r.factor;
+                else if("season".equals(r.kind) && inSeason(md, r.startMd, r.endMd)) f *= r.factor;
+            }
+            return f;
+        }
+
+        // Seasons are inclusive month-day ranges and may wrap over the new year (e.g. 12-15 to 01-05).
+        private static boolean inSeason(MonthDay md, String start, String end){
+            if(start == null || end == null) return false;
+            try{
+                MonthDay s = MonthDay.parse(start, MD), e = MonthDay.parse(end, MD);
+                return s.isAfter(e) ? !md.isBefore(s) || !md.isAfter(e) : !md.isBefore(s) && !md.isAfter(e);
+            }catch(DateTimeParseException ex){ return false; }
+        }
+    }
+
+    // ---------------- Batch Quotes ----------------
+    // Price and availability for many cars over one date range in a single pass. Large batches are
+    // split across the common fork-join pool on 64-row boundaries so each task owns whole bitmap words.
+    public static class BatchQuotes {
+        private static final int SPLIT = 4096;   // rows per leaf task; a multiple of 64
+
+        // Row i describes ids[i]: totals[i] is the quoted price and bit i of available is set when the
+        // car is bookable for the whole range. Ids that did not resolve to a car are not included.
+        // availabilityKnown is false when the bookings could not be read; no bit is set then.
+        public static final class Result {
+            public final LocalDate start; public final int days; public final boolean availabilityKnown;
+            public final String[] ids; public final double[] totals; public final long[] available;
+            Result(LocalDate start, int days, int n, boolean availabilityKnown){
+                this.start=start; this.days=days; this.availabilityKnown=availabilityKnown;
+                ids = new String[n]; totals = new double[n]; available = new long[(n + 63) >>> 6];
+            }
+            public int size(){ return ids.length; }
+            public boolean isAvailable(int row){ return (available[row >>> 6] & (1L << row)) != 0; }
+            public int availableCount(){ int n = 0; for(long w : available) n += Long.bitCount(w); return n; }
+        }
+
+        public static Result quote(Collection<String> carIds, LocalDate start, int days){
+            RentalRepository repo = Repositories.get();
+            return quote(repo.fetchCarsByIds(carIds), repo.fetchBookedRanges(carIds), start, days);
+        }
+
+        // booked == null means availability is unknown: prices are still filled in.
+        public static Result quote(List<Car> cars, Map<String,long[]> booked, LocalDate start, int days){
+            return quote(cars, booked, start, days, true);
         }
-        public static List<User> fetchUsers() {
-            List<User> users = new ArrayList<>();
-            String sql = "SELECT * FROM users";
-            try (Statement stmt = connection.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
-                while (rs.next()) { users.add(mapUser(rs)); }
-            } catch (SQLException e) { e.printStackTrace(); } return users;
+
+        static Result quote(List<Car> cars, Map<String,long[]> booked, LocalDate start, int days, boolean parallel){
+            Result r = new Result(start, days, cars.size(), booked != null);
+            Car[] rows = cars.toArray(new Car[0]);
+            for(int i=0;i<rows.length;i++) r.ids[i] = rows[i].id;
+            Fill task = new Fill(rows, booked, r, 0, rows.length);
+            if(!parallel || rows.length <= SPLIT) task.compute(); else ForkJoinPool.commonPool().invoke(task);
+            return r;
         }
-        public static List<Car> fetchCars() {
-            List<Car> cars = new ArrayList<>();
-            String sql = "SELECT * FROM cars";
-            try (Statement stmt = connection.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
-                while (rs.next()) { cars.add(mapCar(rs)); }
-            } catch (SQLException e) { e.printStackTrace(); } return cars;
+
+        private static final class Fill extends RecursiveAction {
+            final Car[] rows; final Map<String,long[]> booked; final Result r; final int lo, hi;
+            Fill(Car[] rows, Map<String,long[]> booked, Result r, int lo, int hi){ this.rows=rows; this.booked=booked; this.r=r; this.lo=lo; this.hi=hi; }
+
+            @Override protected void compute(){
+                if(hi - lo > SPLIT){
+                    int mid = (lo + ((hi - lo) >>> 1)) & ~63;
+                    invokeAll(new Fill(rows, booked, r, lo, mid), new Fill(rows, booked, r, mid, hi));
+                    return;
+                }
+                long from = r.start.toEpochDay(), to = from + r.days;
+                for(int i=lo;i<hi;i++){
+                    Car c = rows[i];
+                    PricingEngine.RateTable t = PricingEngine.table(c);
+                    r.totals[i] = r.days <= 0 ? 0 : c.pricePerDay * t.dayUnits(from, r.days) * t.tier(r.days);
+                    if(booked != null && bookable(c) && !overlaps(booked.get(c.id), from, to)) r.available[i >>> 6] |= 1L << i;
+                }
+            }
         }
-        public static List<Booking> fetchBookings() { // Fetch ALL bookings for Admin/Seller view
-            List<Booking> allBookings = new ArrayList<>();
-            String sql = "SELECT * FROM bookings";
-            try (Statement stmt = connection.createStatement(); 
-                 ResultSet rs = stmt.executeQuery(sql)) {
-                while (rs.next()) { allBookings.add(mapBooking(rs)); }
-            } catch (SQLException e) { e.printStackTrace(); } return allBookings;
+
+        // "Rented" only describes today; whether the range is free is decided by the bookings themselves.
+        private static boolean bookable(Car c){ return "Available".equalsIgnoreCase(c.status) || "Rented".equalsIgnoreCase(c.status); }
+
+        private static boolean overlaps(long[] ranges, long from, long to){
+            if(ranges == null) return false;
+            for(int i=0;i<ranges.length;i+=2) if(ranges[i] < to && from < ranges[i+1]) return true;
+            return false;
         }
-        public static List<Booking> fetchBookingsByUserId(String userId) { // Fetch bookings by User ID
-            List<Booking> bookings = new ArrayList<>();
-            String sql = "SELECT * FROM bookings WHERE user_id = ?";
-            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-                pstmt.setString(1, userId);
-                ResultSet rs = pstmt.executeQuery();
-                while (rs.next()) { bookings.add(mapBooking(rs)); }
-            } catch (SQLException e) { e.printStackTrace(); } return bookings;
+    }
+
+    // Times BatchQuotes.quote, on one thread and split across the common fork-join pool, against quoting
+    // car by car the way BookingDialog does (PricingEngine.quote plus an overlap scan per car), over
+    // synthetic catalogs of 10,000 and 100,000 cars with three bookings each. No database is needed:
+    //   java -Dcarrental.backend=memory 'CarRentalFull$BatchQuoteBench'
+    public static class BatchQuoteBench {
+        public static void main(String[] args){
+            for(int n : new int[]{10_000, 100_000}){
+                Random rnd = new Random(n);
+                String[] categories = {"Sedan", "SUV", "Hatchback", "Luxury"};
+                List<Car> cars = new ArrayList<>(n);
+                Map<String,long[]> booked = new HashMap<>();
+                LocalDate start = LocalDate.now().plusDays(10);
+                for(int i=0;i<n;i++){
+                    String id = "C" + i;
+                    cars.add(new Car(id, "Car " + i, "M", 1000 + rnd.nextInt(9000), categories[rnd.nextInt(4)], "Available", null, "U1", "Petrol", 5, "Manual"));
+                    long[] ranges = new long[6];
+                    for(int k=0;k<6;k+=2){ ranges[k] = start.toEpochDay() - 20 + rnd.nextInt(60); ranges[k+1] = ranges[k] + 1 + rnd.nextInt(7); }
+                    booked.put(id, ranges);
+                }
+                long sequential = best(() -> BatchQuotes.quote(cars, booked, start, 5, false).availableCount());
+                long forkJoin = best(() -> BatchQuotes.quote(cars, booked, start, 5, true).availableCount());
+                long perCar = best(() -> {
+                    int free = 0;
+                    long from = start.toEpochDay();
+                    for(Car c : cars){ PricingEngine.quote(c, start, 5); if(!BatchQuotes.overlaps(booked.get(c.id), from, from + 5)) free++; }
+                    return free;
+                });
+                System.out.printf(Locale.ROOT, "%,7d cars: car by car %6.2f ms, batch %6.2f ms, fork-join %6.2f ms on %d threads (%d free)%n",
+                        n, perCar / 1e6, sequential / 1e6, forkJoin / 1e6, ForkJoinPool.getCommonPoolParallelism(),
+                        BatchQuotes.quote(cars, booked, start, 5).availableCount());
+            }
         }
 
-        public static void updateBookingStatus(String bookingId, String newStatus) {
-            String sql = "UPDATE bookings SET status = ? WHERE id = ?";
-            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-                pstmt.setString(1, newStatus);
-                pstmt.setString(2, bookingId);
-                pstmt.executeUpdate();
-            } catch (SQLException e) { 
-                e.printStackTrace(); 
-                JOptionPane.showMessageDialog(null, "DB Error: Could not update booking status.", "DB Write Error", JOptionPane.ERROR_MESSAGE); 
+        // Best of 20 timed runs after 20 warm-up runs, in nanoseconds.
+        private static long best(Supplier<Integer> run){
+            long best = Long.MAX_VALUE, sink = 0;
+            for(int i=0;i<40;i++){
+                long t = System.nanoTime();
+                sink += run.get();
+                if(i >= 20) best = Math.min(best, System.nanoTime() - t);
             }
+            if(sink == Long.MIN_VALUE) System.out.println(sink);
+            return best;
         }
+    }
 
-        public static void addCar(Car c) {
-            String sql = "INSERT INTO cars (id, name, model, price_per_day, category, status, image_path, owner_id, fuel_type, seats, transmission) VALUES (?,?,?,?,?,?,?,?,?,?,?)";
-            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-                pstmt.setString(1, c.id); pstmt.setString(2, c.name); pstmt.setString(3, c.model); pstmt.setDouble(4, c.pricePerDay); 
-                pstmt.setString(5, c.category); pstmt.setString(6, c.status); pstmt.setString(7, c.imagePath); pstmt.setString(8, c.ownerId);   
-                pstmt.setString(9, c.fuelType); pstmt.setInt(10, c.seats); pstmt.setString(11, c.transmission); pstmt.executeUpdate();
-            } catch (SQLException e) { e.printStackTrace(); JOptionPane.showMessageDialog(null, "DB Error: Could not add car.", "DB Write Error", JOptionPane.ERROR_MESSAGE); }
+    // ---------------- Dates ----------------
+    // Pickup dates are stored as dd/MM/yyyy text; null for blanks and impossible dates such as 31/02/2025.
+    public static class Dates {
+        private static final DateTimeFormatter DD_MM_YYYY = DateTimeFormatter.ofPattern("dd/MM/uuuu").withResolverStyle(ResolverStyle.STRICT);
+
+        public static LocalDate parse(String ddMMyyyy){
+            try{ return ddMMyyyy == null ? null : LocalDate.parse(ddMMyyyy.trim(), DD_MM_YYYY); }
+            catch(DateTimeParseException e){ return null; }
         }
-        public static void addUser(User u) {
-            String sql = "INSERT INTO users (id, username, password, role, contact) VALUES (?,?,?,?,?)";
-            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-                pstmt.setString(1, u.id); pstmt.setString(2, u.username); pstmt.setString(3, u.password); 
-                pstmt.setString(4, u.role); pstmt.setString(5, u.contact); pstmt.executeUpdate();
-            } catch (SQLException e) { e.printStackTrace(); JOptionPane.showMessageDialog(null, "DB Error: Could not add user.", "DB Write Error", JOptionPane.ERROR_MESSAGE); }
+    }
+
+    // ---------------- Analytics ----------------
+    // Revenue, utilization and approval latency over the booking history. Bookings are loaded once
+    // into parallel arrays and aggregated by fork-join tasks over index ranges; each task fills its
+    // own partial result and partials are merged pairwise on the way back up.
+    public static class Analytics {
+        private static final int SPLIT = 8192;
+
+        // Column-per-field copy of the bookings joined with their car's owner and category.
+        public static class Facts {
+            int size;
+            String[] seller = new String[1024], category = new String[1024];
+            long[] start = new long[1024], latency = new long[1024];   // start in epoch days (MIN_VALUE if unparsable), latency in ms or -1
+            long[] decidedDay = new long[1024];                        // local day of the approval decision in epoch days, MIN_VALUE if undecided
+            int[] days = new int[1024];
+            double[] total = new double[1024];
+            boolean[] confirmed = new boolean[1024];
+
+            void add(String sellerId, String cat, LocalDate pickup, int d, double price, String status, long latencyMs, LocalDate decidedOn){
+                if(size == start.length) grow();
+                seller[size] = label(sellerId); category[size] = label(cat);
+                start[size] = pickup == null ? Long.MIN_VALUE : pickup.toEpochDay();
+                days[size] = Math.max(1, d); total[size] = price;
+                confirmed[size] = "Confirmed".equals(status); latency[size] = latencyMs;
+                decidedDay[size] = decidedOn == null ? Long.MIN_VALUE : decidedOn.toEpochDay();
+                size++;
+            }
+            private void grow(){
+                int n = start.length * 2;
+                seller = Arrays.copyOf(seller, n); category = Arrays.copyOf(category, n);
+                start = Arrays.copyOf(start, n); latency = Arrays.copyOf(latency, n); decidedDay = Arrays.copyOf(decidedDay, n);
+                days = Arrays.copyOf(days, n); total = Arrays.copyOf(total, n); confirmed = Arrays.copyOf(confirmed, n);
+            }
+            public int size(){ return size; }
         }
-        public static void addBooking(Booking b) {
-            String sql = "INSERT INTO bookings (id, car_id, user_id, pickup_place, pickup_date, pickup_time, days, total_price, status) VALUES (?,?,?,?,?,?,?,?, 'Pending')";
-            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-                pstmt.setString(1, b.id); pstmt.setString(2, b.carId); pstmt.setString(3, b.userId);
-                pstmt.setString(4, b.pickupPlace); pstmt.setString(5, b.pickupDate); pstmt.setString(6, b.pickupTime);
-                pstmt.setInt(7, b.days); pstmt.setDouble(8, b.totalPrice); pstmt.executeUpdate();
-            } catch (SQLException e) { e.printStackTrace(); JOptionPane.showMessageDialog(null, "DB Error: Could not add booking.", "DB Write Error", JOptionPane.ERROR_MESSAGE); }
+
+        public static class Report {
+            public final LocalDate from, to;                       // inclusive
+            public final Map<String,Double> revenueBySeller = new HashMap<>(), revenueByCategory = new HashMap<>();
+            public final double[] revenueByDay;                    // index 0 = from
+            public final Map<String,Long> rentedDaysByCategory = new HashMap<>();
+            public final Map<String,Double> utilizationByCategory = new TreeMap<>();
+            public double utilization, totalRevenue;
+            public long decided; public double avgLatencyHours, medianLatencyHours, p90LatencyHours;
+            long[] latencies = new long[0];
+            Report(LocalDate from, LocalDate to){ this.from=from; this.to=to; revenueByDay = new double[days(from, to)]; }
         }
-        public static void updateCar(Car updated) {
-            String sql = "UPDATE cars SET name=?, model=?, price_per_day=?, category=?, status=?, image_path=?, owner_id=?, fuel_type=?, seats=?, transmission=? WHERE id=?";
-            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-                pstmt.setString(1, updated.name); pstmt.setString(2, updated.model); pstmt.setDouble(3, updated.pricePerDay);
-                pstmt.setString(4, updated.category); pstmt.setString(5, updated.status); pstmt.setString(6, updated.imagePath);
-                pstmt.setString(7, updated.ownerId); pstmt.setString(8, updated.fuelType); pstmt.setInt(9, updated.seats);
-                pstmt.setString(10, updated.transmission); pstmt.setString(11, updated.id); pstmt.executeUpdate();
-            } catch (SQLException e) { e.printStackTrace(); JOptionPane.showMessageDialog(null, "DB Error: Could not update car.", "DB Write Error", JOptionPane.ERROR_MESSAGE); }
+
+        public static Report run(LocalDate from, LocalDate to){
+            return run(Repositories.get().fetchAnalyticsFacts(), Repositories.get().fleetByCategory(), from, to);
         }
-        public static void deleteCar(String id) {
-            String sql = "DELETE FROM cars WHERE id = ?";
-            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-                pstmt.setString(1, id); pstmt.executeUpdate();
-            } catch (SQLException e) { e.printStackTrace(); JOptionPane.showMessageDialog(null, "DB Error: Could not delete car.", "DB Write Error", JOptionPane.ERROR_MESSAGE); }
+
+        public static Report run(Facts facts, Map<String,Integer> fleet, LocalDate from, LocalDate to){
+            Aggregate task = new Aggregate(facts, from, to, 0, facts.size);
+            Report r = facts.size <= SPLIT ? task.compute() : ForkJoinPool.commonPool().invoke(task);
+
+            long[] lat = r.latencies;
+            Arrays.sort(lat);
+            r.decided = lat.length;
+            if(lat.length > 0){
+                double sum = 0; for(long l : lat) sum += l;
+                r.avgLatencyHours = sum / lat.length / 3_600_000d;
+                // Nearest-rank percentiles, matching percentile_disc in loadRollups.
+                r.medianLatencyHours = lat[(int)Math.ceil(lat.length * 0.5) - 1] / 3_600_000d;
+                r.p90LatencyHours = lat[(int)Math.ceil(lat.length * 0.9) - 1] / 3_600_000d;
+            }
+            r.latencies = null;
+            return totals(r, fleet);
         }
-        public static User findUserById(String id) {
-            String sql = "SELECT * FROM users WHERE id = ?";
-            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-                pstmt.setString(1, id);
-                ResultSet rs = pstmt.executeQuery();
-                if (rs.next()) { return mapUser(rs); }
-            } catch (SQLException e) { e.printStackTrace(); } return null;
+
+        // Dashboard path: reads a few rows per day from the rollup tables instead of every booking.
+        public static Report fromRollups(LocalDate from, LocalDate to) throws SQLException {
+            Report r = new Report(from, to);
+            DataStore.loadRollups(r);
+            return totals(r, DataStore.fleetByCategory());
         }
-        public static Car findCarById(String id) {
-            String sql = "SELECT * FROM cars WHERE id = ?";
-            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-                pstmt.setString(1, id);
-                ResultSet rs = pstmt.executeQuery();
-                if (rs.next()) { return mapCar(rs); }
-            } catch (SQLException e) { e.printStackTrace(); } return null;
+
+        private static Report totals(Report r, Map<String,Integer> fleet){
+            for(double v : r.revenueByDay) r.totalRevenue += v;
+
+            int span = r.revenueByDay.length; long rented = 0, available = 0;
+            for(Map.Entry<String,Integer> e : fleet.entrySet()){
+                long cat = r.rentedDaysByCategory.getOrDefault(e.getKey(), 0L), cap = (long)e.getValue() * span;
+                r.utilizationByCategory.put(e.getKey(), cap == 0 ? 0 : (double)cat / cap);
+                rented += cat; available += cap;
+            }
+            r.utilization = available == 0 ? 0 : (double)rented / available;
+            return r;
+        }
+
+        private static final class Aggregate extends RecursiveTask<Report> {
+            final Facts f; final LocalDate from, to; final int lo, hi;
+            Aggregate(Facts f, LocalDate from, LocalDate to, int lo, int hi){ this.f=f; this.from=from; this.to=to; this.lo=lo; this.hi=hi; }
+
+            @Override protected Report compute(){
+                if(hi - lo > SPLIT){
+                    int mid = (lo + hi) >>> 1;
+                    Aggregate left = new Aggregate(f, from, to, lo, mid);
+                    left.fork();
+                    Report right = new Aggregate(f, from, to, mid, hi).compute();
+                    return merge(left.join(), right);
+                }
+                Report r = new Report(from, to);
+                long first = from.toEpochDay(), last = to.toEpochDay();
+                long[] lat = new long[hi - lo]; int nLat = 0;
+                for(int i=lo;i<hi;i++){
+                    // Approval latency counts decisions made in the range, whenever the pickup is; the rollup path does the same.
+                    if(f.latency[i] >= 0 && f.decidedDay[i] >= first && f.decidedDay[i] <= last) lat[nLat++] = f.latency[i];
+                    long s = f.start[i];
+                    if(s == Long.MIN_VALUE || s > last) continue;
+                    long e = s + f.days[i] - 1;
+                    if(!f.confirmed[i] || e < first) continue;
+                    // Revenue is spread evenly over the rental days and only the in-range part counts.
+                    long a = Math.max(s, first), b = Math.min(e, last);
+                    int inRange = (int)(b - a + 1);
+                    double perDay = f.total[i] / f.days[i];
+                    for(long d=a; d<=b; d++) r.revenueByDay[(int)(d - first)] += perDay;
+                    r.revenueBySeller.merge(f.seller[i], perDay * inRange, Double::sum);
+                    r.revenueByCategory.merge(f.category[i], perDay * inRange, Double::sum);
+                    r.rentedDaysByCategory.merge(f.category[i], (long)inRange, Long::sum);
+                }
+                r.latencies = Arrays.copyOf(lat, nLat);
+                return r;
+            }
+
+            private static Report merge(Report a, Report b){
+                for(int i=0;i<a.revenueByDay.length;i++) a.revenueByDay[i] += b.revenueByDay[i];
+                b.revenueBySeller.forEach((k,v) -> a.revenueBySeller.merge(k, v, Double::sum));
+                b.revenueByCategory.forEach((k,v) -> a.revenueByCategory.merge(k, v, Double::sum));
+                b.rentedDaysByCategory.forEach((k,v) -> a.rentedDaysByCategory.merge(k, v, Long::sum));
+                long[] lat = Arrays.copyOf(a.latencies, a.latencies.length + b.latencies.length);
+                System.arraycopy(b.latencies, 0, lat, a.latencies.length, b.latencies.length);
+                a.latencies = lat;
+                return a;
+            }
         }
+
+        static int days(LocalDate from, LocalDate to){ return (int)Math.max(0, to.toEpochDay() - from.toEpochDay() + 1); }
+        static String label(String s){ return s == null || s.trim().isEmpty() ? "Unspecified" : s; }
     }
 
     // ---------------- UI Utils ----------------
@@ -275,6 +4059,13 @@ public class CarRentalFull {
         public static final DecimalFormat MONEY = new DecimalFormat("#,###.##");
         public static final String PLACEHOLDER_IMAGE = "images/placeholder.png";
 
+        // For code that may run off the EDT (DataStore writes from the sync and lifecycle threads): the dialog
+        // is queued on the EDT, and without a display the message only goes to stderr.
+        public static void showErrorLater(String message, String title){
+            if(GraphicsEnvironment.isHeadless()){ System.err.println(title + ": " + message); return; }
+            SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(null, message, title, JOptionPane.ERROR_MESSAGE));
+        }
+
         public static void ensureImagesFolder(){try{Files.createDirectories(Paths.get("images"));}catch(IOException e){System.err.println(e);}}
 
         public static String copyImageToStore(File sourceFile,String targetFileName)throws IOException{
@@ -284,14 +4075,40 @@ public class CarRentalFull {
             return target.toString().replace("\\","/");
         }
 
+        // Thumbnail index: scaled copies live in images/thumbs/, named after a SHA-256 of the source path
+        // and its modification time plus the size, so a cold start reads small PNGs instead of rescaling photos.
         public static ImageIcon loadScaledIcon(String imagePath,int w, int h){
             if(imagePath==null || !new File(imagePath).exists()) imagePath=PLACEHOLDER_IMAGE;
+            File src = new File(imagePath);
+            File thumb = Paths.get("images","thumbs",thumbKey(src)+"_"+w+"x"+h+".png").toFile();
             try{
-                BufferedImage img = ImageIO.read(new File(imagePath));
-                return new ImageIcon(img.getScaledInstance(w,h,Image.SCALE_SMOOTH));
+                if(thumb.exists()){
+                    BufferedImage cached = null;
+                    try{ cached = ImageIO.read(thumb); }catch(IOException e){ /* unreadable, same as corrupt */ }
+                    if(cached != null) return new ImageIcon(cached);
+                    Files.deleteIfExists(thumb.toPath()); // truncated or corrupt: treat as a miss and rebuild it
+                }
+                BufferedImage img = ImageIO.read(src);
+                if(img==null) return null;
+                BufferedImage scaled = new BufferedImage(w,h,BufferedImage.TYPE_INT_ARGB);
+                Graphics2D g = scaled.createGraphics();
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+                g.drawImage(img,0,0,w,h,null); g.dispose();
+                thumb.getParentFile().mkdirs();
+                ImageIO.write(scaled,"png",thumb);
+                return new ImageIcon(scaled);
             }catch(IOException e){return null;}
         }
 
+        private static String thumbKey(File src){
+            try{
+                byte[] d = MessageDigest.getInstance("SHA-256").digest((src.getAbsolutePath()+"@"+src.lastModified()).getBytes(java.nio.charset.StandardCharsets.UTF_8));
+                StringBuilder hex = new StringBuilder(d.length*2);
+                for(byte b : d) hex.append(Character.forDigit((b>>4)&0xf,16)).append(Character.forDigit(b&0xf,16));
+                return hex.toString();
+            }catch(GeneralSecurityException e){ throw new IllegalStateException(e); }
+        }
+
         public static JLabel makeHeader(String text){
             JLabel l = new JLabel(text,SwingConstants.CENTER);
             l.setFont(new Font("Segoe UI",Font.BOLD,20));
@@ -309,12 +4126,18 @@ public class CarRentalFull {
         private JPanel cardPanel = new JPanel(cards);
         private LoginPanel loginPanel; private DashboardPanel dashboardPanel;
         private User currentUser;
+        private String sessionToken;
+        private final JLabel lblHealth = new JLabel(" ");
 
         public MainFrame(){
             setTitle("Car Rental — Connected Roles");
             setSize(1100,700);
             setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
             setLocationRelativeTo(null);
+            LifecycleScheduler.onReminder(b -> SwingUtilities.invokeLater(() -> {
+                if(currentUser != null && currentUser.id.equals(b.userId))
+                    JOptionPane.showMessageDialog(this, "Reminder: booking " + b.id + " is picked up on " + b.pickupDate + " at " + b.pickupTime + ".", "Pickup Reminder", JOptionPane.INFORMATION_MESSAGE);
+            }));
 
             loginPanel = new LoginPanel(this);
             dashboardPanel = new DashboardPanel(this);
@@ -323,16 +4146,57 @@ public class CarRentalFull {
             cardPanel.add(dashboardPanel,"dashboard");
 
             add(cardPanel);
+            // Only the Supabase-backed stores have a breaker to report on; touching DataStore would connect.
+            String backend = Repositories.get().name();
+            if(backend.equals("postgres") || backend.equals("offline")){
+                lblHealth.setOpaque(true);
+                lblHealth.setBorder(new EmptyBorder(3,10,3,10));
+                add(lblHealth, BorderLayout.SOUTH);
+                new javax.swing.Timer(1000, e -> updateHealth()).start();
+                updateHealth();
+            }
             showLogin();
         }
 
-        public void showLogin(){cards.show(cardPanel,"login");}
+        // Status bar: green while the breaker is closed; amber with its counters while reads are served degraded.
+        private void updateHealth(){
+            CircuitBreaker b = DataStore.BREAKER;
+            RentalRepository repo = Repositories.get();
+            String queued = repo instanceof OfflineRepository ? ", " + ((OfflineRepository)repo).pendingChanges() + " change(s) waiting to sync" : "";
+            if(b.state() == CircuitBreaker.State.CLOSED){
+                lblHealth.setText("Database: connected" + queued);
+                lblHealth.setBackground(new Color(223,240,216));
+            }else{
+                lblHealth.setText(String.format("Database %s since %s: showing cached data (%d degraded reads, %d rejected calls, %d failures, %d trips)%s",
+                        b.state() == CircuitBreaker.State.OPEN ? "unreachable" : "reconnecting",
+                        new SimpleDateFormat("HH:mm:ss").format(new java.util.Date(b.changedAt())),
+                        DataStore.degradedReads.sum(), b.rejectedCount(), b.failureCount(), b.enteredCount(CircuitBreaker.State.OPEN), queued));
+                lblHealth.setBackground(new Color(252,232,178));
+            }
+        }
+
+        public void showLogin(){sessionToken=null; cards.show(cardPanel,"login");}
         public void showDashboard(User user){
             currentUser=user;
+            sessionToken=Sessions.issue(user);
             dashboardPanel.setUser(user);
             cards.show(cardPanel,"dashboard");
         }
         public User getCurrentUser(){return currentUser;}
+
+        // Guards write actions: an expired or foreign token, or one whose role grants none of anyOf,
+        // sends the user back to the login screen.
+        public boolean requireSession(Permission... anyOf){
+            Optional<Sessions.Session> s = Sessions.verify(sessionToken);
+            if(s.isPresent() && currentUser!=null && s.get().userId.equals(currentUser.id) && Objects.equals(s.get().role, currentUser.role)){
+                Role role = Role.of(s.get().role);
+                if(anyOf.length == 0) return true;
+                for(Permission p : anyOf) if(role.has(p)) return true;
+            }
+            JOptionPane.showMessageDialog(this,"Your session has expired. Please login again.","Session Expired",JOptionPane.WARNING_MESSAGE);
+            showLogin();
+            return false;
+        }
         public void refreshAll(){dashboardPanel.refreshAll();}
         public DashboardPanel getDashboardPanel(){return dashboardPanel;}
     }
@@ -383,7 +4247,7 @@ public class CarRentalFull {
                 return;
             }
 
-            Optional<User> found = DataStore.authenticate(u,p,role);
+            Optional<User> found = Repositories.get().authenticate(u,p,role);
             if(found.isPresent()){
                 String otp = JOptionPane.showInputDialog(this,
                         "We are facing an SMS issue.\nPlease use 910298 as your OTP:",
@@ -394,6 +4258,8 @@ public class CarRentalFull {
                 } else {
                     JOptionPane.showMessageDialog(this,"Invalid OTP! Login failed.","Login Failed",JOptionPane.ERROR_MESSAGE);
                 }
+            } else if(LoginLimiter.isThrottled(u)){
+                JOptionPane.showMessageDialog(this,"Too many login attempts. Please wait and try again.","Login Failed",JOptionPane.ERROR_MESSAGE);
             } else {
                 JOptionPane.showMessageDialog(this,"Invalid credentials or role.","Login Failed",JOptionPane.ERROR_MESSAGE);
             }
@@ -416,11 +4282,11 @@ public class CarRentalFull {
                 if(u.isEmpty()||p.isEmpty()||c.isEmpty()){
                     JOptionPane.showMessageDialog(this,"Fill all fields.","Validation",JOptionPane.WARNING_MESSAGE); return;
                 }
-                if(DataStore.usernameExists(u)){
+                if(Repositories.get().usernameExists(u)){
                     JOptionPane.showMessageDialog(this,"Username already exists!","Validation",JOptionPane.WARNING_MESSAGE); return;
                 }
-                User newUser = new User(DataStore.nextUserId(),u,p,r,c);
-                DataStore.addUser(newUser);
+                User newUser = new User(Repositories.get().nextUserId(),u,p,r,c);
+                Repositories.get().addUser(newUser);
                 JOptionPane.showMessageDialog(this,"Account created! You can login now.","Success",JOptionPane.INFORMATION_MESSAGE);
             }
         }
@@ -433,6 +4299,7 @@ public class CarRentalFull {
         private AdminPanel adminPanel;
         private BookingHistoryPanel historyPanel; 
         private AllBookingsPanel allBookingsPanel; // New Admin/Seller View
+        private ReportsPanel reportsPanel;
         private User currentUser; // The current user logged in
 
         public DashboardPanel(MainFrame parent){
@@ -454,6 +4321,7 @@ public class CarRentalFull {
             adminPanel = new AdminPanel(parent);
             historyPanel = new BookingHistoryPanel(parent); 
             allBookingsPanel = new AllBookingsPanel(parent); // Initialize here
+            reportsPanel = new ReportsPanel();
             add(tabs,BorderLayout.CENTER);
         }
         public void setUser(User user){
@@ -463,21 +4331,22 @@ public class CarRentalFull {
             tabs.addTab("Browse Cars",browsePanel);
             
             // User-specific history view
-            if(user.role.equals("user")) {
+            if(Auth.can(user, Permission.VIEW_OWN_BOOKINGS)) {
                 tabs.addTab("My Bookings", historyPanel); 
             }
             
             // Role-based inventory and management views
-            switch(user.role.toLowerCase()){
-                case "seller": 
+            switch(user.roleType()){
+                case SELLER: 
                     tabs.addTab("My Inventory",sellerPanel); 
                     tabs.addTab("Car Bookings", allBookingsPanel); // Seller uses this view to track *their* car bookings
                     checkPendingBookings(); // Alert seller upon login/refresh
                     break;
-                case "admin": 
+                case ADMIN: 
                     tabs.addTab("Manage Cars",sellerPanel); 
                     tabs.addTab("Users",adminPanel); 
                     tabs.addTab("All Bookings", allBookingsPanel); // Admin sees ALL bookings
+                    tabs.addTab("Reports", reportsPanel);
                     break;
             }
             browsePanel.setCurrentUser(user); 
@@ -492,27 +4361,19 @@ public class CarRentalFull {
             sellerPanel.refresh(); 
             adminPanel.refresh();
             allBookingsPanel.refresh();
-            if(user!=null && user.role.equals("user")) {
+            if(Auth.can(user, Permission.VIEW_OWN_BOOKINGS)) {
                 historyPanel.refresh(); 
             }
+            if(Auth.can(user, Permission.VIEW_REPORTS)) {
+                reportsPanel.refresh();
+            }
         }
         
         // FIX: The variable currentUser is now accessible due to the declaration fix above.
         private void checkPendingBookings() {
             if (currentUser == null) return; 
             
-            int pendingCount = 0;
-            String sellerId = currentUser.id;
-            
-            List<Booking> allBookings = DataStore.fetchBookings();
-            
-            for (Booking b : allBookings) {
-                Car car = DataStore.findCarById(b.carId);
-                // Check if the car belongs to the current seller, and if the booking is pending
-                if (car != null && car.ownerId.equals(sellerId) && b.status.equals("Pending")) {
-                    pendingCount++;
-                }
-            }
+            int pendingCount = Repositories.get().sellerStats(currentUser.id).pending;
             
             if (pendingCount > 0) {
                 JOptionPane.showMessageDialog(this, 
@@ -529,6 +4390,26 @@ public class CarRentalFull {
     private JScrollPane scrollPane;
     private JTextField txtSearch; 
     private User currentUser;
+    private boolean firstPaintDone; // first refresh of a session may paint from the snapshot file
+    private SearchIndex index = new SearchIndex(Collections.emptyList());
+    private final Map<String,JPanel> cards = new HashMap<>(); // built on first display, per catalog load
+    private final javax.swing.Timer debounce = new javax.swing.Timer(200, e -> runSearch());
+    private SwingWorker<int[],Void> pendingSearch;
+    private final JPopupMenu suggestions = new JPopupMenu();
+    private final FacetIndex facets = new FacetIndex();
+    private CarColumns columns = new CarColumns(Collections.emptyList()); // rows line up with the search index
+    private final EnumMap<FacetIndex.Facet,JComboBox<FacetChoice>> facetBoxes = new EnumMap<>(FacetIndex.Facet.class);
+    private final EnumMap<FacetIndex.Facet,String> facetSelection = new EnumMap<>(FacetIndex.Facet.class);
+    private boolean updatingFacets;          // suppresses combo events while counts are refreshed
+    private int[] lastSearchRows = new int[0];
+    private final List<String> shownIds = new ArrayList<>(); // cars currently on screen, for Compare prices
+
+    // A facet value with its live count; value == null is the "Any" entry.
+    private static class FacetChoice {
+        final String value; final int count;
+        FacetChoice(String value, int count){ this.value=value; this.count=count; }
+        public String toString(){ return value == null ? "Any" : value + " (" + count + ")"; }
+    }
 
     public CardBrowsePanel(MainFrame parent){
         this.parent = parent; 
@@ -551,9 +4432,27 @@ public class CarRentalFull {
         searchPanel.add(new JLabel("Search:"));
         txtSearch = new JTextField(20);
         searchPanel.add(txtSearch);
+        // Type-ahead: each edit restarts a 200 ms timer, so a search runs once typing pauses.
+        debounce.setRepeats(false);
+        suggestions.setFocusable(false);
+        txtSearch.getDocument().addDocumentListener(new DocumentListener(){
+            public void insertUpdate(DocumentEvent e){ debounce.restart(); }
+            public void removeUpdate(DocumentEvent e){ debounce.restart(); }
+            public void changedUpdate(DocumentEvent e){ debounce.restart(); }
+        });
+        txtSearch.addActionListener(e -> runSearch());
         JButton btnSearch = new JButton("Go");
-        btnSearch.addActionListener(e -> refresh());
+        btnSearch.addActionListener(e -> runSearch());
         searchPanel.add(btnSearch);
+        JButton btnCompare = new JButton("Compare prices");
+        btnCompare.addActionListener(e -> {
+            if(shownIds.isEmpty()){
+                JOptionPane.showMessageDialog(this,"No cars to compare.","Compare Prices",JOptionPane.INFORMATION_MESSAGE);
+                return;
+            }
+            new CompareDialog(parent, new ArrayList<>(shownIds), currentUser).setVisible(true);
+        });
+        searchPanel.add(btnCompare);
         topPanel.add(searchPanel, BorderLayout.SOUTH);
 
         add(topPanel, BorderLayout.NORTH);
@@ -565,86 +4464,240 @@ public class CarRentalFull {
         scrollPane.getVerticalScrollBar().setUnitIncrement(16);
         scrollPane.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_NEVER);
         add(scrollPane, BorderLayout.CENTER);
+
+        // Facet filters down the left side
+        JPanel facetPanel = new JPanel(new GridLayout(0,1,4,4));
+        facetPanel.setBorder(new EmptyBorder(0,0,0,10));
+        for(FacetIndex.Facet facet : FacetIndex.Facet.values()){
+            JComboBox<FacetChoice> box = new JComboBox<>();
+            box.addActionListener(e -> {
+                if(updatingFacets) return;
+                FacetChoice choice = (FacetChoice)box.getSelectedItem();
+                if(choice == null || choice.value == null) facetSelection.remove(facet); else facetSelection.put(facet, choice.value);
+                showMatches(lastSearchRows);
+            });
+            facetBoxes.put(facet, box);
+            facetPanel.add(new JLabel(facet.label + ":"));
+            facetPanel.add(box);
+        }
+        JPanel facetHolder = new JPanel(new BorderLayout());
+        facetHolder.add(facetPanel, BorderLayout.NORTH);
+        add(facetHolder, BorderLayout.WEST);
     }
 
     public void setCurrentUser(User u){
         currentUser = u;
     }
 
+    // Refills every facet combo with counts over the current search results, keeping each selection
+    // whose value still exists in the catalog.
+    private void updateFacetCounts(int[] rows){
+        updatingFacets = true;
+        try{
+            facetSelection.entrySet().removeIf(e -> !facets.hasValue(e.getKey(), e.getValue()));
+            BitSet scope = null;
+            if(rows.length < index.size()){
+                List<String> ids = new ArrayList<>(rows.length);
+                for(int r : rows) ids.add(index.car(r).id);
+                scope = facets.scope(ids);
+            }
+            EnumMap<FacetIndex.Facet,Map<String,Integer>> counts = facets.counts(facetSelection, scope);
+            for(FacetIndex.Facet facet : FacetIndex.Facet.values()){
+                JComboBox<FacetChoice> box = facetBoxes.get(facet);
+                box.removeAllItems();
+                box.addItem(new FacetChoice(null, 0));
+                String selected = facetSelection.get(facet);
+                for(Map.Entry<String,Integer> e : counts.get(facet).entrySet()){
+                    FacetChoice choice = new FacetChoice(e.getKey(), e.getValue());
+                    box.addItem(choice);
+                    if(e.getKey().equals(selected)) box.setSelectedItem(choice);
+                }
+                if(selected == null) box.setSelectedIndex(0);
+            }
+        }finally{ updatingFacets = false; }
+    }
+
     public void refresh(){
-        String query = txtSearch.getText().trim().toLowerCase();
-        cardContainer.removeAll();
+        if(!firstPaintDone){
+            firstPaintDone = true;
+            Optional<List<Car>> cached = CatalogSnapshot.load();
+            if(cached.isPresent()){
+                render(cached.get());
+                validateAgainstDb(cached.get());
+                return;
+            }
+            List<Car> cars = Repositories.get().fetchCars();
+            render(cars);
+            if(!cars.isEmpty()) CatalogSnapshot.store(cars); // first run: seed the file for the next start
+            return;
+        }
+        render(Repositories.get().fetchCars());
+    }
 
-        for(Car c : DataStore.fetchCars()){
-            // Search filter
-            if(!query.isEmpty() && !(c.name.toLowerCase().contains(query) || c.category.toLowerCase().contains(query)))
-                continue;
-
-            // Card panel
-            JPanel card = new JPanel(new BorderLayout(4,4));
-            card.setPreferredSize(new Dimension(240,360));
-            card.setBackground(Color.WHITE); 
-            card.setBorder(BorderFactory.createLineBorder(Color.LIGHT_GRAY,1,true));
-
-            // Car image
-            JLabel imgLabel = new JLabel();
-            imgLabel.setHorizontalAlignment(SwingConstants.CENTER);
-            imgLabel.setIcon(UIUtils.loadScaledIcon(c.imagePath, 220, 140));
-            card.add(imgLabel, BorderLayout.NORTH);
-
-            // Info panel
-            JPanel info = new JPanel(); 
-            info.setLayout(new BoxLayout(info, BoxLayout.Y_AXIS)); 
-            info.setBorder(new EmptyBorder(6,6,6,6));
-
-            JLabel lblName = new JLabel(c.name + " (" + c.model + ")");
-            lblName.setFont(new Font("Segoe UI", Font.BOLD, 14)); 
-            info.add(lblName);
-
-            // Random star rating
-            int stars = 3 + new Random().nextInt(3); 
-            StringBuilder sb = new StringBuilder();
-            for(int i=0;i<stars;i++) sb.append("★"); 
-            for(int i=stars;i<5;i++) sb.append("☆");
-            JLabel lblRating = new JLabel(sb.toString());
-            lblRating.setForeground(new Color(255,140,0)); 
-            info.add(lblRating);
-
-            // Car details
-            info.add(new JLabel("Seats: " + c.seats + " | Fuel: " + c.fuelType + " | Transmission: " + c.transmission));
-            info.add(new JLabel("Category: " + c.category));
-            info.add(new JLabel("Price/day: ₹" + UIUtils.MONEY.format(c.pricePerDay)));
-
-            // Status
-            JLabel lblStatus = new JLabel("Status: " + c.status);
-            lblStatus.setForeground("Available".equalsIgnoreCase(c.status) ? new Color(0,128,0) : Color.RED);
-            info.add(lblStatus);
-
-            // Admin sees owner
-            if(currentUser.role.equals("admin")){
-                User owner = DataStore.findUserById(c.ownerId);
-                info.add(new JLabel("Owner: " + (owner != null ? owner.username : "Unknown")));
-            }
-
-            // User booking button
-            if(currentUser.role.equals("user")){
-                JButton bookBtn = new JButton("Book");
-                bookBtn.setEnabled("Available".equalsIgnoreCase(c.status));
-                bookBtn.addActionListener(e -> {
-                    BookingDialog bd = new BookingDialog(parent, c, currentUser);
-                    bd.setVisible(true);
-                    // refreshAll happens inside the dialog confirmation!
-                });
-                info.add(bookBtn);
+    // Re-reads the catalog off the EDT and repaints only if the snapshot was out of date.
+    private void validateAgainstDb(List<Car> shown){
+        new SwingWorker<List<Car>,Void>(){
+            protected List<Car> doInBackground(){ return Repositories.get().fetchCars(); }
+            protected void done(){
+                try{
+                    List<Car> fresh = get();
+                    if(!CatalogSnapshot.sameCatalog(shown, fresh)){
+                        render(fresh);
+                        CatalogSnapshot.store(fresh);
+                    }
+                }catch(Exception e){ e.printStackTrace(); }
             }
+        }.execute();
+    }
 
-            card.add(info, BorderLayout.CENTER);
-            cardContainer.add(card);
-        }
+    // New catalog: rebuild the search index and drop cached cards; the current query is re-applied.
+    private void render(List<Car> cars){
+        index = new SearchIndex(cars);
+        columns = new CarColumns(cars);
+        cards.clear();
+        facets.sync(cars);
+        showMatches(index.match(txtSearch.getText()));
+    }
 
+    // Shows the cards for the given index rows, building each card the first time it is needed,
+    // and recounts the facets over those rows.
+    private void showMatches(int[] rows){
+        lastSearchRows = rows;
+        updateFacetCounts(rows);
+        long[] allowed = facetSelection.isEmpty() ? null : columns.evaluate(columnFilter());
+        cardContainer.removeAll();
+        shownIds.clear();
+        for(int r : rows){
+            Car c = index.car(r);
+            if(allowed != null && !CarColumns.contains(allowed, r)) continue;
+            cardContainer.add(cards.computeIfAbsent(c.id, id -> buildCard(c)));
+            shownIds.add(c.id);
+        }
         cardContainer.revalidate(); 
         cardContainer.repaint();
     }
+
+    // The facet selection as a filter over the columnar catalog.
+    private CarColumns.Filter columnFilter(){
+        CarColumns.Filter f = new CarColumns.Filter();
+        for(Map.Entry<FacetIndex.Facet,String> e : facetSelection.entrySet()){
+            String v = "Unspecified".equals(e.getValue()) ? "" : e.getValue();
+            switch(e.getKey()){
+                case CATEGORY: f.category = v; break;
+                case FUEL: f.fuel = v; break;
+                case TRANSMISSION: f.transmission = v; break;
+                case AVAILABILITY: f.status = v; break;
+                case SEATS: f.minSeats = f.maxSeats = Integer.valueOf(v); break;
+                case PRICE:
+                    double[] range = FacetIndex.priceRange(v);
+                    f.minPrice = range[0]; f.maxPrice = Math.nextDown(range[1]);
+                    break;
+            }
+        }
+        return f;
+    }
+
+    private JPanel buildCard(Car c){
+        // Card panel
+        JPanel card = new JPanel(new BorderLayout(4,4));
+        card.setPreferredSize(new Dimension(240,360));
+        card.setBackground(Color.WHITE); 
+        card.setBorder(BorderFactory.createLineBorder(Color.LIGHT_GRAY,1,true));
+
+        // Car image
+        JLabel imgLabel = new JLabel();
+        imgLabel.setHorizontalAlignment(SwingConstants.CENTER);
+        imgLabel.setIcon(UIUtils.loadScaledIcon(c.imagePath, 220, 140));
+        card.add(imgLabel, BorderLayout.NORTH);
+
+        // Info panel
+        JPanel info = new JPanel(); 
+        info.setLayout(new BoxLayout(info, BoxLayout.Y_AXIS)); 
+        info.setBorder(new EmptyBorder(6,6,6,6));
+
+        JLabel lblName = new JLabel(c.name + " (" + c.model + ")");
+        lblName.setFont(new Font("Segoe UI", Font.BOLD, 14)); 
+        info.add(lblName);
+
+        // Random star rating
+        int stars = 3 + new Random().nextInt(3); 
+        StringBuilder sb = new StringBuilder();
+        for(int i=0;i<stars;i++) sb.append("★"); 
+        for(int i=stars;i<5;i++) sb.append("☆");
+        JLabel lblRating = new JLabel(sb.toString());
+        lblRating.setForeground(new Color(255,140,0)); 
+        info.add(lblRating);
+
+        // Car details
+        info.add(new JLabel("Seats: " + c.seats + " | Fuel: " + c.fuelType + " | Transmission: " + c.transmission));
+        info.add(new JLabel("Category: " + c.category));
+        info.add(new JLabel("Price/day: ₹" + UIUtils.MONEY.format(c.pricePerDay)));
+        double today = PricingEngine.dailyRate(c, LocalDate.now());
+        if(Math.abs(today - c.pricePerDay) >= 0.5) info.add(new JLabel("Today: ₹" + UIUtils.MONEY.format(today)));
+
+        // Status
+        JLabel lblStatus = new JLabel("Status: " + c.status);
+        lblStatus.setForeground("Available".equalsIgnoreCase(c.status) ? new Color(0,128,0) : Color.RED);
+        info.add(lblStatus);
+
+        // Admin sees owner
+        if(Auth.can(currentUser, Permission.VIEW_CAR_OWNERS)){
+            User owner = Repositories.get().findUserById(c.ownerId);
+            info.add(new JLabel("Owner: " + (owner != null ? owner.username : "Unknown")));
+        }
+
+        // User booking button
+        if(Auth.can(currentUser, Permission.BOOK_CARS)){
+            JButton bookBtn = new JButton("Book");
+            bookBtn.setEnabled("Available".equalsIgnoreCase(c.status));
+            bookBtn.addActionListener(e -> {
+                BookingDialog bd = new BookingDialog(parent, c, currentUser);
+                bd.setVisible(true);
+                // refreshAll happens inside the dialog confirmation!
+            });
+            info.add(bookBtn);
+        }
+
+        card.add(info, BorderLayout.CENTER);
+        return card;
+    }
+
+    // Runs the current query off the EDT; a newer keystroke cancels the search still in flight.
+    private void runSearch(){
+        debounce.stop();
+        if(pendingSearch != null) pendingSearch.cancel(true);
+        String query = txtSearch.getText();
+        SearchIndex idx = index;
+        pendingSearch = new SwingWorker<int[],Void>(){
+            private List<String> hints;
+            protected int[] doInBackground(){
+                int[] rows = idx.match(query);
+                hints = idx.suggest(rows, 8);
+                return rows;
+            }
+            protected void done(){
+                if(isCancelled() || idx != index) return;
+                try{
+                    showMatches(get());
+                    showSuggestions(query, hints);
+                }catch(Exception e){ e.printStackTrace(); }
+            }
+        };
+        pendingSearch.execute();
+    }
+
+    private void showSuggestions(String query, List<String> hints){
+        suggestions.setVisible(false);
+        suggestions.removeAll();
+        if(query.trim().isEmpty() || !txtSearch.isFocusOwner()) return;
+        if(hints.isEmpty() || (hints.size() == 1 && hints.get(0).equalsIgnoreCase(query.trim()))) return;
+        for(String h : hints){
+            JMenuItem item = new JMenuItem(h);
+            item.addActionListener(e -> txtSearch.setText(h));
+            suggestions.add(item);
+        }
+        suggestions.show(txtSearch, 0, txtSearch.getHeight());
+    }
 }
 
 
@@ -687,22 +4740,37 @@ public class CarRentalFull {
         JLabel lblTotal = new JLabel("Total Price: ₹" + UIUtils.MONEY.format(car.pricePerDay));
         add(lblTotal,gbc);
 
-        // Update total dynamically when spinner changes
-        spinDays.addChangeListener(e -> {
+        // Update total dynamically when the dates change
+        Runnable updateTotal = () -> {
             int days = (Integer)spinDays.getValue();
-            lblTotal.setText("Total Price: ₹" + UIUtils.MONEY.format(car.pricePerDay * days));
+            LocalDate pickup = Dates.parse(txtDate.getText());
+            lblTotal.setText(pickup == null ? "Total Price: enter a valid pickup date"
+                    : "Total Price: ₹" + UIUtils.MONEY.format(PricingEngine.quote(car, pickup, days)));
+        };
+        spinDays.addChangeListener(e -> updateTotal.run());
+        txtDate.getDocument().addDocumentListener(new DocumentListener(){
+            public void insertUpdate(DocumentEvent e){ updateTotal.run(); }
+            public void removeUpdate(DocumentEvent e){ updateTotal.run(); }
+            public void changedUpdate(DocumentEvent e){ updateTotal.run(); }
         });
+        updateTotal.run();
 
         // Confirm Booking Button
         gbc.gridy=5;
         JButton confirm = new JButton("Confirm Booking");
         confirm.addActionListener(e->{
+            if(!parent.requireSession(Permission.BOOK_CARS)) { dispose(); return; }
             int days = (Integer)spinDays.getValue();
-            double total = car.pricePerDay*days;
+            LocalDate pickup = Dates.parse(txtDate.getText());
+            if(pickup == null){
+                JOptionPane.showMessageDialog(this,"Enter the pickup date as dd/MM/yyyy.","Validation",JOptionPane.WARNING_MESSAGE);
+                return;
+            }
+            double total = PricingEngine.quote(car, pickup, days);
             
             // Booking status set to pending
-            DataStore.addBooking(new Booking(
-                DataStore.nextBookingId(),
+            Repositories.get().addBooking(new Booking(
+                Repositories.get().nextBookingId(),
                 car.id,
                 user.id,
                 txtPlace.getText().trim(),
@@ -720,18 +4788,125 @@ public class CarRentalFull {
     }
 }
 
+    // Prices every car shown in the browse view for one pickup date and length, with availability,
+    // cheapest bookable first. The quotes run off the EDT through BatchQuotes.
+    public static class CompareDialog extends JDialog {
+        private final MainFrame parent; private final User user; private final List<String> carIds;
+        private final Map<String,Car> carsById = new HashMap<>();
+        private final JTextField txtDate = new JTextField(LocalDate.now().format(DateTimeFormatter.ofPattern("dd/MM/uuuu")), 10);
+        private final JSpinner spinDays = new JSpinner(new SpinnerNumberModel(1,1,30,1));
+        private final JLabel lblStatus = new JLabel(" ");
+        private final JTable tbl;
+        private final ListTableModel<Integer,BatchQuotes.Result> model;
+        private SwingWorker<BatchQuotes.Result,Void> pending;
+        private BatchQuotes.Result shown;          // the quote the table rows index into
+
+        public CompareDialog(MainFrame parent, List<String> carIds, User user){
+            super(parent,"Compare Prices",true);
+            this.parent=parent; this.user=user; this.carIds=carIds;
+            setSize(720,480);
+            setLocationRelativeTo(parent);
+            setLayout(new BorderLayout());
+
+            JPanel top = new JPanel(new FlowLayout(FlowLayout.LEFT));
+            top.add(new JLabel("Pickup Date (dd/MM/yyyy):")); top.add(txtDate);
+            top.add(new JLabel("Days:")); top.add(spinDays);
+            JButton btnQuote = new JButton("Quote");
+            btnQuote.addActionListener(e -> runQuote());
+            txtDate.addActionListener(e -> runQuote());
+            spinDays.addChangeListener(e -> runQuote());
+            top.add(btnQuote);
+            add(top,BorderLayout.NORTH);
+
+            // Rows are indexes into the current Result; the Result is the table context.
+            model = new ListTableModel<>(i -> String.valueOf(i), List.of(
+                    new ListTableModel.Column<Integer,BatchQuotes.Result>("Car", (i,r) -> name(r.ids[i])),
+                    new ListTableModel.Column<Integer,BatchQuotes.Result>("Category", (i,r) -> { Car c = carsById.get(r.ids[i]); return c != null ? c.category : ""; }),
+                    new ListTableModel.Column<Integer,BatchQuotes.Result>("Price/Day (₹)", (i,r) -> { Car c = carsById.get(r.ids[i]); return c != null ? "₹" + UIUtils.MONEY.format(c.pricePerDay) : ""; }),
+                    new ListTableModel.Column<Integer,BatchQuotes.Result>("Total (₹)", (i,r) -> "₹" + UIUtils.MONEY.format(r.totals[i])),
+                    new ListTableModel.Column<Integer,BatchQuotes.Result>("Availability", (i,r) -> !r.availabilityKnown ? "Unknown" : r.isAvailable(i) ? "Available" : "Booked")));
+            tbl = new JTable(model);
+            tbl.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+            add(new JScrollPane(tbl),BorderLayout.CENTER);
+
+            JPanel bottom = new JPanel(new BorderLayout());
+            bottom.add(lblStatus,BorderLayout.CENTER);
+            if(Auth.can(user, Permission.BOOK_CARS)){
+                JButton btnBook = new JButton("Book");
+                btnBook.setEnabled(false);
+                tbl.getSelectionModel().addListSelectionListener(e -> {
+                    int row = tbl.getSelectedRow();
+                    btnBook.setEnabled(row >= 0 && shown != null && shown.isAvailable(model.getRow(row)));
+                });
+                btnBook.addActionListener(e -> {
+                    int row = tbl.getSelectedRow();
+                    if(row < 0) return;
+                    Car c = carsById.get(shown.ids[model.getRow(row)]);
+                    if(c == null) return;
+                    dispose();
+                    new BookingDialog(parent, c, user).setVisible(true);
+                });
+                bottom.add(btnBook,BorderLayout.EAST);
+            }
+            add(bottom,BorderLayout.SOUTH);
+            runQuote();
+        }
+
+        private String name(String id){ Car c = carsById.get(id); return c != null ? c.name + " " + c.model : id; }
+
+        // A new date or length cancels the quote still in flight.
+        private void runQuote(){
+            LocalDate pickup = Dates.parse(txtDate.getText());
+            if(pickup == null){ lblStatus.setText("Enter the pickup date as dd/MM/yyyy."); return; }
+            int days = (Integer)spinDays.getValue();
+            if(pending != null) pending.cancel(true);
+            lblStatus.setText("Quoting " + carIds.size() + " cars...");
+            pending = new SwingWorker<BatchQuotes.Result,Void>(){
+                private List<Car> cars;
+                protected BatchQuotes.Result doInBackground(){
+                    RentalRepository repo = Repositories.get();
+                    cars = repo.fetchCarsByIds(carIds);
+                    return BatchQuotes.quote(cars, repo.fetchBookedRanges(carIds), pickup, days);
+                }
+                protected void done(){
+                    if(isCancelled()) return;
+                    BatchQuotes.Result r;
+                    try{ r = get(); }catch(Exception e){ e.printStackTrace(); lblStatus.setText("Could not quote: " + e.getMessage()); return; }
+                    carsById.clear();
+                    for(Car c : cars) carsById.put(c.id, c);
+                    List<Integer> rows = new ArrayList<>(r.size());
+                    for(int i=0;i<r.size();i++) rows.add(i);
+                    rows.sort(Comparator.comparing((Integer i) -> !r.isAvailable(i)).thenComparingDouble(i -> r.totals[i]));
+                    shown = r;
+                    tbl.clearSelection();
+                    model.setRows(rows, r);
+                    lblStatus.setText(r.availabilityKnown
+                            ? r.availableCount() + " of " + r.size() + " cars free from " + txtDate.getText().trim() + " for " + days + " day(s)"
+                            : "Availability unknown: the booking service cannot be reached. Prices are still current.");
+                }
+            };
+            pending.execute();
+        }
+    }
+
     public static class SellerPanel extends JPanel {
         private MainFrame parent; private User currentUser;
-        private JTable tbl; private DefaultTableModel model;
+        private JTable tbl; private ListTableModel<Car,Void> model;
         public SellerPanel(MainFrame parent){
             this.parent=parent; setLayout(new BorderLayout());
 
             JLabel header = UIUtils.makeHeader("My Inventory");
             add(header,BorderLayout.NORTH);
 
-            model = new DefaultTableModel(new String[]{"ID","Name","Model","Price/Day","Status","Fuel","Seats","Transmission"},0){
-                public boolean isCellEditable(int r, int c){return false;} 
-            };
+            model = new ListTableModel<>(c -> c.id, List.of(
+                    new ListTableModel.Column<Car,Void>("ID", (c,x) -> c.id),
+                    new ListTableModel.Column<Car,Void>("Name", (c,x) -> c.name),
+                    new ListTableModel.Column<Car,Void>("Model", (c,x) -> c.model),
+                    new ListTableModel.Column<Car,Void>("Price/Day", (c,x) -> c.pricePerDay),
+                    new ListTableModel.Column<Car,Void>("Status", (c,x) -> c.status),
+                    new ListTableModel.Column<Car,Void>("Fuel", (c,x) -> c.fuelType),
+                    new ListTableModel.Column<Car,Void>("Seats", (c,x) -> c.seats),
+                    new ListTableModel.Column<Car,Void>("Transmission", (c,x) -> c.transmission)));
             tbl = new JTable(model);
             add(new JScrollPane(tbl),BorderLayout.CENTER);
 
@@ -746,20 +4921,19 @@ public class CarRentalFull {
         public void setCurrentUser(User u){this.currentUser=u; refresh();}
 
         private Car getSelectedCar(int row){
-            String id=(String)model.getValueAt(row,0);
-            return DataStore.findCarById(id);
+            return Repositories.get().findCarById(model.getRow(row).id);
         }
 
         public void refresh(){
-            model.setRowCount(0);
-            for(Car c:DataStore.fetchCars()){
-                if(currentUser.role.equals("seller") && !c.ownerId.equals(currentUser.id)) continue;
-                model.addRow(new Object[]{c.id, c.name, c.model, c.pricePerDay, c.status, c.fuelType, c.seats, c.transmission});
+            List<Car> mine = new ArrayList<>();
+            for(Car c:Repositories.get().fetchCars()){
+                if(Auth.canManageCar(currentUser,c)) mine.add(c);
             }
+            model.setRows(mine, null);
         }
 
         private void addOrEditCar(Car car){
-            if(car!=null && currentUser.role.equals("seller") && !car.ownerId.equals(currentUser.id)){
+            if(car!=null && !Auth.canManageCar(currentUser,car)){
                 JOptionPane.showMessageDialog(this,"You cannot edit this car.","Permission Denied",JOptionPane.WARNING_MESSAGE);
                 return;
             }
@@ -795,57 +4969,170 @@ public class CarRentalFull {
             panel.add(new JLabel("Image:")); panel.add(imgBtn);
 
             int ans = JOptionPane.showConfirmDialog(this,panel,car==null?"Add Car":"Edit Car",JOptionPane.OK_CANCEL_OPTION,JOptionPane.PLAIN_MESSAGE);
-            if(ans==JOptionPane.OK_OPTION){
+            if(ans==JOptionPane.OK_OPTION && parent.requireSession(Permission.MANAGE_OWN_CARS, Permission.MANAGE_ALL_CARS)){
                 try{
                     String newImg = imgLbl.getText().isEmpty()? (car!=null?car.imagePath:UIUtils.PLACEHOLDER_IMAGE)
                             :UIUtils.copyImageToStore(new File(imgLbl.getText()),UUID.randomUUID().toString()+".png");
                     Car newCar = new Car(
-                            car!=null?car.id:DataStore.nextCarId(),
+                            car!=null?car.id:Repositories.get().nextCarId(),
                             name.getText().trim(),
                             modelField.getText().trim(),
                             Double.parseDouble(price.getText().trim()),
                             category.getText().trim(),
                             (String)statusBox.getSelectedItem(),
                             newImg,
-                            currentUser.role.equals("seller")?currentUser.id: (car!=null?car.ownerId:currentUser.id),
+                            Auth.can(currentUser,Permission.MANAGE_ALL_CARS)? (car!=null?car.ownerId:currentUser.id) : currentUser.id,
                             fuel.getText().trim(),
                             Integer.parseInt(seats.getText().trim()),
                             trans.getText().trim()
                     );
-                    if(car==null) DataStore.addCar(newCar); else DataStore.updateCar(newCar);
+                    if(car==null) Repositories.get().addCar(newCar); else Repositories.get().updateCar(newCar);
                     refresh();
                 }catch(Exception e){JOptionPane.showMessageDialog(this,"Invalid input!","Error",JOptionPane.ERROR_MESSAGE);}
             }
         }
 
         private void deleteCar(Car car){
-            if(car!=null && currentUser.role.equals("seller") && !car.ownerId.equals(currentUser.id)){
+            if(car!=null && !Auth.canManageCar(currentUser,car)){
                 JOptionPane.showMessageDialog(this,"You cannot edit this car.","Permission Denied",JOptionPane.WARNING_MESSAGE);
                 return;
             }
             int ans = JOptionPane.showConfirmDialog(this,"Delete car "+car.name+"?","Confirm",JOptionPane.YES_NO_OPTION);
-            if(ans==JOptionPane.YES_OPTION){
-                DataStore.deleteCar(car.id); refresh();
+            if(ans==JOptionPane.YES_OPTION && parent.requireSession(Permission.MANAGE_OWN_CARS, Permission.MANAGE_ALL_CARS)){
+                Repositories.get().deleteCar(car.id); refresh();
             }
         }
     }
 
     public static class AdminPanel extends JPanel {
-        private JTable tbl; private DefaultTableModel model;
+        private JTable tbl; private ListTableModel<User,Void> model;
         public AdminPanel(MainFrame parent){
             setLayout(new BorderLayout());
             JLabel header = UIUtils.makeHeader("Registered Users"); add(header,BorderLayout.NORTH);
-            model = new DefaultTableModel(new String[]{"ID","Username","Role","Contact"},0){
-                public boolean isCellEditable(int r, int c){return false;} 
-            };
+            model = new ListTableModel<>(u -> u.id, List.of(
+                    new ListTableModel.Column<User,Void>("ID", (u,x) -> u.id),
+                    new ListTableModel.Column<User,Void>("Username", (u,x) -> u.username),
+                    new ListTableModel.Column<User,Void>("Role", (u,x) -> u.role),
+                    new ListTableModel.Column<User,Void>("Contact", (u,x) -> u.contact)));
             tbl = new JTable(model); add(new JScrollPane(tbl),BorderLayout.CENTER);
         }
 
         public void refresh(){
-            model.setRowCount(0);
-            for(User u:DataStore.fetchUsers()){
-                model.addRow(new Object[]{u.id,u.username,u.role,u.contact});
-            }
+            model.setRows(Repositories.get().fetchUsers(), null);
+        }
+    }
+    
+    // Admin reports over a date range; the aggregation runs off the EDT.
+    public static class ReportsPanel extends JPanel {
+        private final JTextField txtFrom = new JTextField(10), txtTo = new JTextField(10);
+        private final JLabel lblSummary = new JLabel(" ");
+        private final ListTableModel<Map.Entry<String,Double>,Void> sellerModel = revenueModel("Seller"), categoryModel = revenueModel("Category");
+        private final ListTableModel<Map.Entry<String,Double>,Void> utilizationModel;
+        private final ListTableModel<Map.Entry<LocalDate,Double>,Void> dayModel;
+        private final ListTableModel<Map.Entry<String,Integer>,Void> transitionModel = new ListTableModel<>(e -> e.getKey(), List.of(
+                new ListTableModel.Column<Map.Entry<String,Integer>,Void>("Status Change", (e,x) -> e.getKey()),
+                new ListTableModel.Column<Map.Entry<String,Integer>,Void>("Count", (e,x) -> e.getValue())));
+        private final JButton btnRun = new JButton("Run");
+        private static final DateTimeFormatter DATE = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+
+        public ReportsPanel(){
+            setLayout(new BorderLayout());
+            JPanel top = new JPanel(new BorderLayout());
+            top.add(UIUtils.makeHeader("Reports"), BorderLayout.NORTH);
+            JPanel range = new JPanel(new FlowLayout(FlowLayout.LEFT));
+            LocalDate today = LocalDate.now();
+            txtFrom.setText(today.minusYears(1).plusDays(1).format(DATE)); txtTo.setText(today.format(DATE));
+            range.add(new JLabel("From (dd/MM/yyyy):")); range.add(txtFrom);
+            range.add(new JLabel("To:")); range.add(txtTo);
+            range.add(btnRun);
+            JButton btnCheck = new JButton("Check / Rebuild Rollups");
+            btnCheck.addActionListener(e -> checkRollups());
+            range.add(btnCheck);
+            top.add(range, BorderLayout.CENTER);
+            lblSummary.setBorder(new EmptyBorder(4,10,4,10));
+            top.add(lblSummary, BorderLayout.SOUTH);
+            add(top, BorderLayout.NORTH);
+
+            utilizationModel = new ListTableModel<>(e -> e.getKey(), List.of(
+                    new ListTableModel.Column<Map.Entry<String,Double>,Void>("Category", (e,x) -> e.getKey()),
+                    new ListTableModel.Column<Map.Entry<String,Double>,Void>("Utilization", (e,x) -> String.format("%.1f%%", e.getValue() * 100))));
+            dayModel = new ListTableModel<>(e -> e.getKey().toString(), List.of(
+                    new ListTableModel.Column<Map.Entry<LocalDate,Double>,Void>("Day", (e,x) -> e.getKey().format(DATE)),
+                    new ListTableModel.Column<Map.Entry<LocalDate,Double>,Void>("Revenue (₹)", (e,x) -> "₹" + UIUtils.MONEY.format(e.getValue()))));
+
+            JTabbedPane views = new JTabbedPane();
+            views.addTab("Revenue by Seller", new JScrollPane(new JTable(sellerModel)));
+            views.addTab("Revenue by Category", new JScrollPane(new JTable(categoryModel)));
+            views.addTab("Revenue by Day", new JScrollPane(new JTable(dayModel)));
+            views.addTab("Utilization", new JScrollPane(new JTable(utilizationModel)));
+            views.addTab("Status Changes", new JScrollPane(new JTable(transitionModel)));
+            add(views, BorderLayout.CENTER);
+
+            btnRun.addActionListener(e -> refresh());
+        }
+
+        private static ListTableModel<Map.Entry<String,Double>,Void> revenueModel(String keyName){
+            return new ListTableModel<>(e -> e.getKey(), List.of(
+                    new ListTableModel.Column<Map.Entry<String,Double>,Void>(keyName, (e,x) -> e.getKey()),
+                    new ListTableModel.Column<Map.Entry<String,Double>,Void>("Revenue (₹)", (e,x) -> "₹" + UIUtils.MONEY.format(e.getValue()))));
+        }
+
+        public void refresh(){
+            LocalDate from, to;
+            try{ from = LocalDate.parse(txtFrom.getText().trim(), DATE); to = LocalDate.parse(txtTo.getText().trim(), DATE); }
+            catch(DateTimeParseException e){ JOptionPane.showMessageDialog(this,"Enter dates as dd/MM/yyyy.","Invalid Date",JOptionPane.ERROR_MESSAGE); return; }
+            if(to.isBefore(from)){ JOptionPane.showMessageDialog(this,"'To' must not be before 'From'.","Invalid Range",JOptionPane.ERROR_MESSAGE); return; }
+            btnRun.setEnabled(false);
+            lblSummary.setText("Computing...");
+            new SwingWorker<Analytics.Report,Void>(){
+                long started = System.nanoTime();
+                List<StateEvent> events;
+                @Override protected Analytics.Report doInBackground() throws SQLException {
+                    events = Repositories.get().fetchEvents(Timestamp.valueOf(from.atStartOfDay()), Timestamp.valueOf(to.plusDays(1).atStartOfDay()));
+                    return Repositories.get().report(from, to);
+                }
+                @Override protected void done(){
+                    btnRun.setEnabled(true);
+                    showTransitions(events);
+                    try{ show(get(), (System.nanoTime() - started) / 1_000_000); }
+                    catch(Exception ex){ ex.printStackTrace(); lblSummary.setText("Report failed: " + ex.getMessage()); }
+                }
+            }.execute();
+        }
+
+        private void show(Analytics.Report r, long millis){
+            sellerModel.setRows(byValueDesc(r.revenueBySeller), null);
+            categoryModel.setRows(byValueDesc(r.revenueByCategory), null);
+            utilizationModel.setRows(new ArrayList<>(r.utilizationByCategory.entrySet()), null);
+            List<Map.Entry<LocalDate,Double>> days = new ArrayList<>();
+            for(int i=0;i<r.revenueByDay.length;i++) if(r.revenueByDay[i] != 0) days.add(new AbstractMap.SimpleEntry<>(r.from.plusDays(i), r.revenueByDay[i]));
+            dayModel.setRows(days, null);
+            lblSummary.setText(String.format("<html>Revenue: <b>₹%s</b> &nbsp; Fleet utilization: <b>%.1f%%</b> &nbsp; "
+                + "Approval latency (%d decided): avg <b>%.1f h</b>, median %.1f h, p90 %.1f h &nbsp; <i>(%d ms)</i></html>",
+                UIUtils.MONEY.format(r.totalRevenue), r.utilization * 100, r.decided, r.avgLatencyHours, r.medianLatencyHours, r.p90LatencyHours, millis));
+        }
+
+        // Booking status changes in the range, e.g. "Pending → Confirmed"; empty where the backend keeps no history.
+        private void showTransitions(List<StateEvent> events){
+            Map<String,Integer> counts = new TreeMap<>();
+            if(events != null) for(StateEvent e : events) if("booking".equals(e.entity)) counts.merge((e.from == null ? "New" : e.from) + " → " + e.to, 1, Integer::sum);
+            transitionModel.setRows(new ArrayList<>(counts.entrySet()), null);
+        }
+
+        private void checkRollups(){
+            Map<String,Integer> mismatches = Repositories.get().checkDerivedData();
+            StringBuilder sb = new StringBuilder("<html>Rows differing from bookings:<br>");
+            boolean drift = false;
+            for(Map.Entry<String,Integer> e : mismatches.entrySet()){ sb.append(e.getKey()).append(": ").append(e.getValue()).append("<br>"); drift |= e.getValue() != 0; }
+            if(!drift){ JOptionPane.showMessageDialog(this, sb.append("Rollups are consistent.</html>").toString(), "Rollups", JOptionPane.INFORMATION_MESSAGE); return; }
+            int ok = JOptionPane.showConfirmDialog(this, sb.append("Rebuild rollups from bookings now?</html>").toString(), "Rollups", JOptionPane.YES_NO_OPTION);
+            if(ok == JOptionPane.YES_OPTION && Repositories.get().rebuildDerivedData()) refresh();
+        }
+
+        private static List<Map.Entry<String,Double>> byValueDesc(Map<String,Double> m){
+            List<Map.Entry<String,Double>> rows = new ArrayList<>(m.entrySet());
+            rows.sort(Map.Entry.<String,Double>comparingByValue().reversed());
+            return rows;
         }
     }
     
@@ -853,7 +5140,7 @@ public class CarRentalFull {
         private MainFrame parent; 
         private User currentUser;
         private JTable tbl; 
-        private DefaultTableModel model;
+        private ListTableModel<Booking,BookingLookup> model;
 
         public BookingHistoryPanel(MainFrame parent){
             this.parent=parent; 
@@ -862,9 +5149,15 @@ public class CarRentalFull {
             JLabel header = UIUtils.makeHeader("My Booking History");
             add(header,BorderLayout.NORTH);
 
-            model = new DefaultTableModel(new String[]{"Booking ID", "Car", "Days", "Status", "Pickup Place", "Date", "Time", "Total Price (₹)"}, 0){
-                public boolean isCellEditable(int row,int col){return false;}
-            };
+            model = new ListTableModel<>(b -> b.id, List.of(
+                    new ListTableModel.Column<Booking,BookingLookup>("Booking ID", (b,l) -> b.id),
+                    new ListTableModel.Column<Booking,BookingLookup>("Car", (b,l) -> l.carName(b.carId)),
+                    new ListTableModel.Column<Booking,BookingLookup>("Days", (b,l) -> b.days),
+                    new ListTableModel.Column<Booking,BookingLookup>("Status", (b,l) -> b.status),
+                    new ListTableModel.Column<Booking,BookingLookup>("Pickup Place", (b,l) -> b.pickupPlace),
+                    new ListTableModel.Column<Booking,BookingLookup>("Date", (b,l) -> b.pickupDate),
+                    new ListTableModel.Column<Booking,BookingLookup>("Time", (b,l) -> b.pickupTime),
+                    new ListTableModel.Column<Booking,BookingLookup>("Total Price (₹)", (b,l) -> "₹" + UIUtils.MONEY.format(b.totalPrice))));
             tbl = new JTable(model);
             add(new JScrollPane(tbl),BorderLayout.CENTER);
         }
@@ -872,28 +5165,9 @@ public class CarRentalFull {
         public void setCurrentUser(User u){this.currentUser=u; refresh();}
 
         public void refresh(){
-            model.setRowCount(0);
             if(currentUser == null) return;
-            
-            List<Booking> bookings = DataStore.fetchBookingsByUserId(currentUser.id);
-            
-            for(Booking b : bookings){
-                Car car = DataStore.findCarById(b.carId);
-                String carName = (car != null) ? car.name + " (" + car.model + ")" : "Unknown Car";
-                String totalPrice = "₹" + UIUtils.MONEY.format(b.totalPrice);
-                
-                model.addRow(new Object[]{
-                    b.id, 
-                    carName, 
-                    b.days,
-                    b.status, // Show status here
-                    b.pickupPlace, 
-                    b.pickupDate, 
-                    b.pickupTime, 
-                    totalPrice
-                });
-            }
-            model.fireTableDataChanged();
+            List<Booking> bookings = Repositories.get().fetchBookingsByUserId(currentUser.id);
+            model.setRows(bookings, new BookingLookup(Repositories.get().fetchCars(), Collections.emptyList()));
         }
     }
     
@@ -902,17 +5176,23 @@ public class CarRentalFull {
         private MainFrame parent;
         private User currentUser;
         private JTable tbl; 
-        private DefaultTableModel model;
+        private ListTableModel<Booking,BookingLookup> model;   // sellers: their own cars' bookings
+        private PagedBookingModel pagedModel = new PagedBookingModel(); // admins: every booking, loaded lazily
+        private JLabel header;
         private JButton btnApprove;
         private JButton btnReject;
+        private JButton btnHistory;
         private int selectedRow = -1;
+        private static final DateTimeFormatter HISTORY_TIME = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
 
         public AllBookingsPanel(MainFrame parent){
             this.parent = parent;
             setLayout(new BorderLayout());
             
-            model = new DefaultTableModel(); // Initialize here, headers set in refresh()
+            model = new ListTableModel<>(b -> b.id, columnsFor(false)); // columns switch per role in setCurrentUser()
             tbl = new JTable(model); 
+            header = UIUtils.makeHeader("Bookings");
+            add(header, BorderLayout.NORTH);
 
             // Control Panel for Approval/Rejection
             btnApprove = new JButton("Approve");
@@ -920,11 +5200,25 @@ public class CarRentalFull {
             
             btnApprove.addActionListener(e -> handleBookingAction("Confirmed"));
             btnReject.addActionListener(e -> handleBookingAction("Rejected"));
+            btnHistory = new JButton("History");
+            btnHistory.setEnabled(false);
+            btnHistory.addActionListener(e -> showHistory());
             
             JPanel controlPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+            controlPanel.add(btnHistory);
             controlPanel.add(btnApprove);
             controlPanel.add(btnReject);
 
+            tbl.getTableHeader().addMouseListener(new MouseAdapter(){
+                public void mouseClicked(MouseEvent e){
+                    int col = tbl.columnAtPoint(e.getPoint());
+                    if(tbl.getModel() != pagedModel || col < 0) return;
+                    // The selected index would point at a different booking once re-sorted.
+                    tbl.clearSelection(); selectedRow = -1; updateControlButtons();
+                    pagedModel.sortBy(tbl.convertColumnIndexToModel(col));
+                }
+            });
+
             tbl.getSelectionModel().addListSelectionListener(e -> {
                 if (!e.getValueIsAdjusting() && tbl.getSelectedRow() != -1) {
                     selectedRow = tbl.convertRowIndexToModel(tbl.getSelectedRow());
@@ -936,16 +5230,48 @@ public class CarRentalFull {
             add(new JScrollPane(tbl), BorderLayout.CENTER);
         }
 
-        public void setCurrentUser(User u){this.currentUser=u; refresh();}
+        // Admins see the car owner's contact, sellers the buyer's.
+        private static List<ListTableModel.Column<Booking,BookingLookup>> columnsFor(boolean viewAll){
+            return List.of(
+                    new ListTableModel.Column<Booking,BookingLookup>("Booking ID", (b,l) -> b.id),
+                    new ListTableModel.Column<Booking,BookingLookup>("Car ID", (b,l) -> b.carId),
+                    new ListTableModel.Column<Booking,BookingLookup>("Status", (b,l) -> b.status),
+                    new ListTableModel.Column<Booking,BookingLookup>("Buyer", (b,l) -> { User u = l.users.get(b.userId); return u != null ? u.username : "Unknown Buyer"; }),
+                    viewAll
+                        ? new ListTableModel.Column<Booking,BookingLookup>("Owner Contact", (b,l) -> { User o = l.owner(b.carId); return o != null ? o.contact : "N/A"; })
+                        : new ListTableModel.Column<Booking,BookingLookup>("Buyer Contact", (b,l) -> { User u = l.users.get(b.userId); return u != null ? u.contact : "N/A"; }),
+                    new ListTableModel.Column<Booking,BookingLookup>("Date", (b,l) -> b.pickupDate),
+                    new ListTableModel.Column<Booking,BookingLookup>("Time", (b,l) -> b.pickupTime),
+                    new ListTableModel.Column<Booking,BookingLookup>("Days", (b,l) -> b.days),
+                    new ListTableModel.Column<Booking,BookingLookup>("Total Price (₹)", (b,l) -> "₹" + UIUtils.MONEY.format(b.totalPrice)));
+        }
+
+        public void setCurrentUser(User u){
+            this.currentUser=u;
+            boolean viewAll = Auth.can(u, Permission.VIEW_ALL_BOOKINGS);
+            header.setText(viewAll ? "All System Bookings" : "Bookings for My Cars");
+            model.setRows(Collections.emptyList(), null);
+            model.setColumns(columnsFor(viewAll));
+            tbl.setModel(viewAll ? pagedModel : model);
+            selectedRow = -1;
+            refresh();
+        }
         
+        private Booking selectedBooking() {
+            if (selectedRow < 0 || selectedRow >= tbl.getModel().getRowCount()) return null;
+            if (tbl.getModel() == pagedModel) { BookingRow r = pagedModel.getRow(selectedRow); return r != null ? r.booking : null; }
+            return model.getRow(selectedRow);
+        }
+
         private void updateControlButtons() {
-            if (selectedRow >= 0 && model.getColumnCount() > 0) {
-                // Status is the 3rd column (index 2) in the data structure
-                Object statusValue = model.getValueAt(selectedRow, 2); 
-                boolean isPending = "Pending".equals(statusValue);
+            Booking selected = selectedBooking();
+            if (selected == null) selectedRow = -1;
+            btnHistory.setEnabled(selectedRow >= 0);
+            if (selectedRow >= 0) {
+                boolean isPending = "Pending".equals(selected.status);
                 
                 // Only show buttons for Sellers if the booking is Pending
-                if (currentUser.role.equals("seller")) {
+                if (Auth.can(currentUser, Permission.APPROVE_BOOKINGS)) {
                     btnApprove.setVisible(true);
                     btnReject.setVisible(true);
                     btnApprove.setEnabled(isPending);
@@ -957,7 +5283,7 @@ public class CarRentalFull {
             } else {
                 btnApprove.setEnabled(false);
                 btnReject.setEnabled(false);
-                if (currentUser!=null && !currentUser.role.equals("admin")) { // Hide buttons if nothing is selected and not admin
+                if (currentUser!=null && !Auth.can(currentUser, Permission.VIEW_ALL_BOOKINGS)) { // Hide buttons if nothing is selected and not admin
                     btnApprove.setVisible(false);
                     btnReject.setVisible(false);
                 }
@@ -965,20 +5291,33 @@ public class CarRentalFull {
         }
         
         private void handleBookingAction(String action) {
-            if (selectedRow < 0) return;
+            Booking booking = selectedBooking();
+            if (booking == null || !parent.requireSession(Permission.APPROVE_BOOKINGS)) return;
             
-            String bookingId = (String)model.getValueAt(selectedRow, 0);
-            String carId = (String)model.getValueAt(selectedRow, 1); // Car ID is the 2nd column (index 1)
+            String bookingId = booking.id;
+            String carId = booking.carId;
 
-            // 1. Update Booking Status in DB
-            DataStore.updateBookingStatus(bookingId, action);
+            // 1. Update Booking Status in DB, only if nobody decided (or expired) it since the list was loaded
+            boolean changed;
+            try { changed = Repositories.get().changeBookingStatus(bookingId, "Pending", action); }
+            catch (SQLException ex) {
+                ex.printStackTrace();
+                JOptionPane.showMessageDialog(this, "DB Error: Could not update booking " + bookingId + ".", "DB Write Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            if (!changed) {
+                JOptionPane.showMessageDialog(this, "Booking " + bookingId + " was changed by someone else and is no longer pending. The list has been refreshed; please check it and try again.",
+                        "Booking Changed", JOptionPane.WARNING_MESSAGE);
+                parent.refreshAll();
+                return;
+            }
             
             // 2. If Confirmed, update Car Status to Rented
             if (action.equals("Confirmed")) {
-                Car currentCar = DataStore.findCarById(carId); 
+                Car currentCar = Repositories.get().findCarById(carId); 
                 if (currentCar != null) {
                     currentCar.status = "Rented";
-                    DataStore.updateCar(currentCar);
+                    Repositories.get().updateCar(currentCar);
                 }
             }
             
@@ -986,56 +5325,216 @@ public class CarRentalFull {
             parent.refreshAll();
         }
 
+        private void showHistory() {
+            Booking booking = selectedBooking();
+            if (booking == null) return;
+            List<StateEvent> events = Repositories.get().fetchHistory(booking.id);
+            if (events.isEmpty()) { JOptionPane.showMessageDialog(this, "No history recorded for booking " + booking.id + ".", "History", JOptionPane.INFORMATION_MESSAGE); return; }
+            StringBuilder sb = new StringBuilder("<html><table><tr><th align=left>When</th><th align=left>From</th><th align=left>To</th></tr>");
+            for (StateEvent e : events) {
+                sb.append("<tr><td>").append(HISTORY_TIME.format(e.at.toLocalDateTime())).append("</td><td>").append(e.from == null ? "-" : e.from)
+                  .append("</td><td>").append(e.to).append("</td></tr>");
+            }
+            JOptionPane.showMessageDialog(this, sb.append("</table></html>").toString(), "History of " + booking.id, JOptionPane.INFORMATION_MESSAGE);
+        }
+
         public void refresh(){
             if(currentUser == null) return;
+            if(tbl.getModel() == pagedModel){ pagedModel.reload(); updateControlButtons(); return; }
             
-            // 1. Define Headers: Status is the 3rd column (index 2)
-            String[] headers = currentUser.role.equals("admin") 
-                ? new String[]{"Booking ID", "Car ID", "Status", "Buyer", "Owner Contact", "Date", "Time", "Days", "Total Price (₹)"}
-                : new String[]{"Booking ID", "Car ID", "Status", "Buyer", "Buyer Contact", "Date", "Time", "Days", "Total Price (₹)"};
-            
-            model = new DefaultTableModel(headers, 0);
-            tbl.setModel(model);
-            
-            add(UIUtils.makeHeader(currentUser.role.equals("admin") ? "All System Bookings" : "Bookings for My Cars"), BorderLayout.NORTH);
-            
-            List<Booking> allBookings = DataStore.fetchBookings(); 
-            
-            for(Booking b : allBookings){
-                Car car = DataStore.findCarById(b.carId);
-                User buyer = DataStore.findUserById(b.userId);
-                User owner = (car != null) ? DataStore.findUserById(car.ownerId) : null;
-                
+            BookingLookup lookup = new BookingLookup(Repositories.get().fetchCars(), Repositories.get().fetchUsers());
+            List<Booking> visible = new ArrayList<>();
+            for(Booking b : Repositories.get().fetchBookings()){
                 // SELLER FILTER: Only show bookings for cars they own
-                if (currentUser.role.equals("seller") && (car == null || !car.ownerId.equals(currentUser.id))) {
-                    continue; 
+                if (Auth.canSeeBookingFor(currentUser, lookup.cars.get(b.carId))) visible.add(b);
+            }
+            model.setRows(visible, lookup);
+            updateControlButtons();
+        }
+    }
+
+
+    // ---------------- Table Models ----------------
+    // Table model backed directly by a list of domain objects; cells are read from the objects on
+    // demand, so no Object[] per row is built. setRows() diffs the new list against the old one and
+    // fires row-level events. C is a lookup context (e.g. cars/users by id) that derived columns read;
+    // old rows are compared under the old context so a renamed car still repaints its bookings.
+    public static class ListTableModel<T,C> extends AbstractTableModel {
+        public static class Column<T,C> {
+            final String name; final BiFunction<T,C,Object> value;
+            public Column(String name, BiFunction<T,C,Object> value){ this.name=name; this.value=value; }
+        }
+
+        private final Function<T,String> id;
+        private List<Column<T,C>> columns;
+        private List<T> rows = new ArrayList<>();
+        private C context;
+
+        public ListTableModel(Function<T,String> id, List<Column<T,C>> columns){ this.id=id; this.columns=columns; }
+
+        public void setColumns(List<Column<T,C>> columns){ this.columns=columns; fireTableStructureChanged(); }
+
+        public T getRow(int row){ return rows.get(row); }
+        public int getRowCount(){ return rows.size(); }
+        public int getColumnCount(){ return columns.size(); }
+        public String getColumnName(int col){ return columns.get(col).name; }
+        public Object getValueAt(int row, int col){ return columns.get(col).value.apply(rows.get(row), context); }
+
+        public void setRows(List<T> next, C nextContext){
+            List<T> prev = rows; C prevContext = context;
+            rows = new ArrayList<>(next); context = nextContext;
+            int p = prev.size(), n = rows.size();
+            // A single insert or delete (new booking, deleted car) shifts rows: report just that row.
+            if(Math.abs(p - n) == 1){
+                int k = firstIdMismatch(prev, rows);
+                List<T> longer = p > n ? prev : rows, shorter = p > n ? rows : prev;
+                if(sameIds(longer, k + 1, shorter, k)){
+                    if(p > n) fireTableRowsDeleted(k, k); else fireTableRowsInserted(k, k);
+                    fireChangedRanges(prev, prevContext, p > n ? k + 1 : k, p > n ? k : k + 1, Math.min(p, n) - k);
+                    fireChangedRanges(prev, prevContext, 0, 0, k);
+                    return;
                 }
+            }
+            int common = Math.min(p, n);
+            fireChangedRanges(prev, prevContext, 0, 0, common);
+            if(n > p) fireTableRowsInserted(p, n - 1);
+            else if(p > n) fireTableRowsDeleted(n, p - 1);
+        }
 
-                String carName = (car != null) ? car.name + " (" + car.model + ")" : "Unknown Car";
-                String buyerName = (buyer != null) ? buyer.username : "Unknown Buyer";
-                String buyerContact = (buyer != null) ? buyer.contact : "N/A";
-                String ownerContact = (owner != null) ? owner.contact : "N/A";
-                
-                Object[] rowData;
-                // Note: We use car.id for the table column data, which is index 1.
-                if (currentUser.role.equals("admin")) {
-                    rowData = new Object[]{
-                        b.id, car.id, b.status, buyerName, ownerContact, b.pickupDate, b.pickupTime, b.days, "₹" + UIUtils.MONEY.format(b.totalPrice)
-                    };
-                } else { // Seller
-                    rowData = new Object[]{
-                        b.id, car.id, b.status, buyerName, buyerContact, b.pickupDate, b.pickupTime, b.days, "₹" + UIUtils.MONEY.format(b.totalPrice)
-                    };
-                }
-                model.addRow(rowData);
+        // Compares prev[prevFrom+i] with rows[nextFrom+i] and fires one update per run of changed rows.
+        private void fireChangedRanges(List<T> prev, C prevContext, int prevFrom, int nextFrom, int count){
+            int runStart = -1;
+            for(int i=0;i<count;i++){
+                boolean changed = !sameRow(prev.get(prevFrom + i), prevContext, rows.get(nextFrom + i), context);
+                if(changed && runStart < 0) runStart = nextFrom + i;
+                if(!changed && runStart >= 0){ fireTableRowsUpdated(runStart, nextFrom + i - 1); runStart = -1; }
             }
-            updateControlButtons();
-            model.fireTableDataChanged();
-            revalidate();
-            repaint();
+            if(runStart >= 0) fireTableRowsUpdated(runStart, nextFrom + count - 1);
+        }
+
+        private boolean sameRow(T a, C ca, T b, C cb){
+            if(!id.apply(a).equals(id.apply(b))) return false;
+            for(Column<T,C> col : columns) if(!Objects.equals(col.value.apply(a, ca), col.value.apply(b, cb))) return false;
+            return true;
+        }
+
+        private int firstIdMismatch(List<T> a, List<T> b){
+            int k = 0, m = Math.min(a.size(), b.size());
+            while(k < m && id.apply(a.get(k)).equals(id.apply(b.get(k)))) k++;
+            return k;
+        }
+
+        private boolean sameIds(List<T> a, int from, List<T> b, int bFrom){
+            if(a.size() - from != b.size() - bFrom) return false;
+            for(int i=from, j=bFrom; i<a.size(); i++, j++) if(!id.apply(a.get(i)).equals(id.apply(b.get(j)))) return false;
+            return true;
+        }
+    }
+
+    // Admin "All System Bookings" model: only COUNT(*) is read up front; rows are fetched in pages
+    // on a background thread as the table asks for them. A small LRU keeps recent pages, the page
+    // after the one being viewed is prefetched, and header clicks re-sort on the server.
+    public static class PagedBookingModel extends AbstractTableModel {
+        private static final int PAGE_SIZE = 200, MAX_PAGES = 16;
+        private static final String[] COLUMNS = {"Booking ID", "Car ID", "Status", "Buyer", "Owner Contact", "Date", "Time", "Days", "Total Price (₹)"};
+        private static final ExecutorService LOADER = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "booking-pages"); t.setDaemon(true); return t;
+        });
+
+        private final Map<Integer,List<BookingRow>> pages = new LinkedHashMap<Integer,List<BookingRow>>(MAX_PAGES, 0.75f, true){
+            protected boolean removeEldestEntry(Map.Entry<Integer,List<BookingRow>> e){ return size() > MAX_PAGES; }
+        };
+        private final Set<Integer> loading = new HashSet<>();
+        private final Map<Integer,Long> failed = new HashMap<>(); // page -> when its last load failed; retried after RETRY_MILLIS
+        private static final long RETRY_MILLIS = 5000;
+        private int rowCount, sortColumn, generation;
+        private boolean ascending = true;
+
+        public int getRowCount(){ return rowCount; }
+        public int getColumnCount(){ return COLUMNS.length; }
+        public String getColumnName(int col){ return COLUMNS[col]; }
+
+        public Object getValueAt(int row, int col){
+            BookingRow r = getRow(row);
+            if(r == null) return col != 0 ? null : failed.containsKey(row / PAGE_SIZE) ? "Unavailable" : "Loading...";
+            Booking b = r.booking;
+            switch(col){
+                case 0: return b.id;
+                case 1: return b.carId;
+                case 2: return b.status;
+                case 3: return r.buyerName != null ? r.buyerName : "Unknown Buyer";
+                case 4: return r.ownerContact != null ? r.ownerContact : "N/A";
+                case 5: return b.pickupDate;
+                case 6: return b.pickupTime;
+                case 7: return b.days;
+                default: return "₹" + UIUtils.MONEY.format(b.totalPrice);
+            }
+        }
+
+        // Null while the row's page is still loading.
+        public BookingRow getRow(int row){
+            int page = row / PAGE_SIZE;
+            List<BookingRow> rows = pages.get(page);
+            if(rows == null){ request(page); return null; }
+            if((row + 1) % PAGE_SIZE == PAGE_SIZE / 2) request(page + 1); // halfway down: prefetch the next block
+            int i = row % PAGE_SIZE;
+            return i < rows.size() ? rows.get(i) : null;
+        }
+
+        // Re-reads the row count and drops cached pages; call on refresh.
+        public void reload(){
+            int gen = ++generation;
+            pages.clear(); loading.clear(); failed.clear();
+            LOADER.execute(() -> {
+                int count = Repositories.get().countBookings();
+                SwingUtilities.invokeLater(() -> {
+                    if(gen != generation) return;
+                    rowCount = count;
+                    fireTableDataChanged();
+                });
+            });
+        }
+
+        // Clicking the same column again flips the direction.
+        public void sortBy(int column){
+            if(column == sortColumn) ascending = !ascending; else { sortColumn = column; ascending = true; }
+            generation++;
+            pages.clear(); loading.clear(); failed.clear();
+            fireTableDataChanged();
+        }
+
+        private void request(int page){
+            if(page * PAGE_SIZE >= rowCount || pages.containsKey(page)) return;
+            Long failedAt = failed.get(page);
+            if(failedAt != null && System.currentTimeMillis() - failedAt < RETRY_MILLIS) return;
+            if(!loading.add(page)) return;
+            int gen = generation, column = sortColumn; boolean asc = ascending;
+            LOADER.execute(() -> {
+                List<BookingRow> rows = Repositories.get().fetchBookingRows(column, asc, page * PAGE_SIZE, PAGE_SIZE);
+                SwingUtilities.invokeLater(() -> {
+                    if(gen != generation) return; // sorted or reloaded meanwhile
+                    loading.remove(page);
+                    // A failed read is not cached: the rows show "Unavailable" and the next repaint after RETRY_MILLIS retries.
+                    if(rows == null) failed.put(page, System.currentTimeMillis());
+                    else { failed.remove(page); pages.put(page, rows); }
+                    int first = page * PAGE_SIZE, last = Math.min(rowCount, first + PAGE_SIZE) - 1;
+                    if(first <= last) fireTableRowsUpdated(first, last);
+                });
+            });
         }
     }
 
+    // Cars and users by id, fetched once per refresh instead of one findCarById/findUserById per row.
+    public static class BookingLookup {
+        public final Map<String,Car> cars = new HashMap<>();
+        public final Map<String,User> users = new HashMap<>();
+        public BookingLookup(List<Car> cars, List<User> users){
+            for(Car c : cars) this.cars.put(c.id, c);
+            for(User u : users) this.users.put(u.id, u);
+        }
+        String carName(String carId){ Car car = cars.get(carId); return car != null ? car.name + " (" + car.model + ")" : "Unknown Car"; }
+        User owner(String carId){ Car car = cars.get(carId); return car != null ? users.get(car.ownerId) : null; }
+    }
 
     public static class WrapLayout extends FlowLayout {
         public WrapLayout(){super();}
@@ -1074,6 +5573,13 @@ public class CarRentalFull {
 
     public static void main(String[] args){
         UIUtils.ensureImagesFolder();
+        Integer catalogPort = Integer.getInteger("carrental.catalogPort");
+        if(catalogPort != null){
+            try{ CatalogSnapshot.listen(catalogPort); }catch(IOException e){ System.err.println("Could not open the catalog endpoint: " + e.getMessage()); }
+        }
         SwingUtilities.invokeLater(()->new MainFrame().setVisible(true));
+        // Only the Postgres-backed repositories keep scheduled_events; the others have nothing to fire.
+        String backend = System.getProperty("carrental.backend", "postgres").toLowerCase();
+        if(backend.equals("postgres") || backend.equals("offline")) LifecycleScheduler.start();
     }
 }
@@ -19,10 +19,16 @@ import java.awt.*;
 import java.awt.event.*;
 import java.awt.image.BufferedImage;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
 import java.text.DecimalFormat;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
 
 public class CarRentalMultiRole {
 
@@ -58,48 +64,458 @@ public class CarRentalMultiRole {
     }
 
     // ----------------------- Services (in-memory) -----------------------
+    // Users and cars live in hash indexes (by id, by lower-cased username, by status) so lookups,
+    // updates and deletes are O(1). One read/write lock keeps the indexes consistent with each other.
     public static class DataStore {
-        private static final List<User> users = new ArrayList<>();
-        private static final List<Car> cars = new ArrayList<>();
+        private static final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private static final Map<String, User> usersById = new LinkedHashMap<>();
+        private static final Map<String, User> usersByName = new HashMap<>();
+        private static final Map<String, Car> carsById = new LinkedHashMap<>(); // insertion order = display order
+        private static final Map<String, Set<String>> carIdsByStatus = new HashMap<>();
+        // status each car was indexed under; callers may mutate a Car before passing it to updateCar
+        private static final Map<String, String> indexedStatus = new HashMap<>();
+        private static int maxCarNumber = 0;
 
         static {
-            // demo users (username, password)
-            users.add(new User("U001", "admin@demo", "admin123", "admin"));
-            users.add(new User("U002", "user@demo", "user123", "user"));
-            users.add(new User("U003", "seller@demo", "seller123", "seller"));
-
-            // sample cars (with no images initially)
-            cars.add(new Car("C001", "Toyota Camry", 3500.0, "Available", null));
-            cars.add(new Car("C002", "Honda Civic", 3200.0, "Available", null));
-            cars.add(new Car("C003", "Ford Mustang", 7000.0, "Sold", null));
+            // with -Dcarrental.journal the previous session's data is recovered instead of seeding demo data
+            if (!Journal.open()) {
+                // demo users (username, password)
+                addUser(new User("U001", "admin@demo", "admin123", "admin"));
+                addUser(new User("U002", "user@demo", "user123", "user"));
+                addUser(new User("U003", "seller@demo", "seller123", "seller"));
+
+                // sample cars (with no images initially)
+                addCar(new Car("C001", "Toyota Camry", 3500.0, "Available", null));
+                addCar(new Car("C002", "Honda Civic", 3200.0, "Available", null));
+                addCar(new Car("C003", "Ford Mustang", 7000.0, "Sold", null));
+            }
         }
 
         public static Optional<User> authenticate(String username, String password, String role) {
-            return users.stream()
-                    .filter(u -> u.username.equalsIgnoreCase(username) && u.password.equals(password) && u.role.equalsIgnoreCase(role))
-                    .findFirst();
+            lock.readLock().lock();
+            try {
+                User u = usersByName.get(username.toLowerCase(Locale.ROOT));
+                if (u != null && u.password.equals(password) && u.role.equalsIgnoreCase(role)) return Optional.of(u);
+                return Optional.empty();
+            } finally { lock.readLock().unlock(); }
+        }
+
+        // Mutations are journaled and then applied under the write lock (so the journal order is the apply
+        // order), then wait for the group commit outside it so concurrent writers share one fsync. Once the
+        // journal has failed, append refuses and nothing more is applied: the store becomes read-only.
+        // Returns false when the username is already taken or the change could not be saved.
+        public static boolean addUser(User u) {
+            long ticket;
+            lock.writeLock().lock();
+            try {
+                if (usersByName.containsKey(u.username.toLowerCase(Locale.ROOT))) return false;
+                ticket = Journal.append(Journal.ADD_USER, out -> writeUser(out, u));
+                if (ticket >= 0) applyAddUser(u);
+            } finally { lock.writeLock().unlock(); }
+            return Journal.await(ticket);
+        }
+
+        private static void applyAddUser(User u) {
+            usersById.put(u.id, u);
+            User previous = usersByName.put(u.username.toLowerCase(Locale.ROOT), u);
+            if (previous != null && !previous.id.equals(u.id)) usersById.remove(previous.id); // one user per name
+        }
+
+        public static List<User> fetchUsers() {
+            lock.readLock().lock();
+            try { return new ArrayList<>(usersById.values()); } finally { lock.readLock().unlock(); }
+        }
+
+        public static List<Car> fetchCars() {
+            lock.readLock().lock();
+            try { return new ArrayList<>(carsById.values()); } finally { lock.readLock().unlock(); }
+        }
+
+        public static List<Car> fetchCarsByStatus(String status) {
+            lock.readLock().lock();
+            try {
+                List<Car> out = new ArrayList<>();
+                for (String id : carIdsByStatus.getOrDefault(key(status), Collections.emptySet())) out.add(carsById.get(id));
+                return out;
+            } finally { lock.readLock().unlock(); }
+        }
+
+        // The statuses cars currently have, as the first car indexed under each one spells it.
+        public static List<String> fetchStatuses() {
+            lock.readLock().lock();
+            try {
+                List<String> out = new ArrayList<>();
+                for (Set<String> ids : carIdsByStatus.values()) out.add(carsById.get(ids.iterator().next()).status);
+                out.sort(String.CASE_INSENSITIVE_ORDER);
+                return out;
+            } finally { lock.readLock().unlock(); }
+        }
+
+        public static Car findCarById(String id) {
+            lock.readLock().lock();
+            try { return carsById.get(id); } finally { lock.readLock().unlock(); }
+        }
+
+        // A car without an id gets the next free one, allocated under the write lock so two saves can't
+        // both take it. Returns the car's id, or null if the change could not be saved.
+        public static String addCar(Car c) {
+            long ticket;
+            lock.writeLock().lock();
+            try {
+                if (c.id == null) c.id = String.format("C%03d", maxCarNumber + 1);
+                ticket = Journal.append(Journal.ADD_CAR, out -> writeCar(out, c));
+                if (ticket >= 0) applyAddCar(c);
+            } finally { lock.writeLock().unlock(); }
+            return Journal.await(ticket) ? c.id : null;
+        }
+
+        // False if there is no such car or the change could not be saved.
+        public static boolean updateCar(Car updated) {
+            long ticket;
+            lock.writeLock().lock();
+            try {
+                if (!carsById.containsKey(updated.id)) return false;
+                ticket = Journal.append(Journal.UPDATE_CAR, out -> writeCar(out, updated));
+                if (ticket >= 0) applyUpdateCar(updated);
+            } finally { lock.writeLock().unlock(); }
+            return Journal.await(ticket);
+        }
+
+        public static boolean deleteCar(String id) {
+            long ticket;
+            lock.writeLock().lock();
+            try {
+                if (!carsById.containsKey(id)) return false;
+                ticket = Journal.append(Journal.DELETE_CAR, out -> out.writeUTF(id));
+                if (ticket >= 0) applyDeleteCar(id);
+            } finally { lock.writeLock().unlock(); }
+            return Journal.await(ticket);
+        }
+
+        private static void applyAddCar(Car c) {
+            carsById.put(c.id, c);
+            index(c);
+            maxCarNumber = Math.max(maxCarNumber, idNumber(c.id));
+        }
+
+        private static boolean applyUpdateCar(Car updated) {
+            if (!carsById.containsKey(updated.id)) return false;
+            unindex(updated.id);
+            carsById.put(updated.id, updated); // replaces in place, keeping the original position
+            index(updated);
+            return true;
+        }
+
+        private static boolean applyDeleteCar(String id) {
+            if (carsById.remove(id) == null) return false;
+            unindex(id);
+            return true;
+        }
+
+        // ---- journal encoding; replay and snapshot loading run before the UI starts, single-threaded ----
+        static void replay(byte op, DataInputStream in) throws IOException {
+            switch (op) {
+                case Journal.ADD_USER: applyAddUser(readUser(in)); break;
+                case Journal.ADD_CAR: applyAddCar(readCar(in)); break;
+                case Journal.UPDATE_CAR: applyUpdateCar(readCar(in)); break;
+                case Journal.DELETE_CAR: applyDeleteCar(in.readUTF()); break;
+                default: throw new IOException("Unknown journal op " + op);
+            }
+        }
+
+        // Serialised under the write lock: callers may still mutate Car objects after they are stored.
+        static byte[] writeState() throws IOException {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bos)) {
+                out.writeInt(usersById.size());
+                for (User u : usersById.values()) writeUser(out, u);
+                out.writeInt(carsById.size());
+                for (Car c : carsById.values()) writeCar(out, c);
+            }
+            return bos.toByteArray();
+        }
+
+        static void readState(DataInputStream in) throws IOException {
+            for (int i = in.readInt(); i > 0; i--) applyAddUser(readUser(in));
+            for (int i = in.readInt(); i > 0; i--) applyAddCar(readCar(in));
+        }
+
+        private static void writeUser(DataOutputStream out, User u) throws IOException {
+            out.writeUTF(u.id); out.writeUTF(u.username); Journal.writeStr(out, u.password); Journal.writeStr(out, u.role);
+        }
+
+        private static User readUser(DataInputStream in) throws IOException {
+            return new User(in.readUTF(), in.readUTF(), Journal.readStr(in), Journal.readStr(in));
+        }
+
+        private static void writeCar(DataOutputStream out, Car c) throws IOException {
+            out.writeUTF(c.id); Journal.writeStr(out, c.name); out.writeDouble(c.pricePerDay); Journal.writeStr(out, c.status); Journal.writeStr(out, c.imagePath);
+        }
+
+        private static Car readCar(DataInputStream in) throws IOException {
+            return new Car(in.readUTF(), Journal.readStr(in), in.readDouble(), Journal.readStr(in), Journal.readStr(in));
+        }
+
+        private static void index(Car c) {
+            String status = key(c.status);
+            carIdsByStatus.computeIfAbsent(status, k -> new LinkedHashSet<>()).add(c.id);
+            indexedStatus.put(c.id, status);
+        }
+
+        private static void unindex(String id) {
+            String status = indexedStatus.remove(id);
+            Set<String> ids = status == null ? null : carIdsByStatus.get(status);
+            if (ids != null && ids.remove(id) && ids.isEmpty()) carIdsByStatus.remove(status);
+        }
+
+        private static String key(String status) { return status == null ? "" : status.toLowerCase(Locale.ROOT); }
+
+        private static int idNumber(String id) {
+            try { return Integer.parseInt(id.replaceAll("\\D+", "")); }
+            catch (Exception e) { return 0; }
         }
+    }
 
-        public static List<User> fetchUsers() { return new ArrayList<>(users); }
-        public static List<Car> fetchCars() { return new ArrayList<>(cars); }
+    // ----------------------- Journal (optional durability) -----------------------
+    // Enabled with -Dcarrental.journal=<dir>. Every DataStore mutation is appended to journal-<gen>.log
+    // as [length][crc32][op][payload]; a flusher thread batches whatever arrived in the last couple of
+    // milliseconds into one write + fsync (group commit) and then releases the waiting writers.
+    // Every SNAPSHOT_EVERY records the whole store is written to snapshot-<gen>.dat and a new journal
+    // generation starts, so recovery loads the newest snapshot and replays only the journals after it.
+    public static class Journal {
+        static final byte ADD_USER = 1, ADD_CAR = 2, UPDATE_CAR = 3, DELETE_CAR = 4;
+        private static final String PROP = "carrental.journal";
+        private static final long GROUP_COMMIT_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+        private static final int SNAPSHOT_EVERY = 10_000;
+
+        interface Payload { void write(DataOutputStream out) throws IOException; }
+
+        private static Path dir;
+        private static FileChannel channel;
+        private static long generation;
+        private static final Object lock = new Object();
+        private static ByteArrayOutputStream pending = new ByteArrayOutputStream();
+        private static long appended, durable; // record tickets; durable = last ticket known to be on disk
+        private static int sinceSnapshot;
+        private static boolean snapshotQueued;
+        private static IOException failure;
+
+        public static boolean enabled() { return dir != null; }
+
+        // Recovers the store from disk; returns false if there was nothing to recover (or journaling is off).
+        static boolean open() {
+            String prop = System.getProperty(PROP);
+            if (prop == null) return false;
+            try {
+                dir = Paths.get(prop);
+                Files.createDirectories(dir);
+                boolean recovered = recover();
+                channel = FileChannel.open(journalFile(generation), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                Thread flusher = new Thread(Journal::flushLoop, "journal-flusher");
+                flusher.setDaemon(true);
+                flusher.start();
+                Runtime.getRuntime().addShutdownHook(new Thread(Journal::flushNow, "journal-exit"));
+                return recovered;
+            } catch (IOException e) {
+                // Running without the journal would silently lose data again, so refuse to start.
+                throw new UncheckedIOException("Cannot open journal in " + prop, e);
+            }
+        }
 
-        public static void addCar(Car c) { cars.add(c); }
-        public static void updateCar(Car updated) {
-            for (int i = 0; i < cars.size(); i++) {
-                if (cars.get(i).id.equals(updated.id)) {
-                    cars.set(i, updated);
-                    return;
+        private static boolean recover() throws IOException {
+            long snapshotGen = -1;
+            List<Long> journals = new ArrayList<>();
+            try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+                for (Path p : ds) {
+                    String n = p.getFileName().toString();
+                    if (n.matches("snapshot-\\d+\\.dat")) snapshotGen = Math.max(snapshotGen, Long.parseLong(n.replaceAll("\\D+", "")));
+                    else if (n.matches("journal-\\d+\\.log")) journals.add(Long.parseLong(n.replaceAll("\\D+", "")));
+                }
+            }
+            Collections.sort(journals);
+            if (snapshotGen >= 0) {
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotFile(snapshotGen))))) {
+                    DataStore.readState(in);
                 }
             }
+            int replayed = 0;
+            for (long gen : journals) {
+                if (gen < snapshotGen) continue; // already folded into the snapshot
+                replayed += replayJournal(journalFile(gen));
+                generation = Math.max(generation, gen);
+            }
+            generation = Math.max(generation, Math.max(snapshotGen, 0));
+            if (snapshotGen >= 0 || replayed > 0)
+                System.out.println("Journal: recovered " + (snapshotGen >= 0 ? "snapshot " + snapshotGen + " + " : "") + replayed + " record(s).");
+            sinceSnapshot = replayed;
+            return snapshotGen >= 0 || replayed > 0;
         }
-        public static void deleteCar(String id) { cars.removeIf(c -> c.id.equals(id)); }
 
-        public static String nextCarId() {
-            int max = cars.stream().mapToInt(c -> {
-                try { return Integer.parseInt(c.id.replaceAll("\\D+", "")); }
-                catch (Exception e) { return 0; }
-            }).max().orElse(0);
-            return String.format("C%03d", max + 1);
+        // Replays valid records and cuts off a torn tail left by a crash mid-write.
+        private static int replayJournal(Path file) throws IOException {
+            int count = 0;
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                ByteBuffer buf = ByteBuffer.allocate((int) ch.size());
+                while (buf.hasRemaining() && ch.read(buf) >= 0) { }
+                buf.flip();
+                int good = 0;
+                while (buf.remaining() >= 8) {
+                    int len = buf.getInt(), sum = buf.getInt();
+                    if (len <= 0 || len > buf.remaining()) break;
+                    byte[] body = new byte[len];
+                    buf.get(body);
+                    CRC32 crc = new CRC32();
+                    crc.update(body);
+                    if ((int) crc.getValue() != sum) break;
+                    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(body))) {
+                        DataStore.replay(in.readByte(), in);
+                    }
+                    good = buf.position();
+                    count++;
+                }
+                if (good < ch.size()) {
+                    System.err.println("Journal: truncating torn tail of " + file.getFileName() + " at " + good);
+                    ch.truncate(good);
+                }
+            }
+            return count;
+        }
+
+        // Called under the DataStore write lock, before the change is applied. Returns the ticket to pass to
+        // await(); 0 when journaling is off, -1 when the journal has failed and the change must not be applied.
+        static long append(byte op, Payload payload) {
+            if (!enabled()) return 0;
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(64);
+            try (DataOutputStream out = new DataOutputStream(bos)) {
+                out.writeByte(op);
+                payload.write(out);
+            } catch (IOException e) { throw new UncheckedIOException(e); }
+            byte[] body = bos.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(body);
+            synchronized (lock) {
+                if (failure != null) return -1;
+                DataOutputStream out = new DataOutputStream(pending);
+                try { out.writeInt(body.length); out.writeInt((int) crc.getValue()); out.write(body); }
+                catch (IOException e) { throw new UncheckedIOException(e); }
+                if (++sinceSnapshot >= SNAPSHOT_EVERY && !snapshotQueued) {
+                    snapshotQueued = true;
+                    Thread t = new Thread(Journal::snapshot, "journal-snapshot");
+                    t.setDaemon(true);
+                    t.start();
+                }
+                lock.notifyAll();
+                return ++appended;
+            }
+        }
+
+        // Blocks until the record with this ticket is on disk. Returns false if it was refused or will never
+        // get there (the user is told the journal failed), or if the wait was interrupted.
+        static boolean await(long ticket) {
+            if (ticket == 0) return true;
+            IOException failed;
+            synchronized (lock) {
+                while (ticket > 0 && durable < ticket && failure == null) {
+                    try { lock.wait(); } catch (InterruptedException e) { Thread.currentThread().interrupt(); return false; }
+                }
+                if (ticket > 0 && durable >= ticket) return true;
+                failed = failure;
+            }
+            reportFailure(failed);
+            return false;
+        }
+
+        private static void reportFailure(IOException failed) {
+            String message = "Changes can no longer be saved to " + dir + ":\n" + failed.getMessage()
+                    + "\n\nThe data is read-only until the application is restarted; the last change may be lost.";
+            Runnable show = () -> JOptionPane.showMessageDialog(null, message, "Journal Error", JOptionPane.ERROR_MESSAGE);
+            if (SwingUtilities.isEventDispatchThread()) show.run(); else SwingUtilities.invokeLater(show);
+        }
+
+        private static void flushLoop() {
+            while (true) {
+                synchronized (lock) {
+                    while (pending.size() == 0 && failure == null) {
+                        try { lock.wait(); } catch (InterruptedException e) { return; }
+                    }
+                    if (failure != null) return; // nothing more will be written
+                }
+                LockSupport.parkNanos(GROUP_COMMIT_NANOS); // let concurrent writers join this batch
+                flushNow();
+            }
+        }
+
+        private static void flushNow() {
+            synchronized (lock) {
+                if (pending.size() == 0 || failure != null) return;
+                try {
+                    ByteBuffer batch = ByteBuffer.wrap(pending.toByteArray());
+                    while (batch.hasRemaining()) channel.write(batch);
+                    channel.force(false);
+                    pending.reset();
+                    durable = appended;
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    failure = e;
+                }
+                lock.notifyAll();
+            }
+        }
+
+        // Captures the store and switches to a new journal generation atomically with respect to writers,
+        // then writes the snapshot outside the lock and deletes what it supersedes.
+        private static void snapshot() {
+            byte[] state; long gen;
+            DataStore.lock.writeLock().lock();
+            try {
+                state = DataStore.writeState();
+                synchronized (lock) {
+                    flushNow();
+                    if (failure != null) return;
+                    channel.close();
+                    gen = ++generation;
+                    channel = FileChannel.open(journalFile(gen), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                    sinceSnapshot = 0;
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                synchronized (lock) { failure = e; lock.notifyAll(); }
+                return;
+            } finally {
+                synchronized (lock) { snapshotQueued = false; }
+                DataStore.lock.writeLock().unlock();
+            }
+            try {
+                Path tmp = dir.resolve("snapshot.tmp");
+                try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    ByteBuffer buf = ByteBuffer.wrap(state);
+                    while (buf.hasRemaining()) ch.write(buf);
+                    ch.force(true);
+                }
+                Files.move(tmp, snapshotFile(gen), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                // Only now are older journals and snapshots redundant.
+                try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+                    for (Path p : ds) {
+                        String n = p.getFileName().toString();
+                        if (!n.matches("(snapshot|journal)-\\d+\\.(dat|log)")) continue;
+                        if (Long.parseLong(n.replaceAll("\\D+", "")) < gen) Files.deleteIfExists(p);
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace(); // the older snapshot and journals are still there, so recovery stays correct
+            }
+        }
+
+        private static Path journalFile(long gen) { return dir.resolve("journal-" + gen + ".log"); }
+        private static Path snapshotFile(long gen) { return dir.resolve("snapshot-" + gen + ".dat"); }
+
+        static void writeStr(DataOutputStream out, String s) throws IOException {
+            out.writeBoolean(s != null);
+            if (s != null) out.writeUTF(s);
+        }
+
+        static String readStr(DataInputStream in) throws IOException {
+            return in.readBoolean() ? in.readUTF() : null;
         }
     }
 
@@ -281,7 +697,7 @@ public class CarRentalMultiRole {
             // common tab: Browse
             tabs.add("Browse Cars", browsePanel);
             // role-based
-            switch (user.role.toLowerCase()) {
+            switch (user.role.toLowerCase(Locale.ROOT)) {
                 case "seller":
                     tabs.add("Manage My Cars", sellerPanel);
                     break;
@@ -308,12 +724,21 @@ public class CarRentalMultiRole {
         private DefaultTableModel model;
         private JLabel previewLabel;
         private JTextArea detailsArea;
+        private final JComboBox<String> statusFilter = new JComboBox<>();
+        private boolean updatingFilter; // suppresses combo events while the status list is refilled
 
         public BrowsePanel(MainFrame parent) {
             this.parent = parent;
             setLayout(new BorderLayout());
             setBorder(new EmptyBorder(10, 10, 10, 10));
 
+            // Status filter, answered from the store's status index
+            JPanel filterPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+            filterPanel.add(new JLabel("Status:"));
+            filterPanel.add(statusFilter);
+            statusFilter.addActionListener(e -> { if (!updatingFilter) refresh(); });
+            add(filterPanel, BorderLayout.NORTH);
+
             // Table with custom model (holds image icon object in hidden column)
             String[] cols = {"Image", "ID", "Name", "Price/day", "Status", "ImagePath"};
             model = new DefaultTableModel(cols, 0) {
@@ -375,13 +800,32 @@ public class CarRentalMultiRole {
         }
 
         public void refresh() {
+            String status = updateStatusFilter();
             model.setRowCount(0);
-            for (Car c : DataStore.fetchCars()) {
+            for (Car c : status == null ? DataStore.fetchCars() : DataStore.fetchCarsByStatus(status)) {
                 ImageIcon thumb = UIUtils.loadScaledIcon(c.imagePath, 90, 70);
                 String price = UIUtils.MONEY.format(c.pricePerDay);
                 model.addRow(new Object[]{thumb, c.id, c.name, price, c.status, c.imagePath});
             }
         }
+
+        // Refills the filter with the statuses in use, keeping the selection while some car still has it.
+        // Returns the selected status, or null for "All".
+        private String updateStatusFilter() {
+            String selected = statusFilter.getSelectedIndex() > 0 ? (String) statusFilter.getSelectedItem() : null;
+            updatingFilter = true;
+            try {
+                statusFilter.removeAllItems();
+                statusFilter.addItem("All");
+                String kept = null;
+                for (String s : DataStore.fetchStatuses()) {
+                    statusFilter.addItem(s);
+                    if (s.equalsIgnoreCase(selected)) kept = s;
+                }
+                if (kept != null) statusFilter.setSelectedItem(kept); else statusFilter.setSelectedIndex(0);
+                return kept;
+            } finally { updatingFilter = false; }
+        }
     }
 
     // ----------------------- Seller Panel (Add / Edit / Delete cars) -----------------------
@@ -528,14 +972,14 @@ public class CarRentalMultiRole {
 
             if (id.isEmpty()) {
                 // new car
-                String nid = DataStore.nextCarId();
-                Car c = new Car(nid, name, price, status.isEmpty() ? "Available" : status, selectedImagePath);
-                DataStore.addCar(c);
+                Car c = new Car(null, name, price, status.isEmpty() ? "Available" : status, selectedImagePath);
+                String nid = DataStore.addCar(c);
+                if (nid == null) return;
                 JOptionPane.showMessageDialog(this, "Car added: " + nid);
             } else {
                 // update existing
                 Car c = new Car(id, name, price, status.isEmpty() ? "Available" : status, selectedImagePath);
-                DataStore.updateCar(c);
+                if (!DataStore.updateCar(c)) return;
                 JOptionPane.showMessageDialog(this, "Car updated: " + id);
             }
             refresh();
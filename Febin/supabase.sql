@@ -30,7 +30,7 @@ BEGIN
   WHERE id = user_id;
   RETURN role_value;
 END;
-$$ LANGUAGE plpgsql SECURITY DEFINER;
+$$ LANGUAGE plpgsql STABLE SECURITY DEFINER;
 -- 1. Create a function that copies the new user's ID and email into 'profiles'
 CREATE FUNCTION public.handle_new_user()
 RETURNS TRIGGER AS $$
@@ -71,10 +71,12 @@ BEGIN
   WHERE id = user_id;
   RETURN role_value;
 END;
-$$ LANGUAGE plpgsql SECURITY DEFINER;
+$$ LANGUAGE plpgsql STABLE SECURITY DEFINER;
 -- This function lets you securely check any user's role
 CREATE FUNCTION public.get_user_role(user_id uuid)
   -- 1. Enable RLS on the cars table
+-- Role checks below are wrapped in (SELECT ...) so Postgres evaluates them once per
+-- statement as an initplan instead of calling get_user_role() for every row scanned.
 ALTER TABLE public.cars ENABLE ROW LEVEL SECURITY;
 
 -- 2. Policy: *Anyone* can see the cars (for your "Browse Cars" tab)
@@ -86,33 +88,32 @@ USING ( true );
 CREATE POLICY "Sellers and Admins can create cars"
 ON public.cars FOR INSERT
 WITH CHECK (
-  public.get_user_role(auth.uid()) = 'seller' OR
-  public.get_user_role(auth.uid()) = 'admin'
+  (SELECT public.get_user_role((SELECT auth.uid()))) IN ('seller', 'admin')
 );
 
 -- 4. Policy: Sellers can update/delete *only their own* cars.
 CREATE POLICY "Sellers can update/delete their own cars"
 ON public.cars FOR UPDATE
 USING (
-  auth.uid() = owner_id AND
-  public.get_user_role(auth.uid()) = 'seller'
+  (SELECT auth.uid()) = owner_id AND
+  (SELECT public.get_user_role((SELECT auth.uid()))) = 'seller'
 );
 
 CREATE POLICY "Sellers can delete their own cars"
 ON public.cars FOR DELETE
 USING (
-  auth.uid() = owner_id AND
-  public.get_user_role(auth.uid()) = 'seller'
+  (SELECT auth.uid()) = owner_id AND
+  (SELECT public.get_user_role((SELECT auth.uid()))) = 'seller'
 );
 
 -- 5. Policy: Admins can update/delete *any* car.
 CREATE POLICY "Admins can update/delete any car"
 ON public.cars FOR UPDATE
-USING ( public.get_user_role(auth.uid()) = 'admin' );
+USING ( (SELECT public.get_user_role((SELECT auth.uid()))) = 'admin' );
 
 CREATE POLICY "Admins can delete any car"
 ON public.cars FOR DELETE
-USING ( public.get_user_role(auth.uid()) = 'admin' );
+USING ( (SELECT public.get_user_role((SELECT auth.uid()))) = 'admin' );
 RETURNS public.user_role AS $$
 DECLARE
   role_value public.user_role;
@@ -122,20 +123,18 @@ BEGIN
   WHERE id = user_id;
   RETURN role_value;
 END;
-$$ LANGUAGE plpgsql SECURITY DEFINER;
+$$ LANGUAGE plpgsql STABLE SECURITY DEFINER;
 CREATE POLICY "user_read" ON storage.objects
   FOR SELECT TO authenticated
   USING (
     bucket_id = 'car_images' AND (
-      public.get_user_role(auth.uid()) = 'seller' OR
-      public.get_user_role(auth.uid()) = 'admin'
+      (SELECT public.get_user_role((SELECT auth.uid()))) IN ('seller', 'admin')
     )
   );
 SELECT * FROM storage.objects
 WHERE bucket_id = 'car_images'
   AND (
-    public.get_user_role(auth.uid()) = 'seller' OR
-    public.get_user_role(auth.uid()) = 'admin'
+    (SELECT public.get_user_role((SELECT auth.uid()))) IN ('seller', 'admin')
   );
 -- !! REPLACE 'PASTE_SELLER_UUID_HERE' with the ID you copied !!
 INSERT INTO public.cars (name, model, price_per_day, category, status, owner_id)
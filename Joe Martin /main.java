@@ -23,6 +23,7 @@ import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class CarRentalFull {
 
@@ -50,48 +51,145 @@ public class CarRentalFull {
     }
 
     // ---------------- DataStore ----------------
+    // Hash indexes: users by id and lower-cased username, cars by id plus owner/status/category
+    // secondary indexes. A read/write lock keeps all indexes consistent under concurrent access.
     public static class DataStore {
-        private static final List<User> users = new ArrayList<>();
-        private static final List<Car> cars = new ArrayList<>();
+        private static final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private static final Map<String,User> usersById = new LinkedHashMap<>();
+        private static final Map<String,User> usersByName = new HashMap<>();
+        private static final Map<String,Car> carsById = new LinkedHashMap<>();
+        private static final Map<String,Set<String>> carsByOwner = new HashMap<>();
+        private static final Map<String,Set<String>> carsByStatus = new HashMap<>();
+        private static final Map<String,Set<String>> carsByCategory = new HashMap<>();
+        // keys each car is indexed under {owner, status, category}; panels edit Car fields before calling updateCar
+        private static final Map<String,String[]> indexedKeys = new HashMap<>();
+        private static int maxCarNo = 0, maxUserNo = 0;
 
         static {
-            users.add(new User("U001","admin@demo","admin123","admin","Admin Office"));
-            users.add(new User("U002","user@demo","user123","user","Customer"));
-            users.add(new User("U003","seller@demo","seller123","seller","+91-9876543210"));
+            addUser(new User("U001","admin@demo","admin123","admin","Admin Office"));
+            addUser(new User("U002","user@demo","user123","user","Customer"));
+            addUser(new User("U003","seller@demo","seller123","seller","+91-9876543210"));
 
-            cars.add(new Car("C001","Toyota Camry","Camry",3500,"Sedan","Available","images/Toyota_Camry.jpeg","U003","Petrol",5,"Automatic"));
-            cars.add(new Car("C002","Honda Civic","Civic",3200,"Sedan","Available","images/Honda_Civic.jpeg","U003","Petrol",5,"Automatic"));
+            addCar(new Car("C001","Toyota Camry","Camry",3500,"Sedan","Available","images/Toyota_Camry.jpeg","U003","Petrol",5,"Automatic"));
+            addCar(new Car("C002","Honda Civic","Civic",3200,"Sedan","Available","images/Honda_Civic.jpeg","U003","Petrol",5,"Automatic"));
         }
 
         public static Optional<User> authenticate(String username,String password,String role){
-            return users.stream().filter(u->u.username.equalsIgnoreCase(username)&&u.password.equals(password)&&u.role.equalsIgnoreCase(role)).findFirst();
+            lock.readLock().lock();
+            try{
+                User u=usersByName.get(username.toLowerCase(Locale.ROOT));
+                return u!=null&&u.password.equals(password)&&u.role.equalsIgnoreCase(role)?Optional.of(u):Optional.empty();
+            }finally{lock.readLock().unlock();}
         }
 
         public static boolean usernameExists(String username){
-            return users.stream().anyMatch(u->u.username.equalsIgnoreCase(username));
+            lock.readLock().lock();
+            try{return usersByName.containsKey(username.toLowerCase(Locale.ROOT));}finally{lock.readLock().unlock();}
         }
 
-        public static List<User> fetchUsers(){return new ArrayList<>(users);}
-        public static List<Car> fetchCars(){return new ArrayList<>(cars);}
+        public static List<User> fetchUsers(){
+            lock.readLock().lock();
+            try{return new ArrayList<>(usersById.values());}finally{lock.readLock().unlock();}
+        }
+        public static List<Car> fetchCars(){
+            lock.readLock().lock();
+            try{return new ArrayList<>(carsById.values());}finally{lock.readLock().unlock();}
+        }
+        public static List<Car> fetchCarsByOwner(String ownerId){return lookup(carsByOwner,ownerId);}
+        public static List<Car> fetchCarsByStatus(String status){return lookup(carsByStatus,key(status));}
+        public static List<Car> fetchCarsByCategory(String category){return lookup(carsByCategory,key(category));}
+
+        // Cars with both the status and the category (null = any): walks the smaller index set and probes the other.
+        public static List<Car> fetchCars(String status,String category){
+            if(status==null&&category==null)return fetchCars();
+            if(status==null)return fetchCarsByCategory(category);
+            if(category==null)return fetchCarsByStatus(status);
+            lock.readLock().lock();
+            try{
+                Set<String> a=carsByStatus.getOrDefault(key(status),Collections.emptySet()), b=carsByCategory.getOrDefault(key(category),Collections.emptySet());
+                if(a.size()>b.size()){Set<String> t=a;a=b;b=t;}
+                List<Car> out=new ArrayList<>();
+                for(String id:a)if(b.contains(id))out.add(carsById.get(id));
+                return out;
+            }finally{lock.readLock().unlock();}
+        }
 
-        public static void addCar(Car c){cars.add(c);}
-        public static void updateCar(Car updated){for(int i=0;i<cars.size();i++){if(cars.get(i).id.equals(updated.id)){cars.set(i,updated);return;}}}
-        public static void deleteCar(String id){cars.removeIf(c->c.id.equals(id));}
+        // Categories in use, as the first car indexed under each one spells it.
+        public static List<String> fetchCategories(){
+            lock.readLock().lock();
+            try{
+                List<String> out=new ArrayList<>();
+                for(Set<String> ids:carsByCategory.values())out.add(carsById.get(ids.iterator().next()).category);
+                out.sort(String.CASE_INSENSITIVE_ORDER);
+                return out;
+            }finally{lock.readLock().unlock();}
+        }
+
+        // A car without an id gets the next free one, allocated under the write lock. Returns the id.
+        public static String addCar(Car c){
+            lock.writeLock().lock();
+            try{
+                if(c.id==null)c.id=String.format("C%03d",maxCarNo+1);
+                carsById.put(c.id,c); index(c); maxCarNo=Math.max(maxCarNo,idNumber(c.id));
+                return c.id;
+            }finally{lock.writeLock().unlock();}
+        }
+        public static void updateCar(Car updated){
+            lock.writeLock().lock();
+            try{if(!carsById.containsKey(updated.id))return; unindex(updated.id); carsById.put(updated.id,updated); index(updated);}finally{lock.writeLock().unlock();}
+        }
+        public static void deleteCar(String id){
+            lock.writeLock().lock();
+            try{if(carsById.remove(id)!=null)unindex(id);}finally{lock.writeLock().unlock();}
+        }
 
-        public static void addUser(User u){users.add(u);}
+        // Allocates the id (when null) under the write lock. Returns false, storing nothing, if the username is taken.
+        public static boolean addUser(User u){
+            lock.writeLock().lock();
+            try{
+                String name=u.username.toLowerCase(Locale.ROOT);
+                if(usersByName.containsKey(name))return false;
+                if(u.id==null)u.id=String.format("U%03d",maxUserNo+1);
+                usersById.put(u.id,u); usersByName.put(name,u); maxUserNo=Math.max(maxUserNo,idNumber(u.id));
+                return true;
+            }finally{lock.writeLock().unlock();}
+        }
 
-        public static String nextCarId(){
-            int max = cars.stream().mapToInt(c->{try{return Integer.parseInt(c.id.replaceAll("\\D+",""));}catch(Exception e){return 0;}}).max().orElse(0);
-            return String.format("C%03d",max+1);
+        public static User findUserById(String id){
+            lock.readLock().lock();
+            try{return usersById.get(id);}finally{lock.readLock().unlock();}
+        }
+        public static Car findCarById(String id){
+            lock.readLock().lock();
+            try{return carsById.get(id);}finally{lock.readLock().unlock();}
         }
 
-        public static String nextUserId(){
-            int max = users.stream().mapToInt(u->{try{return Integer.parseInt(u.id.replaceAll("\\D+",""));}catch(Exception e){return 0;}}).max().orElse(0);
-            return String.format("U%03d",max+1);
+        private static List<Car> lookup(Map<String,Set<String>> index,String k){
+            lock.readLock().lock();
+            try{
+                List<Car> out=new ArrayList<>();
+                for(String id:index.getOrDefault(k,Collections.emptySet()))out.add(carsById.get(id));
+                return out;
+            }finally{lock.readLock().unlock();}
         }
 
-        public static User findUserById(String id){return users.stream().filter(u->u.id.equals(id)).findFirst().orElse(null);}
-        public static Car findCarById(String id){return cars.stream().filter(c->c.id.equals(id)).findFirst().orElse(null);}
+        private static void index(Car c){
+            String[] keys={c.ownerId,key(c.status),key(c.category)};
+            put(carsByOwner,keys[0],c.id); put(carsByStatus,keys[1],c.id); put(carsByCategory,keys[2],c.id);
+            indexedKeys.put(c.id,keys);
+        }
+        private static void unindex(String id){
+            String[] keys=indexedKeys.remove(id);
+            if(keys==null)return;
+            remove(carsByOwner,keys[0],id); remove(carsByStatus,keys[1],id); remove(carsByCategory,keys[2],id);
+        }
+        private static void put(Map<String,Set<String>> index,String k,String id){index.computeIfAbsent(k,x->new LinkedHashSet<>()).add(id);}
+        private static void remove(Map<String,Set<String>> index,String k,String id){
+            Set<String> ids=index.get(k);
+            if(ids!=null&&ids.remove(id)&&ids.isEmpty())index.remove(k);
+        }
+        private static String key(String v){return v==null?"":v.toLowerCase(Locale.ROOT);}
+        private static int idNumber(String id){try{return Integer.parseInt(id.replaceAll("\\D+",""));}catch(Exception e){return 0;}}
     }
 
     // ---------------- UI Utils ----------------
@@ -245,11 +343,9 @@ public class CarRentalFull {
                 if(u.isEmpty()||p.isEmpty()||c.isEmpty()){
                     JOptionPane.showMessageDialog(this,"Fill all fields.","Validation",JOptionPane.WARNING_MESSAGE); return;
                 }
-                if(DataStore.usernameExists(u)){
+                if(!DataStore.addUser(new User(null,u,p,r,c))){
                     JOptionPane.showMessageDialog(this,"Username already exists!","Validation",JOptionPane.WARNING_MESSAGE); return;
                 }
-                User newUser = new User(DataStore.nextUserId(),u,p,r,c);
-                DataStore.addUser(newUser);
                 JOptionPane.showMessageDialog(this,"Account created! You can login now.","Success",JOptionPane.INFORMATION_MESSAGE);
             }
         }
@@ -282,7 +378,7 @@ public class CarRentalFull {
         public void setUser(User user){
             this.user=user; tabs.removeAll();
             tabs.addTab("Browse Cars",browsePanel);
-            switch(user.role.toLowerCase()){
+            switch(user.role.toLowerCase(Locale.ROOT)){
                 case "seller": tabs.addTab("My Inventory",sellerPanel); break;
                 case "admin": tabs.addTab("Manage Cars",sellerPanel); tabs.addTab("Users",adminPanel); break;
             }
@@ -297,6 +393,9 @@ public class CarRentalFull {
     public static class CardBrowsePanel extends JPanel {
         private MainFrame parent; private JPanel cardContainer; private JScrollPane scrollPane;
         private JTextField txtSearch; private User currentUser;
+        private final JComboBox<String> statusFilter = new JComboBox<>(new String[]{"All","Available","Rented","Sold"});
+        private final JComboBox<String> categoryFilter = new JComboBox<>();
+        private boolean updatingFilters; // suppresses combo events while the category list is refilled
 
         public CardBrowsePanel(MainFrame parent){
             this.parent=parent; setLayout(new BorderLayout()); setBorder(new EmptyBorder(10,10,10,10));
@@ -315,6 +414,11 @@ public class CarRentalFull {
             searchPanel.add(txtSearch);
             JButton btnSearch = new JButton("Go"); btnSearch.addActionListener(e -> refresh());
             searchPanel.add(btnSearch);
+            // status/category filters are answered from the DataStore secondary indexes
+            searchPanel.add(new JLabel("Status:")); searchPanel.add(statusFilter);
+            searchPanel.add(new JLabel("Category:")); searchPanel.add(categoryFilter);
+            statusFilter.addActionListener(e -> { if(!updatingFilters) refresh(); });
+            categoryFilter.addActionListener(e -> { if(!updatingFilters) refresh(); });
             topPanel.add(searchPanel,BorderLayout.SOUTH);
 
             add(topPanel,BorderLayout.NORTH);
@@ -328,10 +432,12 @@ public class CarRentalFull {
         public void setCurrentUser(User u){currentUser=u;}
 
         public void refresh(){
-            String query = txtSearch.getText().trim().toLowerCase();
+            String query = txtSearch.getText().trim().toLowerCase(Locale.ROOT);
+            String status = statusFilter.getSelectedIndex()>0?(String)statusFilter.getSelectedItem():null;
+            String category = updateCategoryFilter();
             cardContainer.removeAll();
-            for(Car c:DataStore.fetchCars()){
-                if(!query.isEmpty() && !(c.name.toLowerCase().contains(query) || c.category.toLowerCase().contains(query))) continue;
+            for(Car c:DataStore.fetchCars(status,category)){
+                if(!query.isEmpty() && !(c.name.toLowerCase(Locale.ROOT).contains(query) || c.category.toLowerCase(Locale.ROOT).contains(query))) continue;
 
                 JPanel card = new JPanel(new BorderLayout(4,4));
                 card.setPreferredSize(new Dimension(240,360));
@@ -374,6 +480,19 @@ public class CarRentalFull {
             }
             cardContainer.revalidate(); cardContainer.repaint();
         }
+
+        // Refills the category filter with the categories in use, keeping the selection while it still exists.
+        // Returns the selected category, or null for "All".
+        private String updateCategoryFilter(){
+            String selected = categoryFilter.getSelectedIndex()>0?(String)categoryFilter.getSelectedItem():null, kept = null;
+            updatingFilters = true;
+            try{
+                categoryFilter.removeAllItems(); categoryFilter.addItem("All");
+                for(String c:DataStore.fetchCategories()){ categoryFilter.addItem(c); if(c.equalsIgnoreCase(selected)) kept = c; }
+                if(kept!=null) categoryFilter.setSelectedItem(kept); else categoryFilter.setSelectedIndex(0);
+                return kept;
+            }finally{ updatingFilters = false; }
+        }
     }
 
     // ---------------- Booking Dialog ----------------
@@ -428,8 +547,8 @@ public class CarRentalFull {
                 public boolean isCellEditable(int row,int col){return false;}
             };
             table = new JTable(model);
-            for(Car c:DataStore.fetchCars()){
-                if(currentUser.role.equals("seller") && !c.ownerId.equals(currentUser.id)) continue;
+            List<Car> cars=currentUser.role.equals("seller")?DataStore.fetchCarsByOwner(currentUser.id):DataStore.fetchCars();
+            for(Car c:cars){
                 model.addRow(new Object[]{c.id,c.name,c.model,c.pricePerDay,c.seats,c.fuelType,c.transmission,c.status});
             }
             add(new JScrollPane(table),BorderLayout.CENTER);
@@ -473,7 +592,7 @@ public class CarRentalFull {
                     int s = Integer.parseInt(seats.getText());
                     String imgPath = imgLbl.getText().isEmpty()?car!=null?car.imagePath:UIUtils.PLACEHOLDER_IMAGE:UIUtils.PLACEHOLDER_IMAGE;
                     if(car==null){
-                        Car newCar = new Car(DataStore.nextCarId(),name.getText(),model.getText(),p,"Unknown",(String)statusBox.getSelectedItem(),imgPath,currentUser.id,fuel.getText(),s,trans.getText());
+                        Car newCar = new Car(null,name.getText(),model.getText(),p,"Unknown",(String)statusBox.getSelectedItem(),imgPath,currentUser.id,fuel.getText(),s,trans.getText());
                         DataStore.addCar(newCar);
                     }else{
                         car.name=name.getText(); car.model=model.getText(); car.pricePerDay=p; car.seats=s; car.fuelType=fuel.getText(); car.transmission=trans.getText(); car.status=(String)statusBox.getSelectedItem(); car.imagePath=imgPath;